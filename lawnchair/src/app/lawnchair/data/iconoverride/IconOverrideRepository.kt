@@ -6,6 +6,7 @@ import app.lawnchair.icons.IconPickerItem
 import com.android.launcher3.LauncherAppState
 import com.android.launcher3.util.ComponentKey
 import com.android.launcher3.util.MainThreadInitializedObject
+import com.android.quickstep.RecentsModel
 import java.util.concurrent.ConcurrentLinkedQueue
 import kotlinx.coroutines.CoroutineName
 import kotlinx.coroutines.Dispatchers
@@ -55,13 +56,18 @@ class IconOverrideRepository(private val context: Context) {
     fun observeCount() = dao.observeCount()
 
     suspend fun deleteAll() {
+        // Reloading the launcher icons doesn't reach the task icons, so update each package
+        _overridesMap.keys.forEach(updatePackageQueue::offer)
         dao.deleteAll()
         LauncherAppState.getInstance(context).reloadIcons()
     }
 
     private fun updatePackageIcons(target: ComponentKey) {
+        val packageName = target.componentName.packageName
         val model = LauncherAppState.getInstance(context).model
-        model.onPackageChanged(target.componentName.packageName, target.user)
+        model.onPackageChanged(packageName, target.user)
+        // Task icons go through the icon provider too, and are cached separately
+        RecentsModel.INSTANCE.get(context).onAppIconChanged(packageName, target.user)
     }
 
     companion object {
@@ -0,0 +1,276 @@
+package app.lawnchair.icons
+
+import android.content.ComponentName
+import android.util.Log
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Parsed content of an icon pack appfilter: drawable names of components, calendar prefixes and
+ * dynamic clock layers.
+ */
+class AppFilter {
+    val components = mutableMapOf<ComponentName, String>()
+    val calendars = mutableMapOf<ComponentName, String>()
+
+    /** Layer indexes and default time of dynamic clocks, keyed by drawable name */
+    val clocks = mutableMapOf<String, IntArray>()
+
+    /** False if the appfilter couldn't be parsed to the end, in which case it is not persisted */
+    var isComplete = true
+}
+
+/**
+ * Binary copy of an [AppFilter], memory mapped from the cache directory so that the appfilter XML
+ * is only parsed once per icon pack update.
+ *
+ * Components and drawable names are stored in tables sorted by name and looked up with a binary
+ * search, so opening the index doesn't need to read it all. Names are compared as UTF-8 bytes
+ * directly in the mapped buffer, and only the matching entry is decoded. Resource ids of drawables are resolved
+ * on first use and written back into the drawable table, so that they are kept across restarts.
+ * The index is tied to the version and update time of the pack, and is rebuilt when they change.
+ *
+ * Layout, all ints being big endian:
+ * - header: magic, format version, pack version code (long), pack update time (long), and the
+ *   sizes of the component, calendar, clock component, clock and drawable tables
+ * - component, calendar and clock component tables: offset of the flattened component name,
+ *   index of its drawable
+ * - clock table: index of the drawable, then its 6 clock values
+ * - drawable table: offset of the drawable name, resource id or [UNRESOLVED]
+ * - string pool: length in bytes followed by the UTF-8 bytes of each string
+ */
+class AppFilterIndex private constructor(private val buffer: MappedByteBuffer) {
+
+    private val componentCount = buffer.getInt(OFFSET_COUNTS)
+    private val calendarCount = buffer.getInt(OFFSET_COUNTS + 4)
+    private val clockComponentCount = buffer.getInt(OFFSET_COUNTS + 8)
+    private val clockCount = buffer.getInt(OFFSET_COUNTS + 12)
+    private val drawableCount = buffer.getInt(OFFSET_COUNTS + 16)
+
+    private val componentTable = HEADER_SIZE
+    private val calendarTable = componentTable + componentCount * COMPONENT_ENTRY_SIZE
+    private val clockComponentTable = calendarTable + calendarCount * COMPONENT_ENTRY_SIZE
+    private val clockTable = clockComponentTable + clockComponentCount * COMPONENT_ENTRY_SIZE
+    private val drawableTable = clockTable + clockCount * CLOCK_ENTRY_SIZE
+
+    /**
+     * Returns the drawable name of [componentName], or null if the pack has no icon for it
+     */
+    fun getDrawableName(componentName: ComponentName): String? {
+        val entry = binarySearch(componentTable, COMPONENT_ENTRY_SIZE, componentCount, componentName.flattenToString().toByteArray(Charsets.UTF_8))
+        return if (entry < 0) null else getDrawableNameAt(buffer.getInt(entry + 4))
+    }
+
+    /**
+     * Returns the calendar prefixes of the pack, keyed by component
+     */
+    fun readCalendars(): Map<ComponentName, String> = readComponentTable(calendarTable, calendarCount)
+
+    /**
+     * Returns the components whose drawable is a dynamic clock
+     */
+    fun readClockComponents(): Map<ComponentName, String> = readComponentTable(clockComponentTable, clockComponentCount)
+
+    /**
+     * Returns the clock values of the dynamic clocks, keyed by drawable name
+     */
+    fun readClocks(): Map<String, IntArray> {
+        val clocks = HashMap<String, IntArray>(clockCount)
+        for (i in 0 until clockCount) {
+            val entry = clockTable + i * CLOCK_ENTRY_SIZE
+            clocks[getDrawableNameAt(buffer.getInt(entry))] = IntArray(CLOCK_VALUES) { buffer.getInt(entry + 4 + it * 4) }
+        }
+        return clocks
+    }
+
+    /**
+     * Returns the resource id of the drawable [name], resolving it with [resolve] the first time,
+     * or null if the drawable isn't referenced by the appfilter
+     */
+    fun getDrawableId(name: String, resolve: (String) -> Int): Int? {
+        val entry = binarySearch(drawableTable, DRAWABLE_ENTRY_SIZE, drawableCount, name.toByteArray(Charsets.UTF_8))
+        if (entry < 0) return null
+        val id = buffer.getInt(entry + 4)
+        if (id != UNRESOLVED) return id
+        return resolve(name).also { buffer.putInt(entry + 4, it) }
+    }
+
+    private fun readComponentTable(table: Int, count: Int): Map<ComponentName, String> {
+        val components = HashMap<ComponentName, String>(count)
+        for (i in 0 until count) {
+            val entry = table + i * COMPONENT_ENTRY_SIZE
+            val componentName = ComponentName.unflattenFromString(readString(buffer.getInt(entry))) ?: continue
+            components[componentName] = getDrawableNameAt(buffer.getInt(entry + 4))
+        }
+        return components
+    }
+
+    private fun getDrawableNameAt(index: Int) = readString(buffer.getInt(drawableTable + index * DRAWABLE_ENTRY_SIZE))
+
+    /**
+     * Returns the offset of the entry of [table] whose key is [key], or -1
+     */
+    private fun binarySearch(table: Int, entrySize: Int, count: Int, key: ByteArray): Int {
+        var low = 0
+        var high = count - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val entry = table + mid * entrySize
+            val cmp = compareString(buffer.getInt(entry), key)
+            when {
+                cmp < 0 -> low = mid + 1
+                cmp > 0 -> high = mid - 1
+                else -> return entry
+            }
+        }
+        return -1
+    }
+
+    /**
+     * Compares the string at [offset] with [key] byte by byte, which is the same as comparing their
+     * code points, see [CODE_POINT_ORDER]
+     */
+    private fun compareString(offset: Int, key: ByteArray): Int {
+        val length = buffer.getInt(offset)
+        for (i in 0 until minOf(length, key.size)) {
+            val cmp = (buffer.get(offset + 4 + i).toInt() and 0xFF) - (key[i].toInt() and 0xFF)
+            if (cmp != 0) return cmp
+        }
+        return length - key.size
+    }
+
+    private fun readString(offset: Int): String {
+        val length = buffer.getInt(offset)
+        val bytes = ByteArray(length)
+        for (i in 0 until length) {
+            bytes[i] = buffer.get(offset + 4 + i)
+        }
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    companion object {
+        private const val TAG = "AppFilterIndex"
+
+        private const val MAGIC = 0x4C434946 // LCIF
+        private const val FORMAT_VERSION = 2
+        private const val OFFSET_VERSION_CODE = 8
+        private const val OFFSET_UPDATE_TIME = 16
+        private const val OFFSET_COUNTS = 24
+        private const val HEADER_SIZE = OFFSET_COUNTS + 5 * 4
+
+        private const val CLOCK_VALUES = 6
+        private const val COMPONENT_ENTRY_SIZE = 8
+        private const val CLOCK_ENTRY_SIZE = 4 + CLOCK_VALUES * 4
+        private const val DRAWABLE_ENTRY_SIZE = 8
+        private const val UNRESOLVED = -1
+
+        // Order of the UTF-8 bytes of strings, unlike String.compareTo for supplementary characters
+        private val CODE_POINT_ORDER = Comparator<String> { a, b ->
+            var i = 0
+            var j = 0
+            while (i < a.length && j < b.length) {
+                val ca = a.codePointAt(i)
+                val cb = b.codePointAt(j)
+                if (ca != cb) return@Comparator ca - cb
+                i += Character.charCount(ca)
+                j += Character.charCount(cb)
+            }
+            (a.length - i) - (b.length - j)
+        }
+
+        /**
+         * Opens the index of [file] if it was built for the given version of the pack
+         */
+        fun open(file: File, versionCode: Long, lastUpdateTime: Long): AppFilterIndex? {
+            if (!file.isFile || file.length() < HEADER_SIZE) return null
+            return try {
+                val buffer = RandomAccessFile(file, "rw").use {
+                    it.channel.map(FileChannel.MapMode.READ_WRITE, 0, it.length())
+                }
+                if (buffer.getInt(0) != MAGIC ||
+                    buffer.getInt(4) != FORMAT_VERSION ||
+                    buffer.getLong(OFFSET_VERSION_CODE) != versionCode ||
+                    buffer.getLong(OFFSET_UPDATE_TIME) != lastUpdateTime
+                ) {
+                    null
+                } else {
+                    AppFilterIndex(buffer)
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "Unable to open $file", e)
+                null
+            }
+        }
+
+        /**
+         * Writes the index of [appFilter] to [file], replacing it atomically
+         */
+        fun write(file: File, appFilter: AppFilter, versionCode: Long, lastUpdateTime: Long): Boolean {
+            val components = appFilter.components.mapKeys { it.key.flattenToString() }.toSortedMap(CODE_POINT_ORDER)
+            val calendars = appFilter.calendars.mapKeys { it.key.flattenToString() }.toSortedMap(CODE_POINT_ORDER)
+            val clockComponents = components.filterValues { appFilter.clocks.containsKey(it) }.toSortedMap(CODE_POINT_ORDER)
+            val drawables = (components.values + calendars.values + appFilter.clocks.keys).toSortedSet(CODE_POINT_ORDER).toList()
+            val drawableIndexes = HashMap<String, Int>(drawables.size)
+            drawables.forEachIndexed { i, name -> drawableIndexes[name] = i }
+
+            // Strings are written after the tables, in this order
+            val strings = components.keys + calendars.keys + clockComponents.keys + drawables
+            val stringOffsets = HashMap<String, Int>(strings.size)
+            val pool = ByteArrayOutputStream()
+            val poolOut = DataOutputStream(pool)
+            val poolStart = HEADER_SIZE +
+                (components.size + calendars.size + clockComponents.size) * COMPONENT_ENTRY_SIZE +
+                appFilter.clocks.size * CLOCK_ENTRY_SIZE + drawables.size * DRAWABLE_ENTRY_SIZE
+            for (string in strings) {
+                if (stringOffsets.containsKey(string)) continue
+                stringOffsets[string] = poolStart + poolOut.size()
+                val bytes = string.toByteArray(Charsets.UTF_8)
+                poolOut.writeInt(bytes.size)
+                poolOut.write(bytes)
+            }
+
+            val tmpFile = File(file.parentFile, "${file.name}.tmp")
+            return try {
+                file.parentFile?.mkdirs()
+                DataOutputStream(tmpFile.outputStream().buffered()).use { out ->
+                    out.writeInt(MAGIC)
+                    out.writeInt(FORMAT_VERSION)
+                    out.writeLong(versionCode)
+                    out.writeLong(lastUpdateTime)
+                    out.writeInt(components.size)
+                    out.writeInt(calendars.size)
+                    out.writeInt(clockComponents.size)
+                    out.writeInt(appFilter.clocks.size)
+                    out.writeInt(drawables.size)
+                    for (table in listOf(components, calendars, clockComponents)) {
+                        table.forEach { (component, drawable) ->
+                            out.writeInt(stringOffsets.getValue(component))
+                            out.writeInt(drawableIndexes.getValue(drawable))
+                        }
+                    }
+                    appFilter.clocks.forEach { (drawable, values) ->
+                        out.writeInt(drawableIndexes.getValue(drawable))
+                        for (i in 0 until CLOCK_VALUES) {
+                            out.writeInt(values[i])
+                        }
+                    }
+                    drawables.forEach {
+                        out.writeInt(stringOffsets.getValue(it))
+                        out.writeInt(UNRESOLVED)
+                    }
+                    pool.writeTo(out)
+                }
+                tmpFile.renameTo(file)
+            } catch (e: IOException) {
+                Log.w(TAG, "Unable to write $file", e)
+                tmpFile.delete()
+                false
+            }
+        }
+    }
+}
@@ -10,7 +10,9 @@ import android.content.res.XmlResourceParser
 import android.graphics.drawable.Drawable
 import android.util.Xml
 import com.android.launcher3.R
+import java.io.File
 import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flow
@@ -28,7 +30,12 @@ class CustomIconPack(context: Context, packPackageName: String) :
     private val clockMap = mutableMapOf<ComponentName, IconEntry>()
     private val clockMetas = mutableMapOf<IconEntry, ClockMetadata>()
 
-    private val idCache = mutableMapOf<String, Int>()
+    // Components and drawable ids of the appfilter, componentMap being used if it can't be written
+    @Volatile
+    private var index: AppFilterIndex? = null
+
+    // Icons can be rendered from several threads, see IconCacheRebuilder
+    private val idCache = ConcurrentHashMap<String, Int>()
 
     override val label = context.packageManager.let { pm ->
         pm.getApplicationInfo(packPackageName, 0).loadLabel(pm).toString()
@@ -38,7 +45,10 @@ class CustomIconPack(context: Context, packPackageName: String) :
         startLoad()
     }
 
-    override fun getIcon(componentName: ComponentName) = componentMap[componentName]
+    override fun getIcon(componentName: ComponentName): IconEntry? {
+        val index = index ?: return componentMap[componentName]
+        return index.getDrawableName(componentName)?.let { IconEntry(packPackageName, it, IconType.Normal) }
+    }
     override fun getCalendar(componentName: ComponentName) = calendarMap[componentName]
     override fun getClock(entry: IconEntry) = clockMetas[entry]
 
@@ -68,7 +78,57 @@ class CustomIconPack(context: Context, packPackageName: String) :
     }
 
     override fun loadInternal() {
-        val parseXml = getXml("appfilter") ?: return
+        val packageInfo = try {
+            context.packageManager.getPackageInfo(packPackageName, 0)
+        } catch (e: PackageManager.NameNotFoundException) {
+            e.printStackTrace()
+            return
+        }
+        val versionCode = packageInfo.longVersionCode
+        val indexFile = File(context.cacheDir, "$INDEX_DIR/$packPackageName.idx")
+
+        var index = AppFilterIndex.open(indexFile, versionCode, packageInfo.lastUpdateTime)
+        if (index == null) {
+            val appFilter = parseAppFilter() ?: return
+            // Don't persist what was read of an appfilter which failed to parse
+            if (appFilter.isComplete &&
+                AppFilterIndex.write(indexFile, appFilter, versionCode, packageInfo.lastUpdateTime)
+            ) {
+                index = AppFilterIndex.open(indexFile, versionCode, packageInfo.lastUpdateTime)
+            }
+            if (index == null) {
+                appFilter.components.forEach { (componentName, drawableName) ->
+                    componentMap[componentName] = IconEntry(packPackageName, drawableName, IconType.Normal)
+                }
+                val clockComponents = appFilter.components.filterValues { appFilter.clocks.containsKey(it) }
+                loadDynamicIcons(appFilter.calendars, clockComponents, appFilter.clocks)
+                return
+            }
+        }
+        loadDynamicIcons(index.readCalendars(), index.readClockComponents(), index.readClocks())
+        this.index = index
+    }
+
+    private fun loadDynamicIcons(
+        calendars: Map<ComponentName, String>,
+        clockComponents: Map<ComponentName, String>,
+        clocks: Map<String, IntArray>,
+    ) {
+        calendars.forEach { (componentName, prefix) ->
+            calendarMap[componentName] = IconEntry(packPackageName, prefix, IconType.Calendar)
+        }
+        clockComponents.forEach { (componentName, drawableName) ->
+            clockMap[componentName] = IconEntry(packPackageName, drawableName, IconType.Normal)
+        }
+        clocks.forEach { (drawableName, values) ->
+            clockMetas[IconEntry(packPackageName, drawableName, IconType.Normal)] =
+                ClockMetadata(values[0], values[1], values[2], values[3], values[4], values[5])
+        }
+    }
+
+    private fun parseAppFilter(): AppFilter? {
+        val parseXml = getXml("appfilter") ?: return null
+        val appFilter = AppFilter()
         val compStart = "ComponentInfo{"
         val compStartLength = compStart.length
         val compEnd = "}"
@@ -89,9 +149,9 @@ class CustomIconPack(context: Context, packPackageName: String) :
                             val parsed = ComponentName.unflattenFromString(componentName)
                             if (parsed != null) {
                                 if (isCalendar) {
-                                    calendarMap[parsed] = IconEntry(packPackageName, drawableName, IconType.Calendar)
+                                    appFilter.calendars[parsed] = drawableName
                                 } else {
-                                    componentMap[parsed] = IconEntry(packPackageName, drawableName, IconType.Normal)
+                                    appFilter.components[parsed] = drawableName
                                 }
                             }
                         }
@@ -100,7 +160,7 @@ class CustomIconPack(context: Context, packPackageName: String) :
                         val drawableName = parseXml["drawable"]
                         if (drawableName != null) {
                             if (parseXml is XmlResourceParser) {
-                                clockMetas[IconEntry(packPackageName, drawableName, IconType.Normal)] = ClockMetadata(
+                                appFilter.clocks[drawableName] = intArrayOf(
                                     parseXml.getAttributeIntValue(null, "hourLayerIndex", -1),
                                     parseXml.getAttributeIntValue(null, "minuteLayerIndex", -1),
                                     parseXml.getAttributeIntValue(null, "secondLayerIndex", -1),
@@ -113,20 +173,20 @@ class CustomIconPack(context: Context, packPackageName: String) :
                     }
                 }
             }
-            componentMap.forEach { (componentName, iconEntry) ->
-                if (clockMetas.containsKey(iconEntry)) {
-                    clockMap[componentName] = iconEntry
-                }
-            }
         } catch (e: PackageManager.NameNotFoundException) {
             e.printStackTrace()
+            appFilter.isComplete = false
         } catch (e: XmlPullParserException) {
             e.printStackTrace()
+            appFilter.isComplete = false
         } catch (e: IOException) {
             e.printStackTrace()
+            appFilter.isComplete = false
         } catch (e: IllegalStateException) {
             e.printStackTrace()
+            appFilter.isComplete = false
         }
+        return appFilter
     }
 
     override fun getAllIcons(): Flow<List<IconPickerCategory>> = flow {
@@ -168,11 +228,15 @@ class CustomIconPack(context: Context, packPackageName: String) :
         endCategory()
     }.flowOn(Dispatchers.IO)
 
-    @SuppressLint("DiscouragedApi")
-    private fun getDrawableId(name: String) = idCache.getOrPut(name) {
-        packResources.getIdentifier(name, "drawable", packPackageName)
+    private fun getDrawableId(name: String): Int {
+        // Drawables of the appfilter are resolved into the index, so they are kept across restarts
+        index?.getDrawableId(name, ::resolveDrawableId)?.let { return it }
+        return idCache.getOrPut(name) { resolveDrawableId(name) }
     }
 
+    @SuppressLint("DiscouragedApi")
+    private fun resolveDrawableId(name: String) = packResources.getIdentifier(name, "drawable", packPackageName)
+
     private fun getXml(name: String): XmlPullParser? {
         val res: Resources
         try {
@@ -193,6 +257,10 @@ class CustomIconPack(context: Context, packPackageName: String) :
         }
         return null
     }
+
+    companion object {
+        private const val INDEX_DIR = "icon_pack_index"
+    }
 }
 
 private operator fun XmlPullParser.get(key: String): String? = this.getAttributeValue(null, key)
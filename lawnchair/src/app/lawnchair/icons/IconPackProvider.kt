@@ -1,8 +1,13 @@
 package app.lawnchair.icons
 
 import android.annotation.SuppressLint
+import android.content.BroadcastReceiver
+import android.content.ComponentName
 import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
 import android.content.pm.PackageManager
+import android.content.res.Resources
 import android.graphics.drawable.AdaptiveIconDrawable
 import android.graphics.drawable.ColorDrawable
 import android.graphics.drawable.Drawable
@@ -10,15 +15,40 @@ import android.graphics.drawable.InsetDrawable
 import android.os.Build
 import android.os.Process
 import android.os.UserHandle
+import app.lawnchair.util.getPackageVersionCode
 import app.lawnchair.util.getThemedIconPacksInstalled
 import com.android.launcher3.icons.ClockDrawableWrapper
 import com.android.launcher3.icons.ThemedIconDrawable
 import com.android.launcher3.util.MainThreadInitializedObject
+import java.util.concurrent.ConcurrentHashMap
 
 class IconPackProvider(private val context: Context) {
 
     private val iconPacks = mutableMapOf<String, IconPack?>()
 
+    // Discovering themed icon packs and loading their resources are binder calls, so they are
+    // cached until a package changes rather than repeated for every icon
+    @Volatile
+    private var themedIconPacks: Set<String>? = null
+    private val packResources = ConcurrentHashMap<String, Resources>()
+    private val themeMaps = ConcurrentHashMap<String, Map<ComponentName, ThemedIconDrawable.ThemeData>>()
+    private val packageVersions = ConcurrentHashMap<String, Long>()
+
+    private val packageChangeReceiver = object : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            val packageName = intent.data?.schemeSpecificPart ?: return
+            invalidate(packageName)
+        }
+    }
+
+    init {
+        val filter = IntentFilter(Intent.ACTION_PACKAGE_ADDED)
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED)
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED)
+        filter.addDataScheme("package")
+        context.registerReceiver(packageChangeReceiver, filter)
+    }
+
     fun getIconPackOrSystem(packageName: String): IconPack? {
         if (packageName.isEmpty()) return SystemIconPack(context, packageName)
         return getIconPack(packageName)
@@ -28,15 +58,51 @@ class IconPackProvider(private val context: Context) {
         if (packageName.isEmpty()) {
             return null
         }
-        return iconPacks.getOrPut(packageName) {
-            try {
-                CustomIconPack(context, packageName)
-            } catch (_: PackageManager.NameNotFoundException) {
-                null
+        return synchronized(iconPacks) {
+            iconPacks.getOrPut(packageName) {
+                try {
+                    CustomIconPack(context, packageName)
+                } catch (_: PackageManager.NameNotFoundException) {
+                    null
+                }
             }
         }
     }
 
+    /**
+     * Returns the packages of the installed themed icon packs
+     */
+    fun getThemedIconPacks(): Set<String> = themedIconPacks
+        ?: context.packageManager.getThemedIconPacksInstalled(context).toSet().also { themedIconPacks = it }
+
+    /**
+     * Returns the theme map of [packageName], creating it with [create] if it isn't cached
+     */
+    fun getThemeMap(
+        packageName: String,
+        create: () -> Map<ComponentName, ThemedIconDrawable.ThemeData>,
+    ): Map<ComponentName, ThemedIconDrawable.ThemeData> = themeMaps.getOrPut(packageName, create)
+
+    /**
+     * Returns the version code of [packageName], or -1 if it isn't installed
+     */
+    fun getPackageVersion(packageName: String): Long = packageVersions.getOrPut(packageName) {
+        context.packageManager.getPackageVersionCode(packageName)
+    }
+
+    /**
+     * Drops everything cached about [packageName], after it was installed, updated or removed
+     */
+    fun invalidate(packageName: String) {
+        themedIconPacks = null
+        packResources.remove(packageName)
+        themeMaps.remove(packageName)
+        packageVersions.remove(packageName)
+        synchronized(iconPacks) {
+            iconPacks.remove(packageName)
+        }
+    }
+
     fun getClockMetadata(iconEntry: IconEntry): ClockMetadata? {
         val iconPack = getIconPackOrSystem(iconEntry.packPackageName) ?: return null
         return iconPack.getClock(iconEntry)
@@ -45,11 +111,9 @@ class IconPackProvider(private val context: Context) {
     fun getDrawable(iconEntry: IconEntry, iconDpi: Int, user: UserHandle): Drawable? {
         val iconPack = getIconPackOrSystem(iconEntry.packPackageName) ?: return null
         iconPack.loadBlocking()
-        val packageManager = context.packageManager
         val drawable = iconPack.getIcon(iconEntry, iconDpi) ?: return null
-        val themedIconPacks = packageManager.getThemedIconPacksInstalled(context)
         val isThemedIconsEnabled =
-            context.isThemedIconsEnabled() && (iconEntry.packPackageName in themedIconPacks)
+            context.isThemedIconsEnabled() && (iconEntry.packPackageName in getThemedIconPacks())
         val clockMetadata =
             if (user == Process.myUserHandle()) iconPack.getClock(iconEntry) else null
         if (clockMetadata != null) {
@@ -57,7 +121,6 @@ class IconPackProvider(private val context: Context) {
                 ClockDrawableWrapper.forMeta(Build.VERSION.SDK_INT, clockMetadata) {
                     if (isThemedIconsEnabled) {
                         wrapThemedData(
-                            packageManager,
                             iconEntry,
                             drawable,
                         )
@@ -77,18 +140,19 @@ class IconPackProvider(private val context: Context) {
             }
         }
         if (isThemedIconsEnabled) {
-            return wrapThemedData(packageManager, iconEntry, drawable)
+            return wrapThemedData(iconEntry, drawable)
         }
         return drawable
     }
 
     private fun wrapThemedData(
-        packageManager: PackageManager,
         iconEntry: IconEntry,
         drawable: Drawable,
     ): Drawable? {
         val themedColors: IntArray = ThemedIconDrawable.getThemedColors(context)
-        val res = packageManager.getResourcesForApplication(iconEntry.packPackageName)
+        val res = packResources.getOrPut(iconEntry.packPackageName) {
+            context.packageManager.getResourcesForApplication(iconEntry.packPackageName)
+        }
 
         @SuppressLint("DiscouragedApi")
         val resId = res.getIdentifier(iconEntry.name, "drawable", iconEntry.packPackageName)
@@ -55,25 +55,36 @@ class LawnchairIconProvider @JvmOverloads constructor(
     private val iconPack get() = iconPackProvider.getIconPack(iconPackPref.get())?.apply { loadBlocking() }
     private val themedIconPack get() = iconPackProvider.getIconPack(themedIconPackPref.get())?.apply { loadBlocking() }
     private var isOlderLawnIconsInstalled = context.packageManager.getPackageVersionCode(LAWNICONS_PACKAGE_NAME) in 1..3
+
+    @Volatile
     private var iconPackVersion = 0L
+
+    @Volatile
     private var themeMapName: String = ""
+
+    @Volatile
     private var _themeMap: Map<ComponentName, ThemedIconDrawable.ThemeData>? = null
 
+    // Resolved lazily from any thread rendering icons, see IconCacheRebuilder
     val themeMap: Map<ComponentName, ThemedIconDrawable.ThemeData>
-        get() {
+        @Synchronized get() {
             if (drawerThemedIcons.get() && !(isOlderLawnIconsInstalled)) {
                 _themeMap = DISABLED_MAP
             }
             if (_themeMap == null) {
-                _themeMap = createThemedIconMap()
+                _themeMap = getOrCreateThemedIconMap()
             }
-            if (isOlderLawnIconsInstalled && themedIconPackPref.get() == LAWNICONS_PACKAGE_NAME) {
-                themeMapName = themedIconPackPref.get()
-                _themeMap = createThemedIconMap()
+            // Maps are cached by IconPackProvider, so only switching packs needs a lookup
+            if (isOlderLawnIconsInstalled && themedIconPackPref.get() == LAWNICONS_PACKAGE_NAME &&
+                (themeMapName != LAWNICONS_PACKAGE_NAME || _themeMap === DISABLED_MAP)
+            ) {
+                themeMapName = LAWNICONS_PACKAGE_NAME
+                _themeMap = getOrCreateThemedIconMap()
             }
-            if (themedIconPack != null && themeMapName != themedIconPack!!.packPackageName) {
-                themeMapName = themedIconPack!!.packPackageName
-                _themeMap = createThemedIconMap()
+            val themedIconPack = themedIconPack
+            if (themedIconPack != null && themeMapName != themedIconPack.packPackageName) {
+                themeMapName = themedIconPack.packPackageName
+                _themeMap = getOrCreateThemedIconMap()
             }
             return _themeMap!!
         }
@@ -83,6 +94,7 @@ class LawnchairIconProvider @JvmOverloads constructor(
         setIconThemeSupported(supportsIconTheme)
     }
 
+    @Synchronized
     override fun setIconThemeSupported(isSupported: Boolean) {
         _themeMap = if (isSupported && isOlderLawnIconsInstalled) null else DISABLED_MAP
     }
@@ -326,6 +338,7 @@ class LawnchairIconProvider @JvmOverloads constructor(
         }
 
         override fun onReceive(context: Context, intent: Intent) {
+            iconPackProvider.invalidate(themeMapName)
             if (isThemeEnabled) {
                 setIconThemeSupported(true)
             }
@@ -337,6 +350,15 @@ class LawnchairIconProvider @JvmOverloads constructor(
         }
     }
 
+    private fun getOrCreateThemedIconMap(): Map<ComponentName, ThemedIconDrawable.ThemeData> {
+        val themeMap = iconPackProvider.getThemeMap(themeMapName, ::createThemedIconMap)
+        val version = iconPackProvider.getPackageVersion(themeMapName)
+        if (version >= 0) {
+            iconPackVersion = version
+        }
+        return themeMap
+    }
+
     private fun createThemedIconMap(): MutableMap<ComponentName, ThemedIconDrawable.ThemeData> {
         val map = ArrayMap<ComponentName, ThemedIconDrawable.ThemeData>()
 
@@ -373,7 +395,6 @@ class LawnchairIconProvider @JvmOverloads constructor(
             packageName = context.packageName,
         )
         if (context.packageManager.isPackageInstalled(packageName = themeMapName)) {
-            iconPackVersion = context.packageManager.getPackageVersionCode(themeMapName)
             updateMapFromResources(
                 resources = context.packageManager.getResourcesForApplication(themeMapName),
                 packageName = themeMapName,
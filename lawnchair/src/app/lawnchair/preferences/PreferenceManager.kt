@@ -88,6 +88,8 @@ class PreferenceManager private constructor(private val context: Context) : Base
     val searchResulRecentSuggestion = BoolPref("pref_searchResultRecentSuggestion", false, recreate)
 
     val allAppBulkIconLoading = BoolPref("pref_allapps_bulk_icon_loading", false, recreate)
+    val pipelinedModelLoading = BoolPref("pref_pipelined_model_loading", false)
+    val iconSnapshot = BoolPref("pref_icon_snapshot", false)
 
     val themedIcons = BoolPref("themed_icons", true, recreate)
     val drawerThemedIcons = BoolPref("drawer_themed_icons", false, recreate)
@@ -51,6 +51,7 @@ import com.android.launcher3.util.MainThreadInitializedObject
 import com.patrykmichalik.opto.core.PreferenceManager
 import com.patrykmichalik.opto.core.firstBlocking
 import com.patrykmichalik.opto.core.setBlocking
+import com.patrykmichalik.opto.domain.Preference
 import kotlinx.coroutines.MainScope
 import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.drop
@@ -75,7 +76,14 @@ class PreferenceManager2 private constructor(private val context: Context) : Pre
     )
 
     override val preferencesDataStore = context.preferencesDataStore
-    private val reloadHelper = ReloadHelper(context)
+    private val snapshot = PreferenceSnapshot(scope)
+    private val reloadHelper = ReloadHelper(context, snapshot)
+
+    /**
+     * Returns the current value of [preference] without blocking on DataStore, for synchronous
+     * reads on layout, drag and draw paths.
+     */
+    fun <C> value(preference: Preference<C, *, *>): C = snapshot.get(preference)
 
     val darkStatusBar = preference(
         key = booleanPreferencesKey(name = "dark_status_bar"),
@@ -0,0 +1,56 @@
+package app.lawnchair.preferences2
+
+import com.patrykmichalik.opto.core.firstBlocking
+import com.patrykmichalik.opto.domain.Preference
+import java.util.concurrent.ConcurrentHashMap
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.launchIn
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.plus
+
+/**
+ * In-memory copy of the preference values read synchronously by the launcher.
+ *
+ * Reading a preference through [firstBlocking] starts a coroutine and waits for DataStore on every
+ * call, which is too slow for layout, drag and draw paths. Instead, the first read of a preference
+ * blocks once, and then keeps collecting its flow to replace the cached value whenever it changes,
+ * so that later reads are a volatile field access. Values are updated from DataStore's thread, and
+ * may lag slightly behind a write made on another thread: code reacting to a write, like the
+ * reloads of [ReloadHelper], calls [refresh] first so that it reads the written value.
+ */
+class PreferenceSnapshot(scope: CoroutineScope) {
+
+    // Collectors only swap a field, so they don't need to hop to the main thread
+    private val scope = scope + Dispatchers.Unconfined
+    private val values = ConcurrentHashMap<Preference<*, *, *>, Value<*>>()
+
+    @Suppress("UNCHECKED_CAST")
+    fun <C> get(preference: Preference<C, *, *>): C {
+        val value = values[preference] ?: values.computeIfAbsent(preference) { track(preference) }
+        return (value as Value<C>).current
+    }
+
+    /**
+     * Reads the current value of every preference read so far again, blocking on DataStore
+     */
+    fun refresh() {
+        values.forEach { (preference, value) -> value.refresh(preference) }
+    }
+
+    private fun <C> track(preference: Preference<C, *, *>): Value<C> {
+        val value = Value(preference.firstBlocking())
+        preference.get()
+            .onEach { value.current = it }
+            .launchIn(scope)
+        return value
+    }
+
+    private class Value<C>(@Volatile var current: C) {
+
+        @Suppress("UNCHECKED_CAST")
+        fun refresh(preference: Preference<*, *, *>) {
+            current = (preference as Preference<C, *, *>).firstBlocking()
+        }
+    }
+}
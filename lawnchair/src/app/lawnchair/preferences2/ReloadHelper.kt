@@ -22,7 +22,11 @@ import com.android.launcher3.InvariantDeviceProfile
 import com.android.quickstep.TouchInteractionService
 import com.android.quickstep.util.TISBindHelper
 
-class ReloadHelper(private val context: Context) {
+/**
+ * Reloads the parts of the launcher depending on a preference after it was set. Each reload
+ * refreshes [snapshot] first, as the values it reads may not have caught up with the write yet.
+ */
+class ReloadHelper(private val context: Context, private val snapshot: PreferenceSnapshot) {
 
     private val idp: InvariantDeviceProfile
         get() = InvariantDeviceProfile.INSTANCE.get(context)
@@ -30,10 +34,12 @@ class ReloadHelper(private val context: Context) {
     private val tisBinder = TISBindHelper(context) { tis = it }
 
     fun reloadGrid() {
+        snapshot.refresh()
         idp.onPreferencesChanged(context)
     }
 
     fun recreate() {
+        snapshot.refresh()
         LawnchairLauncher.instance?.recreateIfNotScheduled()
     }
 
@@ -43,10 +49,12 @@ class ReloadHelper(private val context: Context) {
     }
 
     fun reloadIcons() {
+        snapshot.refresh()
         idp.onPreferencesChanged(context)
     }
 
     fun reloadTaskbar() {
+        snapshot.refresh()
         tisBinder.runOnBindToTouchInteractionService {
             tis?.taskbarManager?.onUserPreferenceChanged()
         }
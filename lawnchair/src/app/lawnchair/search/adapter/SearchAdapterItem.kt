@@ -40,6 +40,18 @@ data class SearchAdapterItem(
         child.background = rippleDrawable
     }
 
+    // Identify results by their target, so that results which are kept while other search
+    // sources complete stay in place instead of being rebound as different items
+    override fun isSameAs(other: BaseAllAppsAdapter.AdapterItem): Boolean {
+        return other is SearchAdapterItem &&
+            other.viewType == viewType &&
+            other.searchTarget.id == searchTarget.id
+    }
+
+    override fun isContentSame(other: BaseAllAppsAdapter.AdapterItem): Boolean {
+        return other == this
+    }
+
     companion object {
 
         fun createAdapterItem(
@@ -0,0 +1,384 @@
+package app.lawnchair.search.algorithms
+
+import androidx.annotation.VisibleForTesting
+import com.android.launcher3.model.data.AppInfo
+import java.util.Locale
+import java.util.PriorityQueue
+import java.util.WeakHashMap
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.roundToInt
+
+/**
+ * Fuzzy matcher for app titles, scoring like fuzzywuzzy's `WeightedRatio` (the best of the plain,
+ * partial, token sort and token set ratios) without redoing the per-app work on every keystroke.
+ *
+ * The normalized title, its sorted tokens and sorted characters are computed once per app and
+ * cached until the title changes. Apps which cannot reach [cutoff] based on the characters they
+ * share with the query are skipped before running any edit distance, and only the best
+ * `limit` results are kept in a bounded heap instead of sorting every score.
+ */
+class FuzzyAppMatcher(private val cutoff: Int = DEFAULT_CUTOFF) {
+
+    private val candidates = WeakHashMap<AppInfo, Candidate>()
+
+    /**
+     * Returns up to [limit] apps scoring at least [cutoff] against [query], best match first.
+     * Apps with the same score keep their order in [apps].
+     */
+    fun search(apps: Sequence<AppInfo>, query: String, limit: Int): List<AppInfo> {
+        if (limit <= 0) return emptyList()
+        val q = Text(normalize(query))
+        if (q.value.isEmpty()) return emptyList()
+
+        // Min-heap on (score, -index), so that the root is always the first result to drop
+        val heap = PriorityQueue<Match>(limit + 1) { a, b ->
+            if (a.score != b.score) a.score - b.score else b.index - a.index
+        }
+        apps.forEachIndexed { index, app ->
+            val candidate = getCandidate(app)
+            if (!mayReachCutoff(q, candidate.text)) return@forEachIndexed
+            val score = weightedRatio(q, candidate.text)
+            if (score < cutoff) return@forEachIndexed
+            if (heap.size < limit) {
+                heap.add(Match(app, score, index))
+            } else {
+                val worst = heap.peek()!!
+                if (score > worst.score) {
+                    heap.poll()
+                    heap.add(Match(app, score, index))
+                }
+            }
+        }
+        return heap.sortedWith(compareByDescending<Match> { it.score }.thenBy { it.index })
+            .map { it.app }
+    }
+
+    /**
+     * Returns the score of [title] against [query], without any of the filtering of [search]
+     */
+    @VisibleForTesting
+    fun score(query: String, title: String): Int {
+        val q = Text(normalize(query))
+        val t = Text(normalize(title))
+        if (q.value.isEmpty() || t.value.isEmpty()) return 0
+        return weightedRatio(q, t)
+    }
+
+    private fun getCandidate(app: AppInfo): Candidate {
+        val title = app.title?.toString().orEmpty()
+        val sectionName = app.sectionName.orEmpty()
+        synchronized(candidates) {
+            val cached = candidates[app]
+            if (cached != null && cached.title == title && cached.sectionName == sectionName) {
+                return cached
+            }
+            return Candidate(title, sectionName, Text(normalize(sectionName + title)))
+                .also { candidates[app] = it }
+        }
+    }
+
+    /**
+     * Cheap upper bound of [weightedRatio], from the number of characters the strings have in
+     * common. The token set ratios can reach 100 as soon as a whole token is shared, so any
+     * shared token lets the app through.
+     */
+    private fun mayReachCutoff(q: Text, t: Text): Boolean {
+        // Tokens have no spaces, so apps without a shared letter or digit share no token either
+        val common = if ((q.signature and t.signature) == 0L) {
+            min(q.spaces, t.spaces)
+        } else {
+            if (q.tokens.any { it in t.tokenSet }) return true
+            commonCharCount(q.sortedChars, t.sortedChars)
+        }
+        if (common == 0) return false
+
+        // Every string the scorers compare is at least as long as the unique tokens joined, so
+        // a ratio is at most 2 * common / (m + n) of those lengths. A partial ratio may compare
+        // against a window cut at the end of the longer string, as short as the common part.
+        val shortest = min(q.minLength, t.minLength)
+        val ratioBound = 2.0 * common / (q.minLength + t.minLength)
+        val partialBound = PARTIAL_SCALE * min(1.0, 2.0 * common / (shortest + common))
+        // Scores are rounded, so anything from cutoff - 0.5 may still make it
+        return 100 * max(ratioBound, partialBound) >= cutoff - 0.5
+    }
+
+    private fun weightedRatio(q: Text, t: Text): Int {
+        val len1 = q.value.length
+        val len2 = t.value.length
+        val base = ratio(q.value, t.value).toDouble()
+        val lenRatio = max(len1, len2).toDouble() / min(len1, len2)
+
+        if (lenRatio < 1.5) {
+            val tokenSort = ratio(q.sortedTokens, t.sortedTokens) * UNBASE_SCALE
+            val tokenSet = tokenSetRatio(q, t, ::ratio) * UNBASE_SCALE
+            return maxOf(base, tokenSort, tokenSet).roundToInt()
+        }
+
+        val partialScale = if (lenRatio > 8) LONG_PARTIAL_SCALE else PARTIAL_SCALE
+        val partial = partialRatio(q.value, t.value) * partialScale
+        val partialSort = partialRatio(q.sortedTokens, t.sortedTokens) * UNBASE_SCALE * partialScale
+        val partialSet = tokenSetRatio(q, t, ::partialRatio) * UNBASE_SCALE * partialScale
+        return maxOf(base, partial, partialSort, partialSet).roundToInt()
+    }
+
+    private fun tokenSetRatio(q: Text, t: Text, scorer: (String, String) -> Int): Int {
+        val intersection = q.tokenSet.filter { it in t.tokenSet }.sorted()
+        val diff1 = q.tokenSet.filter { it !in t.tokenSet }.sorted()
+        val diff2 = t.tokenSet.filter { it !in q.tokenSet }.sorted()
+
+        val sorted = intersection.joinToString(" ")
+        val combined1 = joinNonEmpty(sorted, diff1.joinToString(" "))
+        val combined2 = joinNonEmpty(sorted, diff2.joinToString(" "))
+        return maxOf(
+            scorer(sorted, combined1),
+            scorer(sorted, combined2),
+            scorer(combined1, combined2),
+        )
+    }
+
+    private fun joinNonEmpty(a: String, b: String) = when {
+        a.isEmpty() -> b
+        b.isEmpty() -> a
+        else -> "$a $b"
+    }
+
+    private class Candidate(
+        val title: String,
+        val sectionName: String,
+        val text: Text,
+    )
+
+    private class Match(
+        val app: AppInfo,
+        val score: Int,
+        val index: Int,
+    )
+
+    private enum class EditType { REPLACE, INSERT, DELETE }
+
+    private class EditOp(val type: EditType, val spos: Int, val dpos: Int)
+
+    private class MatchingBlock(val spos: Int, val dpos: Int, val length: Int)
+
+    /**
+     * Normalized string along with everything the scorers derive from it
+     */
+    private class Text(val value: String) {
+        val tokens: List<String> = value.split(' ').filter { it.isNotEmpty() }
+        val tokenSet: Set<String> = tokens.toSet()
+        val sortedTokens: String = tokens.sorted().joinToString(" ")
+        val sortedChars: CharArray = value.toCharArray().apply { sort() }
+        val spaces: Int = value.count { it == ' ' }
+
+        // Letters and digits only, spaces are shared by most titles and would defeat the filter
+        val signature: Long = value.fold(0L) { acc, c ->
+            if (c == ' ') acc else acc or (1L shl (c.code and 63))
+        }
+
+        // Length of the unique tokens joined, the shortest string the scorers build from this
+        val minLength: Int = tokenSet.sumOf { it.length } + max(tokenSet.size - 1, 0)
+    }
+
+    companion object {
+
+        const val DEFAULT_CUTOFF = 65
+
+        private const val UNBASE_SCALE = 0.95
+        private const val PARTIAL_SCALE = 0.9
+        private const val LONG_PARTIAL_SCALE = 0.6
+
+        private val NON_WORD = Regex("(?ui)\\W")
+
+        /**
+         * Same processing as fuzzywuzzy's default string processor: every non word character is
+         * replaced by a space, then the string is lowercased and trimmed.
+         */
+        private fun normalize(s: String): String =
+            s.replace(NON_WORD, " ").lowercase(Locale.getDefault()).trim()
+
+        /**
+         * Levenshtein ratio with substitutions counting as two edits, which is `2 * LCS / (m + n)`
+         */
+        private fun ratio(s1: String, s2: String): Int {
+            val lenSum = s1.length + s2.length
+            if (lenSum == 0) return 0
+            return (100 * lcsRatio(s1, 0, s1.length, s2)).roundToInt()
+        }
+
+        /**
+         * Same as fuzzywuzzy's partial ratio: the best [ratio] of the shorter string against the
+         * windows of the longer one aligned on each block the two strings have in common. Windows
+         * are cut at the end of the longer string.
+         */
+        private fun partialRatio(s1: String, s2: String): Int {
+            val shorter = if (s1.length < s2.length) s1 else s2
+            val longer = if (s1.length < s2.length) s2 else s1
+            if (shorter.isEmpty()) return 0
+            var best = 0.0
+            for (block in matchingBlocks(shorter, longer)) {
+                val start = max(block.dpos - block.spos, 0)
+                val end = min(start + shorter.length, longer.length)
+                val ratio = lcsRatio(longer, start, end, shorter)
+                if (ratio > 0.995) return 100
+                best = max(best, ratio)
+            }
+            return (100 * best).roundToInt()
+        }
+
+        private fun lcsRatio(a: String, from: Int, to: Int, b: String): Double =
+            2 * lcsLength(a, from, to, b) / (to - from + b.length).toDouble()
+
+        private fun lcsLength(a: String, from: Int, to: Int, b: String): Int {
+            if (from >= to || b.isEmpty()) return 0
+            var prev = IntArray(b.length + 1)
+            var curr = IntArray(b.length + 1)
+            for (i in from until to) {
+                val c = a[i]
+                for (j in 1..b.length) {
+                    curr[j] = if (c == b[j - 1]) prev[j - 1] + 1 else max(prev[j], curr[j - 1])
+                }
+                val tmp = prev
+                prev = curr
+                curr = tmp
+            }
+            return prev[b.length]
+        }
+
+        /**
+         * Blocks the two strings have in common, derived from their Levenshtein edit operations
+         * the same way as python-Levenshtein, and so fuzzywuzzy, do. The last block is always the
+         * empty one at the end of both strings.
+         */
+        private fun matchingBlocks(s1: String, s2: String): List<MatchingBlock> {
+            val blocks = ArrayList<MatchingBlock>()
+            var spos = 0
+            var dpos = 0
+            val ops = editOps(s1, s2)
+            var i = 0
+            while (i < ops.size) {
+                val op = ops[i]
+                if (spos < op.spos || dpos < op.dpos) {
+                    blocks.add(MatchingBlock(spos, dpos, op.spos - spos))
+                    spos = op.spos
+                    dpos = op.dpos
+                }
+                // Consecutive operations of the same type form a single gap
+                do {
+                    if (op.type != EditType.INSERT) spos++
+                    if (op.type != EditType.DELETE) dpos++
+                    i++
+                } while (i < ops.size && ops[i].type == op.type &&
+                    spos == ops[i].spos && dpos == ops[i].dpos
+                )
+            }
+            if (spos < s1.length || dpos < s2.length) {
+                blocks.add(MatchingBlock(spos, dpos, s1.length - spos))
+            }
+            blocks.add(MatchingBlock(s1.length, s2.length, 0))
+            return blocks
+        }
+
+        /**
+         * Levenshtein edit operations turning [s1] into [s2], picked from the cost matrix with
+         * the same preferences as python-Levenshtein, since they decide the matching blocks.
+         */
+        private fun editOps(s1: String, s2: String): List<EditOp> {
+            // Strip the common prefix and suffix
+            var offset = 0
+            var len1 = s1.length
+            var len2 = s2.length
+            while (len1 > 0 && len2 > 0 && s1[offset] == s2[offset]) {
+                offset++
+                len1--
+                len2--
+            }
+            while (len1 > 0 && len2 > 0 && s1[offset + len1 - 1] == s2[offset + len2 - 1]) {
+                len1--
+                len2--
+            }
+            val rows = len1 + 1
+            val cols = len2 + 1
+
+            val matrix = IntArray(rows * cols)
+            for (j in 0 until cols) matrix[j] = j
+            for (i in 1 until rows) {
+                matrix[i * cols] = i
+                val c1 = s1[offset + i - 1]
+                var x = i
+                for (j in 1 until cols) {
+                    val prev = (i - 1) * cols + j
+                    x = minOf(
+                        x + 1,
+                        matrix[prev - 1] + if (c1 == s2[offset + j - 1]) 0 else 1,
+                        matrix[prev] + 1,
+                    )
+                    matrix[i * cols + j] = x
+                }
+            }
+
+            // Walk back from the end, preferring to keep going in the same direction
+            var pos = matrix[rows * cols - 1]
+            val ops = arrayOfNulls<EditOp>(pos)
+            var i = rows - 1
+            var j = cols - 1
+            var p = rows * cols - 1
+            var dir = 0
+            while (i > 0 || j > 0) {
+                if (dir < 0 && j > 0 && matrix[p] == matrix[p - 1] + 1) {
+                    j--
+                    ops[--pos] = EditOp(EditType.INSERT, i + offset, j + offset)
+                    p--
+                } else if (dir > 0 && i > 0 && matrix[p] == matrix[p - cols] + 1) {
+                    i--
+                    ops[--pos] = EditOp(EditType.DELETE, i + offset, j + offset)
+                    p -= cols
+                } else if (i > 0 && j > 0 && matrix[p] == matrix[p - cols - 1] &&
+                    s1[offset + i - 1] == s2[offset + j - 1]
+                ) {
+                    i--
+                    j--
+                    p -= cols + 1
+                    dir = 0
+                } else if (i > 0 && j > 0 && matrix[p] == matrix[p - cols - 1] + 1) {
+                    i--
+                    j--
+                    ops[--pos] = EditOp(EditType.REPLACE, i + offset, j + offset)
+                    p -= cols + 1
+                    dir = 0
+                } else if (dir == 0 && j > 0 && matrix[p] == matrix[p - 1] + 1) {
+                    j--
+                    ops[--pos] = EditOp(EditType.INSERT, i + offset, j + offset)
+                    p--
+                    dir = -1
+                } else if (dir == 0 && i > 0 && matrix[p] == matrix[p - cols] + 1) {
+                    i--
+                    ops[--pos] = EditOp(EditType.DELETE, i + offset, j + offset)
+                    p -= cols
+                    dir = 1
+                } else {
+                    error("Lost in the cost matrix")
+                }
+            }
+            return ops.map { it!! }
+        }
+
+        private fun commonCharCount(a: CharArray, b: CharArray): Int {
+            var i = 0
+            var j = 0
+            var count = 0
+            while (i < a.size && j < b.size) {
+                when {
+                    a[i] == b[j] -> {
+                        count++
+                        i++
+                        j++
+                    }
+                    a[i] < b[j] -> i++
+                    else -> j++
+                }
+            }
+            return count
+        }
+    }
+}
@@ -2,7 +2,6 @@ package app.lawnchair.search.algorithms
 
 import android.content.Context
 import android.content.pm.ShortcutInfo
-import android.os.Handler
 import app.lawnchair.launcher
 import app.lawnchair.preferences.PreferenceManager
 import app.lawnchair.preferences2.PreferenceManager2
@@ -13,30 +12,24 @@ import app.lawnchair.search.adapter.SearchTargetCompat
 import app.lawnchair.search.adapter.createSearchTarget
 import app.lawnchair.ui.preferences.components.HiddenAppsInSearch
 import app.lawnchair.util.isDefaultLauncher
-import com.android.launcher3.LauncherAppState
 import com.android.launcher3.allapps.BaseAllAppsAdapter
-import com.android.launcher3.model.AllAppsList
-import com.android.launcher3.model.BaseModelUpdateTask
-import com.android.launcher3.model.BgDataModel
 import com.android.launcher3.model.data.AppInfo
 import com.android.launcher3.popup.PopupPopulator
 import com.android.launcher3.search.SearchCallback
-import com.android.launcher3.search.StringMatcherUtility
+import com.android.launcher3.search.SearchResultCache
 import com.android.launcher3.shortcuts.ShortcutRequest
-import com.android.launcher3.util.Executors
 import com.patrykmichalik.opto.core.onEach
 import java.util.Locale
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
-import me.xdrop.fuzzywuzzy.FuzzySearch
-import me.xdrop.fuzzywuzzy.algorithms.WeightedRatio
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
 
 class LawnchairAppSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm(context) {
 
-    private val appState = LauncherAppState.getInstance(context)
-    private val resultHandler = Handler(Executors.MAIN_EXECUTOR.looper)
     private val generateSearchTarget = GenerateSearchTarget(context)
+    private val fuzzyMatcher = FuzzyAppMatcher()
+    private val resultCache = SearchResultCache<AppInfo>(RESULT_CACHE_SIZE)
 
     private lateinit var hiddenApps: Set<String>
 
@@ -65,28 +58,19 @@ class LawnchairAppSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm(c
     }
 
     override fun doSearch(query: String, callback: SearchCallback<BaseAllAppsAdapter.AdapterItem>) {
-        appState.model.enqueueModelUpdateTask(object : BaseModelUpdateTask() {
-            override fun execute(app: LauncherAppState, dataModel: BgDataModel, apps: AllAppsList) {
-                coroutineScope.launch(Dispatchers.Main) {
-                    val results = getResult(apps.data, query)
-                    callback.onSearchResult(query, results)
-                }
-            }
-        })
+        launchSearch(query, callback) { apps -> getResult(apps, query) }
     }
 
     override fun cancel(interruptActiveRequests: Boolean) {
-        if (interruptActiveRequests) {
-            resultHandler.removeCallbacksAndMessages(null)
-        }
+        cancelActiveSearch()
     }
 
-    private fun getResult(
-        apps: MutableList<AppInfo>,
+    private suspend fun getResult(
+        apps: SearchableApps,
         query: String,
     ): ArrayList<BaseAllAppsAdapter.AdapterItem> {
         val appResults = if (enableFuzzySearch) {
-            fuzzySearch(apps, query)
+            fuzzySearch(apps.data, query)
         } else {
             normalSearch(apps, query)
         }
@@ -99,6 +83,8 @@ class LawnchairAppSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm(c
 
         if (appResults.size == 1 && context.isDefaultLauncher()) {
             val singleAppResult = appResults.first()
+            // Skip the binder call if this query has already been superseded
+            currentCoroutineContext().ensureActive()
             val shortcuts = getShortcuts(singleAppResult)
             if (shortcuts.isNotEmpty()) {
                 searchTargets.add(generateSearchTarget.getHeaderTarget(SPACE))
@@ -123,13 +109,14 @@ class LawnchairAppSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm(c
         return PopupPopulator.sortAndFilterShortcuts(shortcuts, null)
     }
 
-    private fun normalSearch(apps: List<AppInfo>, query: String): List<AppInfo> {
-        // Do an intersection of the words in the query and each title, and filter out all the
-        // apps that don't match all of the words in the query.
+    private fun normalSearch(apps: SearchableApps, query: String): List<AppInfo> {
+        // Look up the apps whose title has a break point starting with the query, through the
+        // prebuilt title index instead of matching every app. While the query is being typed,
+        // only the matches of the previous query are filtered.
         val queryTextLower = query.lowercase(Locale.getDefault())
-        val matcher = StringMatcherUtility.StringMatcher.getInstance()
-        return apps.asSequence()
-            .filter { StringMatcherUtility.matches(queryTextLower, it.title.toString(), matcher) }
+        val index = apps.searchIndex
+        return resultCache.search(queryTextLower, index.version, index::search, index::refine)
+            .asSequence()
             .filterHiddenApps(queryTextLower)
             .take(maxResultsCount)
             .toList()
@@ -137,19 +124,11 @@ class LawnchairAppSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm(c
 
     private fun fuzzySearch(apps: List<AppInfo>, query: String): List<AppInfo> {
         val queryTextLower = query.lowercase(Locale.getDefault())
-        val filteredApps = apps.asSequence()
-            .filterHiddenApps(queryTextLower)
-            .toList()
-        val matches = FuzzySearch.extractSorted(
+        return fuzzyMatcher.search(
+            apps.asSequence().filterHiddenApps(queryTextLower),
             queryTextLower,
-            filteredApps,
-            { it.sectionName + it.title },
-            WeightedRatio(),
-            65,
+            maxResultsCount,
         )
-
-        return matches.take(maxResultsCount)
-            .map { it.referent }
     }
 
     private fun Sequence<AppInfo>.filterHiddenApps(query: String): Sequence<AppInfo> {
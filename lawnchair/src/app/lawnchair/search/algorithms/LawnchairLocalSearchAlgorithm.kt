@@ -2,7 +2,6 @@ package app.lawnchair.search.algorithms
 
 import android.content.Context
 import android.content.pm.ShortcutInfo
-import android.os.Handler
 import app.lawnchair.launcher
 import app.lawnchair.preferences.PreferenceManager
 import app.lawnchair.preferences2.PreferenceManager2
@@ -25,46 +24,48 @@ import app.lawnchair.search.algorithms.data.Calculation
 import app.lawnchair.search.algorithms.data.ContactInfo
 import app.lawnchair.search.algorithms.data.IFileInfo
 import app.lawnchair.search.algorithms.data.RecentKeyword
+import app.lawnchair.search.algorithms.data.SearchSnapshots
 import app.lawnchair.search.algorithms.data.SettingInfo
+import app.lawnchair.search.algorithms.data.StartPageSuggestionSource
+import app.lawnchair.search.algorithms.data.WebSuggestionSource
 import app.lawnchair.search.algorithms.data.calculateEquationFromString
 import app.lawnchair.search.algorithms.data.findContactsByName
 import app.lawnchair.search.algorithms.data.findSettingsByNameAndAction
 import app.lawnchair.search.algorithms.data.getRecentKeyword
-import app.lawnchair.search.algorithms.data.getStartPageSuggestions
+import app.lawnchair.search.algorithms.data.getWebSuggestions
 import app.lawnchair.search.algorithms.data.queryFilesInMediaStore
 import app.lawnchair.ui.preferences.components.HiddenAppsInSearch
 import app.lawnchair.util.checkAndRequestFilesPermission
 import app.lawnchair.util.isDefaultLauncher
 import app.lawnchair.util.requestContactPermissionGranted
-import com.android.launcher3.LauncherAppState
 import com.android.launcher3.R
 import com.android.launcher3.allapps.BaseAllAppsAdapter
-import com.android.launcher3.model.AllAppsList
-import com.android.launcher3.model.BaseModelUpdateTask
-import com.android.launcher3.model.BgDataModel
 import com.android.launcher3.model.data.AppInfo
 import com.android.launcher3.popup.PopupPopulator
 import com.android.launcher3.search.SearchCallback
-import com.android.launcher3.search.StringMatcherUtility
+import com.android.launcher3.search.SearchResultCache
 import com.android.launcher3.shortcuts.ShortcutRequest
-import com.android.launcher3.util.Executors
 import com.patrykmichalik.opto.core.onEach
 import java.util.Locale
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.TimeoutCancellationException
-import kotlinx.coroutines.async
+import kotlinx.coroutines.channels.ProducerScope
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.withContext
-import kotlinx.coroutines.withTimeoutOrNull
-import me.xdrop.fuzzywuzzy.FuzzySearch
-import me.xdrop.fuzzywuzzy.algorithms.WeightedRatio
 
-class LawnchairLocalSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm(context) {
+class LawnchairLocalSearchAlgorithm(
+    context: Context,
+    private val webSuggestionSource: WebSuggestionSource = StartPageSuggestionSource,
+) : LawnchairSearchAlgorithm(context) {
 
-    private val appState = LauncherAppState.getInstance(context)
-    private val resultHandler = Handler(Executors.MAIN_EXECUTOR.looper)
     private val generateSearchTarget = GenerateSearchTarget(context)
+    private val fuzzyMatcher = FuzzyAppMatcher()
+    private val resultCache = SearchResultCache<AppInfo>(RESULT_CACHE_SIZE)
+    private val snapshots = SearchSnapshots.INSTANCE.get(context)
 
     private lateinit var hiddenApps: Set<String>
 
@@ -125,94 +126,106 @@ class LawnchairLocalSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm
     }
 
     override fun doSearch(query: String, callback: SearchCallback<BaseAllAppsAdapter.AdapterItem>) {
-        appState.model.enqueueModelUpdateTask(object : BaseModelUpdateTask() {
-            override fun execute(app: LauncherAppState, dataModel: BgDataModel, apps: AllAppsList) {
-                coroutineScope.launch(Dispatchers.Main) {
-                    val results = getResult(apps.data, query)
-                    callback.onSearchResult(query, results)
-                }
-            }
-        })
+        launchStreamingSearch(query, callback) { apps -> streamResults(apps, query) }
     }
 
     override fun cancel(interruptActiveRequests: Boolean) {
-        if (interruptActiveRequests) {
-            resultHandler.removeCallbacksAndMessages(null)
+        cancelActiveSearch()
+    }
+
+    /**
+     * Sends the app results right away, then an update each time one of the device sources
+     * completes, so that slow sources such as web suggestions don't hold back the others.
+     */
+    private suspend fun ProducerScope<SearchUpdate>.streamResults(apps: SearchableApps, query: String) {
+        val appResults = if (searchApps) getAppResults(apps, query) else emptyList()
+        val shortcuts = getShortcutResults(appResults)
+        val localSearchResults = LocalSearchResults()
+
+        send(SearchUpdate(getResult(query, appResults, shortcuts, localSearchResults), isFinal = false))
+        performDeviceLocalSearch(query, prefs).collect { results ->
+            if (!localSearchResults.add(results)) return@collect
+            send(SearchUpdate(getResult(query, appResults, shortcuts, localSearchResults), isFinal = false))
         }
+        send(SearchUpdate(getResult(query, appResults, shortcuts, localSearchResults), isFinal = true))
     }
 
-    private suspend fun getResult(
-        apps: MutableList<AppInfo>,
-        query: String,
-    ): ArrayList<BaseAllAppsAdapter.AdapterItem> {
-        val appResults = if (enableFuzzySearch) {
-            fuzzySearch(apps, query)
+    private fun getAppResults(apps: SearchableApps, query: String): List<AppInfo> {
+        return if (enableFuzzySearch) {
+            fuzzySearch(apps.data, query)
         } else {
             normalSearch(apps, query)
         }
+    }
 
-        val localSearchResults = performDeviceLocalSearch(query, prefs)
+    private suspend fun getShortcutResults(appResults: List<AppInfo>): List<ShortcutInfo> {
+        if (appResults.size != 1 || !context.isDefaultLauncher()) return emptyList()
+        // Skip the binder call if this query has already been superseded
+        currentCoroutineContext().ensureActive()
+        return getShortcuts(appResults.first())
+    }
 
+    /**
+     * Builds the adapter items for everything found so far. Sections always appear in the same
+     * order regardless of which source completes first, see [LocalSearchResults].
+     */
+    private fun getResult(
+        query: String,
+        appResults: List<AppInfo>,
+        shortcuts: List<ShortcutInfo>,
+        localSearchResults: LocalSearchResults,
+    ): ArrayList<BaseAllAppsAdapter.AdapterItem> {
         val searchTargets = mutableListOf<SearchTargetCompat>()
 
-        if (appResults.isNotEmpty() && searchApps) {
+        if (appResults.isNotEmpty()) {
             appResults.mapTo(searchTargets, ::createSearchTarget)
         }
 
-        if (appResults.size == 1 && searchApps && context.isDefaultLauncher()) {
-            val singleAppResult = appResults.first()
-            val shortcuts = getShortcuts(singleAppResult)
-            if (shortcuts.isNotEmpty()) {
-                searchTargets.add(generateSearchTarget.getHeaderTarget(SPACE))
-                searchTargets.add(createSearchTarget(singleAppResult, true))
-                searchTargets.addAll(shortcuts.map(::createSearchTarget))
-            }
-        }
-
-        val suggestions = filterByType(localSearchResults, WEB_SUGGESTION)
-        if (suggestions.isNotEmpty()) {
-            searchTargets.addAll(suggestions.map { generateSearchTarget.getSuggestionTarget(it.resultData as String) })
+        if (shortcuts.isNotEmpty()) {
+            searchTargets.add(generateSearchTarget.getHeaderTarget(SPACE))
+            searchTargets.add(createSearchTarget(appResults.first(), true))
+            searchTargets.addAll(shortcuts.map(::createSearchTarget))
         }
 
-        val calculator = filterByType(localSearchResults, CALCULATOR).first()
-        val calcData = calculator.resultData as Calculation
-        if (calcData.isValid) {
-            val calculatorHeader = generateSearchTarget.getHeaderTarget(context.getString(R.string.all_apps_search_result_calculator))
-            searchTargets.add(calculatorHeader)
-            searchTargets.add(
-                generateSearchTarget.getCalculationTarget(calcData),
-            )
-        }
-
-        val contacts = filterByType(localSearchResults, CONTACT)
-        if (contacts.isNotEmpty()) {
-            val contactsHeader = generateSearchTarget.getHeaderTarget(context.getString(R.string.all_apps_search_result_contacts_from_device))
-            searchTargets.add(contactsHeader)
-            searchTargets.addAll(contacts.map { generateSearchTarget.getContactSearchItem(it.resultData as ContactInfo) })
-        }
-
-        val settings = filterByType(localSearchResults, SETTINGS)
-        if (settings.isNotEmpty()) {
-            val settingsHeader = generateSearchTarget.getHeaderTarget(context.getString(R.string.all_apps_search_result_settings_entry_from_device))
-            searchTargets.add(settingsHeader)
-            searchTargets.addAll(settings.mapNotNull { generateSearchTarget.getSettingSearchItem(it.resultData as SettingInfo) })
-        }
-
-        val recentKeyword = filterByType(localSearchResults, HISTORY)
-        if (recentKeyword.isNotEmpty()) {
-            val recentKeywordHeader = generateSearchTarget.getHeaderTarget(
-                context.getString(R.string.search_pref_result_history_title),
-                HEADER_JUSTIFY,
-            )
-            searchTargets.add(recentKeywordHeader)
-            searchTargets.addAll(recentKeyword.map { generateSearchTarget.getRecentKeywordTarget(it.resultData as RecentKeyword) })
-        }
-
-        val files = filterByType(localSearchResults, FILES)
-        if (files.isNotEmpty()) {
-            val filesHeader = generateSearchTarget.getHeaderTarget(context.getString(R.string.all_apps_search_result_files))
-            searchTargets.add(filesHeader)
-            searchTargets.addAll(files.map { generateSearchTarget.getFileInfoSearchItem(it.resultData as IFileInfo) })
+        for ((type, results) in localSearchResults.sections()) {
+            when (type) {
+                WEB_SUGGESTION -> {
+                    searchTargets.addAll(results.map { generateSearchTarget.getSuggestionTarget(it.resultData as String) })
+                }
+                CALCULATOR -> {
+                    val calcData = results.first().resultData as Calculation
+                    if (calcData.isValid) {
+                        val calculatorHeader = generateSearchTarget.getHeaderTarget(context.getString(R.string.all_apps_search_result_calculator))
+                        searchTargets.add(calculatorHeader)
+                        searchTargets.add(
+                            generateSearchTarget.getCalculationTarget(calcData),
+                        )
+                    }
+                }
+                CONTACT -> {
+                    val contactsHeader = generateSearchTarget.getHeaderTarget(context.getString(R.string.all_apps_search_result_contacts_from_device))
+                    searchTargets.add(contactsHeader)
+                    searchTargets.addAll(results.map { generateSearchTarget.getContactSearchItem(it.resultData as ContactInfo) })
+                }
+                SETTINGS -> {
+                    val settingsHeader = generateSearchTarget.getHeaderTarget(context.getString(R.string.all_apps_search_result_settings_entry_from_device))
+                    searchTargets.add(settingsHeader)
+                    searchTargets.addAll(results.mapNotNull { generateSearchTarget.getSettingSearchItem(it.resultData as SettingInfo) })
+                }
+                HISTORY -> {
+                    val recentKeywordHeader = generateSearchTarget.getHeaderTarget(
+                        context.getString(R.string.search_pref_result_history_title),
+                        HEADER_JUSTIFY,
+                    )
+                    searchTargets.add(recentKeywordHeader)
+                    searchTargets.addAll(results.map { generateSearchTarget.getRecentKeywordTarget(it.resultData as RecentKeyword) })
+                }
+                FILES -> {
+                    val filesHeader = generateSearchTarget.getHeaderTarget(context.getString(R.string.all_apps_search_result_files))
+                    searchTargets.add(filesHeader)
+                    searchTargets.addAll(results.map { generateSearchTarget.getFileInfoSearchItem(it.resultData as IFileInfo) })
+                }
+            }
         }
 
         searchTargets.add(generateSearchTarget.getHeaderTarget(SPACE))
@@ -225,10 +238,6 @@ class LawnchairLocalSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm
         return ArrayList(adapterItems)
     }
 
-    private fun filterByType(results: List<SearchResult>, type: String): List<SearchResult> {
-        return results.filter { it.resultType == type }
-    }
-
     private fun getShortcuts(app: AppInfo): List<ShortcutInfo> {
         val shortcuts = ShortcutRequest(context.launcher, app.user)
             .withContainer(app.targetComponent)
@@ -236,13 +245,14 @@ class LawnchairLocalSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm
         return PopupPopulator.sortAndFilterShortcuts(shortcuts, null)
     }
 
-    private fun normalSearch(apps: List<AppInfo>, query: String): List<AppInfo> {
-        // Do an intersection of the words in the query and each title, and filter out all the
-        // apps that don't match all of the words in the query.
+    private fun normalSearch(apps: SearchableApps, query: String): List<AppInfo> {
+        // Look up the apps whose title has a break point starting with the query, through the
+        // prebuilt title index instead of matching every app. While the query is being typed,
+        // only the matches of the previous query are filtered.
         val queryTextLower = query.lowercase(Locale.getDefault())
-        val matcher = StringMatcherUtility.StringMatcher.getInstance()
-        return apps.asSequence()
-            .filter { StringMatcherUtility.matches(queryTextLower, it.title.toString(), matcher) }
+        val index = apps.searchIndex
+        return resultCache.search(queryTextLower, index.version, index::search, index::refine)
+            .asSequence()
             .filterHiddenApps(queryTextLower)
             .take(maxAppResultsCount)
             .toList()
@@ -250,19 +260,11 @@ class LawnchairLocalSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm
 
     private fun fuzzySearch(apps: List<AppInfo>, query: String): List<AppInfo> {
         val queryTextLower = query.lowercase(Locale.getDefault())
-        val filteredApps = apps.asSequence()
-            .filterHiddenApps(queryTextLower)
-            .toList()
-        val matches = FuzzySearch.extractSorted(
+        return fuzzyMatcher.search(
+            apps.asSequence().filterHiddenApps(queryTextLower),
             queryTextLower,
-            filteredApps,
-            { it.sectionName + it.title },
-            WeightedRatio(),
-            65,
+            maxAppResultsCount,
         )
-
-        return matches.take(maxAppResultsCount)
-            .map { it.referent }
     }
 
     private fun Sequence<AppInfo>.filterHiddenApps(query: String): Sequence<AppInfo> {
@@ -282,94 +284,87 @@ class LawnchairLocalSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm
         }
     }
 
-    protected suspend fun performDeviceLocalSearch(query: String, prefs: PreferenceManager): MutableList<SearchResult> =
-        withContext(Dispatchers.IO) {
-            val results = ArrayList<SearchResult>()
-
+    /**
+     * Queries every enabled device source in parallel and emits the results of each source as
+     * soon as it completes.
+     */
+    protected fun performDeviceLocalSearch(query: String, prefs: PreferenceManager): Flow<List<SearchResult>> =
+        channelFlow {
             if (prefs.searchResultCalculator.get()) {
                 val calculations = calculateEquationFromString(query)
-                results.add(SearchResult(CALCULATOR, calculations))
+                send(listOf(SearchResult(CALCULATOR, calculations)))
             }
 
-            val contactDeferred = async {
+            launch {
                 if (prefs.searchResultPeople.get() && requestContactPermissionGranted(
                         context,
                         prefs,
                     )
                 ) {
-                    findContactsByName(context, query, maxPeopleCount)
-                        .map { SearchResult(CONTACT, it) }
-                } else {
-                    emptyList()
+                    send(
+                        findContactsByName(context, query, maxPeopleCount, snapshots.contacts)
+                            .map { SearchResult(CONTACT, it) },
+                    )
                 }
             }
 
-            val filesDeferred = async {
+            launch {
                 if (prefs.searchResultFiles.get() && checkAndRequestFilesPermission(
                         context,
                         prefs,
                     )
                 ) {
-                    queryFilesInMediaStore(context, keyword = query, maxResult = maxFilesCount)
-                        .toList()
-                        .map { SearchResult(FILES, it) }
-                } else {
-                    emptyList()
+                    send(
+                        queryFilesInMediaStore(context, keyword = query, maxResult = maxFilesCount)
+                            .toList()
+                            .map { SearchResult(FILES, it) },
+                    )
                 }
             }
 
-            val settingsDeferred = async {
-                findSettingsByNameAndAction(query, maxSettingsEntryCount)
-                    .map { SearchResult(SETTINGS, it) }
+            launch {
+                send(
+                    findSettingsByNameAndAction(query, maxSettingsEntryCount)
+                        .map { SearchResult(SETTINGS, it) },
+                )
             }
 
-            val startPageSuggestionsDeferred = async {
-                try {
-                    val timeout = maxWebSuggestionDelay.toLong()
-                    val result = withTimeoutOrNull(timeout) {
-                        if (prefs.searchResultStartPageSuggestion.get()) {
-                            getStartPageSuggestions(query, maxWebSuggestionsCount).map {
-                                SearchResult(
-                                    WEB_SUGGESTION,
-                                    it,
-                                )
-                            }
-                        } else {
-                            emptyList()
-                        }
-                    }
-                    result ?: emptyList()
-                } catch (e: TimeoutCancellationException) {
-                    emptyList()
+            if (prefs.searchResultStartPageSuggestion.get()) {
+                launch {
+                    val suggestions = getWebSuggestions(
+                        webSuggestionSource,
+                        query,
+                        maxWebSuggestionsCount,
+                        maxWebSuggestionDelay.toLong(),
+                    )
+                    send(suggestions.map { SearchResult(WEB_SUGGESTION, it) })
                 }
             }
 
             if (prefs.searchResulRecentSuggestion.get()) {
-                getRecentKeyword(
-                    context,
-                    query,
-                    maxRecentResultCount,
-                    object : app.lawnchair.search.algorithms.data.SearchCallback {
-                        override fun onSearchLoaded(items: List<Any>) {
-                            results.addAll(items.map { SearchResult(HISTORY, it) })
-                        }
-
-                        override fun onSearchFailed(error: String) {
-                            results.add(SearchResult(ERROR, error))
-                        }
-
-                        override fun onLoading() {
-                            results.add(SearchResult(LOADING, "Loading"))
-                        }
-                    },
-                )
-            }
+                launch {
+                    val results = ArrayList<SearchResult>()
+                    getRecentKeyword(
+                        context,
+                        query,
+                        maxRecentResultCount,
+                        object : app.lawnchair.search.algorithms.data.SearchCallback {
+                            override fun onSearchLoaded(items: List<Any>) {
+                                results.addAll(items.map { SearchResult(HISTORY, it) })
+                            }
 
-            results.addAll(contactDeferred.await())
-            results.addAll(filesDeferred.await())
-            results.addAll(settingsDeferred.await())
-            results.addAll(startPageSuggestionsDeferred.await())
+                            override fun onSearchFailed(error: String) {
+                                results.add(SearchResult(ERROR, error))
+                            }
 
-            results
-        }
+                            override fun onLoading() {
+                                results.add(SearchResult(LOADING, "Loading"))
+                            }
+                        },
+                        snapshots.recentKeywords,
+                    )
+                    send(results)
+                }
+            }
+        }.flowOn(Dispatchers.IO)
 }
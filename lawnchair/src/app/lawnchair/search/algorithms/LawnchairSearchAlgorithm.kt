@@ -22,10 +22,29 @@ import com.android.app.search.LayoutType.TEXT_HEADER
 import com.android.app.search.LayoutType.THUMBNAIL
 import com.android.app.search.LayoutType.WIDGET_LIVE
 import com.android.launcher3.BuildConfig
+import com.android.launcher3.LauncherAppState
 import com.android.launcher3.Utilities
 import com.android.launcher3.allapps.BaseAllAppsAdapter
+import com.android.launcher3.model.AllAppsList
+import com.android.launcher3.model.BaseModelUpdateTask
+import com.android.launcher3.model.BgDataModel
+import com.android.launcher3.model.data.AppInfo
+import com.android.launcher3.search.AppSearchIndex
 import com.android.launcher3.search.SearchAlgorithm
+import com.android.launcher3.search.SearchCallback
 import com.patrykmichalik.opto.core.firstBlocking
+import kotlin.coroutines.resume
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.ProducerScope
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.conflate
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.withContext
 
 sealed class LawnchairSearchAlgorithm(
     protected val context: Context,
@@ -62,6 +81,80 @@ sealed class LawnchairSearchAlgorithm(
         roundBottom = true,
     )
 
+    private val searchScope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+
+    // Only accessed on the main thread
+    private var activeSearch: Job? = null
+
+    /**
+     * Runs [search] on a background dispatcher and posts its results to [callback] on the main
+     * thread. Starting a new search cancels the one in flight, so that only the results of the
+     * latest query are ever delivered.
+     */
+    protected fun launchSearch(
+        query: String,
+        callback: SearchCallback<BaseAllAppsAdapter.AdapterItem>,
+        search: suspend (apps: SearchableApps) -> ArrayList<BaseAllAppsAdapter.AdapterItem>,
+    ) {
+        launchStreamingSearch(query, callback) { apps ->
+            send(SearchUpdate(search(apps), isFinal = true))
+        }
+    }
+
+    /**
+     * Same as [launchSearch], but [search] can send several updates as its sources complete.
+     * Each update replaces the previous one and should contain everything found so far. Updates
+     * which are superseded before reaching the main thread are skipped, except for the final one.
+     */
+    protected fun launchStreamingSearch(
+        query: String,
+        callback: SearchCallback<BaseAllAppsAdapter.AdapterItem>,
+        search: suspend ProducerScope<SearchUpdate>.(apps: SearchableApps) -> Unit,
+    ) {
+        activeSearch?.cancel()
+        activeSearch = searchScope.launch {
+            val apps = loadSearchableApps()
+            channelFlow { search(apps) }
+                .conflate()
+                .collect { update ->
+                    withContext(Dispatchers.Main) {
+                        // Dropped if a newer query or cancel() came in while switching threads
+                        ensureActive()
+                        callback.onSearchResult(
+                            query,
+                            update.items,
+                            if (update.isFinal) SearchCallback.FINAL else SearchCallback.INTERMEDIATE,
+                        )
+                    }
+                }
+        }
+    }
+
+    /**
+     * Cancels the search started by [launchSearch], if any
+     */
+    protected fun cancelActiveSearch() {
+        activeSearch?.cancel()
+        activeSearch = null
+    }
+
+    override fun destroy() {
+        cancelActiveSearch()
+    }
+
+    /**
+     * Copies the list of apps on the model thread, the only thread it can be read from
+     */
+    private suspend fun loadSearchableApps(): SearchableApps = suspendCancellableCoroutine { cont ->
+        LauncherAppState.getInstance(context).model.enqueueModelUpdateTask(object : BaseModelUpdateTask() {
+            override fun execute(app: LauncherAppState, dataModel: BgDataModel, apps: AllAppsList) {
+                if (cont.isActive) {
+                    cont.resume(SearchableApps(ArrayList(apps.data), apps.searchIndex))
+                }
+            }
+        })
+    }
+
     protected fun transformSearchResults(results: List<SearchTargetCompat>): List<SearchAdapterItem> {
         val filtered = results
             .asSequence()
@@ -142,12 +235,31 @@ sealed class LawnchairSearchAlgorithm(
         else -> centerBackground
     }
 
+    /**
+     * Immutable view of all apps which can be searched outside of the model thread
+     */
+    class SearchableApps(
+        val data: List<AppInfo>,
+        val searchIndex: AppSearchIndex,
+    )
+
+    /**
+     * Results delivered by [launchStreamingSearch]
+     */
+    class SearchUpdate(
+        val items: ArrayList<BaseAllAppsAdapter.AdapterItem>,
+        val isFinal: Boolean,
+    )
+
     companion object {
 
         const val APP_SEARCH = "appSearch"
         const val LOCAL_SEARCH = "localSearch"
         const val ASI_SEARCH = "globalSearch"
 
+        // Number of recent queries whose app matches are kept around for refinement
+        const val RESULT_CACHE_SIZE = 8
+
         private var ranCompatibilityCheck = false
 
         fun isASISearchEnabled(context: Context): Boolean {
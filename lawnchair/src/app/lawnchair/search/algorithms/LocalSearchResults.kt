@@ -0,0 +1,44 @@
+package app.lawnchair.search.algorithms
+
+import app.lawnchair.search.adapter.CALCULATOR
+import app.lawnchair.search.adapter.CONTACT
+import app.lawnchair.search.adapter.FILES
+import app.lawnchair.search.adapter.HISTORY
+import app.lawnchair.search.adapter.SETTINGS
+import app.lawnchair.search.adapter.SearchResult
+import app.lawnchair.search.adapter.WEB_SUGGESTION
+
+/**
+ * Results of the device sources received so far for a query.
+ *
+ * Sources complete in any order, but their sections are always listed in [SECTION_ORDER], and
+ * each section keeps the results in the order they were received. Results which were already
+ * shown keep their relative position as the ones of later sources are merged in.
+ */
+class LocalSearchResults {
+
+    private val results = mutableListOf<SearchResult>()
+
+    /**
+     * Merges the results of a source which just completed, returns whether anything was added
+     */
+    fun add(sourceResults: List<SearchResult>): Boolean {
+        results.addAll(sourceResults)
+        return sourceResults.isNotEmpty()
+    }
+
+    /**
+     * Returns the non empty sections, in [SECTION_ORDER]
+     */
+    fun sections(): List<Pair<String, List<SearchResult>>> = SECTION_ORDER
+        .map { type -> type to results.filter { it.resultType == type } }
+        .filter { (_, sectionResults) -> sectionResults.isNotEmpty() }
+
+    companion object {
+        /**
+         * Sources completing later come after the ones on the device, so that their results are
+         * added below what is already shown instead of pushing it down.
+         */
+        val SECTION_ORDER = listOf(CALCULATOR, CONTACT, SETTINGS, HISTORY, FILES, WEB_SUGGESTION)
+    }
+}
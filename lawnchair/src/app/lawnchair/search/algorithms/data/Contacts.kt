@@ -1,6 +1,8 @@
 package app.lawnchair.search.algorithms.data
 
+import android.content.ContentResolver
 import android.content.Context
+import android.database.Cursor
 import android.provider.ContactsContract
 import android.util.Log
 import kotlinx.coroutines.CoroutineExceptionHandler
@@ -34,97 +36,150 @@ val EXCLUDED_MIME_TYPES = arrayOf(
     "vnd.android.cursor.item/website",
 )
 
-suspend fun findContactsByName(context: Context, query: String, max: Int): List<ContactInfo> {
+/**
+ * Raw row of the contacts data table, as read by [findContactsByName]
+ */
+class ContactRow(
+    val contactId: String?,
+    val displayName: String?,
+    val data1: String?,
+    val data3: String?,
+    val data5: String?,
+    val phonebookLabel: String?,
+    val accountType: String?,
+    val accountName: String?,
+    val mimeType: String?,
+    val photoUri: String?,
+)
+
+// Address books larger than this are searched through the provider instead of in memory
+private const val MAX_CACHED_CONTACT_ROWS = 5000
+
+private val CONTACT_PROJECTION = arrayOf(
+    ContactsContract.Data._ID,
+    ContactsContract.Data.CONTACT_ID,
+    ContactsContract.Data.DISPLAY_NAME,
+    ContactsContract.Data.DATA1,
+    ContactsContract.Data.DATA3,
+    ContactsContract.Data.DATA5,
+    "phonebook_label",
+    "account_type",
+    "account_name",
+    ContactsContract.Data.MIMETYPE,
+    ContactsContract.Data.PHOTO_URI,
+)
+
+/**
+ * Returns an in-memory copy of the contacts data table for [findContactsByName]
+ */
+fun createContactsSnapshot(contentResolver: ContentResolver) = ContentSnapshot(
+    contentResolver,
+    ContactsContract.Data.CONTENT_URI,
+    MAX_CACHED_CONTACT_ROWS,
+    query = { it.query(ContactsContract.Data.CONTENT_URI, CONTACT_PROJECTION, null, null, null) },
+    readRow = ::readContactRow,
+)
+
+/**
+ * Returns up to [max] contacts whose name contains [query]. Contacts are searched in [snapshot]
+ * when it is available, and otherwise by querying the provider.
+ */
+suspend fun findContactsByName(
+    context: Context,
+    query: String,
+    max: Int,
+    snapshot: ContentSnapshot<ContactRow>? = null,
+): List<ContactInfo> {
     try {
         if (query.isEmpty() || query.isBlank() || max <= 0) return emptyList()
         val exceptionHandler = CoroutineExceptionHandler { _, e ->
             Log.e("ContactSearch", "Something went wrong ", e)
         }
         return withContext(Dispatchers.IO + exceptionHandler) {
-            val contactMap = HashMap<String, ContactInfo>()
-
-            val projection = arrayOf(
-                ContactsContract.Data._ID,
-                ContactsContract.Data.CONTACT_ID,
-                ContactsContract.Data.DISPLAY_NAME,
-                ContactsContract.Data.DATA1,
-                ContactsContract.Data.DATA3,
-                ContactsContract.Data.DATA5,
-                "phonebook_label",
-                "account_type",
-                "account_name",
-                ContactsContract.Data.MIMETYPE,
-                ContactsContract.Data.PHOTO_URI,
-            )
+            val cachedRows = snapshot?.get()
+            if (cachedRows != null) {
+                return@withContext buildContacts(
+                    cachedRows.asSequence().filter { it.displayName?.contains(query, ignoreCase = true) == true },
+                    max,
+                )
+            }
 
             val selection = ContactsContract.Data.DISPLAY_NAME + " LIKE ?"
             val selectionArgs = arrayOf("%$query%")
 
             context.contentResolver.query(
                 ContactsContract.Data.CONTENT_URI,
-                projection,
+                CONTACT_PROJECTION,
                 selection,
                 selectionArgs,
                 null,
-            )?.use {
-                while (it.moveToNext() && contactMap.size < max) {
-                    val contactIdIndex = it.getColumnIndex(ContactsContract.Data.CONTACT_ID)
-                    val displayNameIndex = it.getColumnIndex(ContactsContract.Data.DISPLAY_NAME)
-                    val data1Index = it.getColumnIndex(ContactsContract.Data.DATA1)
-                    val data3Index = it.getColumnIndex(ContactsContract.Data.DATA3)
-                    val data5Index = it.getColumnIndex(ContactsContract.Data.DATA5)
-                    val phonebookLabelIndex = it.getColumnIndex("phonebook_label")
-                    val accountTypeIndex = it.getColumnIndex("account_type")
-                    val accountNameIndex = it.getColumnIndex("account_name")
-                    val mimeTypeIndex = it.getColumnIndex(ContactsContract.Data.MIMETYPE)
-                    val photoUriIndex = it.getColumnIndex(ContactsContract.Data.PHOTO_URI)
-                    val contactId = it.getString(contactIdIndex)
-                    val displayName = it.getString(displayNameIndex)
-                    val data1 = it.getString(data1Index)
-                    val data3 = it.getString(data3Index)
-                    val data5 = it.getString(data5Index)
-                    val phonebookLabel = it.getString(phonebookLabelIndex)
-                    val accountType = it.getString(accountTypeIndex)
-                    val accountName = it.getString(accountNameIndex)
-                    val mimeType = it.getString(mimeTypeIndex)
-                    val photoUri = it.getString(photoUriIndex)
-                    val phoneNumber = data3 ?: data5 ?: data1
-                    val key = contactId ?: phoneNumber
-                    val imageUri = photoUri ?: ""
-                    val phonebookLabel2 = phonebookLabel ?: ""
-                    val pkg = contactId + displayName + phoneNumber
-                    if (key != null && !EXCLUDED_MIME_TYPES.contains(mimeType)) {
-                        contactMap[key] = ContactInfo(
-                            contactId,
-                            displayName,
-                            phoneNumber,
-                            phonebookLabel2,
-                            imageUri,
-                            pkg,
-                        )
-                    } else {
-                        if (contactMap.containsKey(contactId)) {
-                            val existingContact = contactMap[contactId]
-                            val jsonArray = buildJsonArray {
-                                add(
-                                    buildJsonObject {
-                                        put(CONTACT_ACCOUNT_ID, key)
-                                        put(CONTACT_ACCOUNT_TITLE, data5)
-                                        put(CONTACT_ACCOUNT_NAME, accountName)
-                                        put(CONTACT_ACCOUNT_TYPE, accountType)
-                                        put(CONTACT_ACCOUNT_MIME, mimeType)
-                                    },
-                                )
-                            }
-                            existingContact?.packages = jsonArray.toString()
-                        }
-                    }
-                }
-            }
-            contactMap.values.toList()
+            )?.use { cursor ->
+                buildContacts(generateSequence { if (cursor.moveToNext()) readContactRow(cursor) else null }, max)
+            } ?: emptyList()
         }
     } catch (e: Exception) {
         Log.e("ContactSearch", "Something went wrong ", e)
         return emptyList()
     }
 }
+
+private fun readContactRow(cursor: Cursor): ContactRow = cursor.run {
+    ContactRow(
+        contactId = getString(getColumnIndex(ContactsContract.Data.CONTACT_ID)),
+        displayName = getString(getColumnIndex(ContactsContract.Data.DISPLAY_NAME)),
+        data1 = getString(getColumnIndex(ContactsContract.Data.DATA1)),
+        data3 = getString(getColumnIndex(ContactsContract.Data.DATA3)),
+        data5 = getString(getColumnIndex(ContactsContract.Data.DATA5)),
+        phonebookLabel = getString(getColumnIndex("phonebook_label")),
+        accountType = getString(getColumnIndex("account_type")),
+        accountName = getString(getColumnIndex("account_name")),
+        mimeType = getString(getColumnIndex(ContactsContract.Data.MIMETYPE)),
+        photoUri = getString(getColumnIndex(ContactsContract.Data.PHOTO_URI)),
+    )
+}
+
+private fun buildContacts(rows: Sequence<ContactRow>, max: Int): List<ContactInfo> {
+    val contactMap = HashMap<String, ContactInfo>()
+    for (row in rows) {
+        if (contactMap.size >= max) break
+        val contactId = row.contactId
+        val displayName = row.displayName
+        val data5 = row.data5
+        val accountType = row.accountType
+        val accountName = row.accountName
+        val mimeType = row.mimeType
+        val phoneNumber = row.data3 ?: data5 ?: row.data1
+        val key = contactId ?: phoneNumber
+        val imageUri = row.photoUri ?: ""
+        val phonebookLabel2 = row.phonebookLabel ?: ""
+        val pkg = contactId + displayName + phoneNumber
+        if (key != null && !EXCLUDED_MIME_TYPES.contains(mimeType)) {
+            if (contactId == null || displayName == null || phoneNumber == null) continue
+            contactMap[key] = ContactInfo(
+                contactId,
+                displayName,
+                phoneNumber,
+                phonebookLabel2,
+                imageUri,
+                pkg,
+            )
+        } else {
+            if (contactMap.containsKey(contactId)) {
+                val existingContact = contactMap[contactId]
+                val jsonArray = buildJsonArray {
+                    add(
+                        buildJsonObject {
+                            put(CONTACT_ACCOUNT_ID, key)
+                            put(CONTACT_ACCOUNT_TITLE, data5)
+                            put(CONTACT_ACCOUNT_NAME, accountName)
+                            put(CONTACT_ACCOUNT_TYPE, accountType)
+                            put(CONTACT_ACCOUNT_MIME, mimeType)
+                        },
+                    )
+                }
+                existingContact?.packages = jsonArray.toString()
+            }
+        }
+    }
+    return contactMap.values.toList()
+}
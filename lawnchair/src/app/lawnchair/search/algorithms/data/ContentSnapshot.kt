@@ -0,0 +1,121 @@
+package app.lawnchair.search.algorithms.data
+
+import android.content.ContentResolver
+import android.database.ContentObserver
+import android.database.Cursor
+import android.net.Uri
+import android.util.Log
+import androidx.annotation.WorkerThread
+import java.io.Closeable
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * In-memory copy of the rows of a content provider, so that searches can be answered without
+ * querying the provider on every keystroke. The copy is loaded on first use, and dropped whenever
+ * the provider notifies a change for [uri] so that the next search reloads it.
+ *
+ * Providers with more than [maxRows] rows are not copied: [get] returns null for them and
+ * callers should query the provider directly instead.
+ */
+class ContentSnapshot<T : Any>(
+    private val contentResolver: ContentResolver,
+    private val uri: Uri,
+    private val maxRows: Int,
+    private val query: (ContentResolver) -> Cursor?,
+    private val readRow: (Cursor) -> T?,
+) : Closeable {
+
+    private val lock = Any()
+    private val generation = AtomicInteger()
+
+    private var rows: List<T>? = null
+    private var tooLarge = false
+    private var observing = false
+
+    private val observer = object : ContentObserver(null) {
+        override fun onChange(selfChange: Boolean) {
+            invalidate()
+        }
+    }
+
+    /**
+     * Returns all the rows of the provider, or null if there are more than [maxRows] of them or
+     * they could not be read.
+     */
+    @WorkerThread
+    fun get(): List<T>? {
+        val loadGeneration: Int
+        synchronized(lock) {
+            if (!observing) {
+                try {
+                    contentResolver.registerContentObserver(uri, true, observer)
+                    observing = true
+                } catch (e: SecurityException) {
+                    // Without change notifications the rows can't be cached
+                    Log.w(TAG, "Unable to observe $uri", e)
+                    return null
+                }
+            }
+            rows?.let { return it }
+            if (tooLarge) return null
+            loadGeneration = generation.get()
+        }
+
+        val loaded = try {
+            load()
+        } catch (e: Exception) {
+            // Most likely a missing permission, try again on the next search
+            Log.w(TAG, "Unable to read $uri", e)
+            return null
+        }
+        synchronized(lock) {
+            // Don't keep rows which were already outdated while loading
+            if (generation.get() == loadGeneration) {
+                rows = loaded
+                tooLarge = loaded == null
+            }
+        }
+        return loaded
+    }
+
+    /**
+     * Drops the current copy, so that the next [get] loads the rows again
+     */
+    fun invalidate() {
+        generation.incrementAndGet()
+        synchronized(lock) {
+            rows = null
+            tooLarge = false
+        }
+    }
+
+    override fun close() {
+        synchronized(lock) {
+            if (observing) {
+                contentResolver.unregisterContentObserver(observer)
+                observing = false
+            }
+            rows = null
+            tooLarge = false
+        }
+    }
+
+    private fun load(): List<T>? {
+        val cursor = query(contentResolver) ?: return emptyList()
+        return cursor.use {
+            if (it.count > maxRows) {
+                null
+            } else {
+                buildList(it.count) {
+                    while (it.moveToNext()) {
+                        readRow(it)?.let { row -> add(row) }
+                    }
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "ContentSnapshot"
+    }
+}
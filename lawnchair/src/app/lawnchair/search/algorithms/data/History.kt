@@ -17,7 +17,30 @@ data class RecentKeyword(
     }
 }
 
-suspend fun getRecentKeyword(context: Context, query: String, max: Int, callback: SearchCallback) {
+// SearchRecentSuggestions keeps far fewer entries than this by default
+private const val MAX_CACHED_RECENT_KEYWORDS = 1000
+
+private val RECENT_SUGGESTIONS_URI: Uri =
+    Uri.parse("content://${LawnchairRecentSuggestionProvider.AUTHORITY}/suggestions")
+
+/**
+ * Returns an in-memory copy of the recent search suggestions for [getRecentKeyword]
+ */
+fun createRecentKeywordsSnapshot(contentResolver: ContentResolver) = ContentSnapshot(
+    contentResolver,
+    RECENT_SUGGESTIONS_URI,
+    MAX_CACHED_RECENT_KEYWORDS,
+    query = { it.query(RECENT_SUGGESTIONS_URI, null, null, null, null) },
+    readRow = ::readRecentKeyword,
+)
+
+suspend fun getRecentKeyword(
+    context: Context,
+    query: String,
+    max: Int,
+    callback: SearchCallback,
+    snapshot: ContentSnapshot<RecentKeyword>? = null,
+) {
     try {
         if (query.isEmpty() || query.isBlank() || max <= 0) {
             callback.onSearchLoaded(emptyList())
@@ -27,26 +50,17 @@ suspend fun getRecentKeyword(context: Context, query: String, max: Int, callback
         callback.onLoading()
 
         withContext(Dispatchers.IO) {
-            val contentResolver: ContentResolver = context.contentResolver
-            val uri: Uri =
-                Uri.parse("content://${LawnchairRecentSuggestionProvider.AUTHORITY}/suggestions")
-            val cursor: Cursor? = contentResolver.query(uri, null, null, null, null)
-            val recentKeywords = mutableListOf<RecentKeyword>()
-
-            cursor?.use {
-                val columnCount = it.columnCount
-
-                while (it.moveToNext()) {
-                    val recentKeywordData = mutableMapOf<String, String>()
-
-                    for (i in 0 until columnCount) {
-                        val columnName = it.getColumnName(i)
-                        val columnValue = it.getString(i) ?: ""
-                        recentKeywordData[columnName] = columnValue
-                    }
+            val recentKeywords = snapshot?.get() ?: run {
+                val contentResolver: ContentResolver = context.contentResolver
+                val cursor: Cursor? = contentResolver.query(RECENT_SUGGESTIONS_URI, null, null, null, null)
+                val recentKeywords = mutableListOf<RecentKeyword>()
 
-                    recentKeywords.add(RecentKeyword(recentKeywordData))
+                cursor?.use {
+                    while (it.moveToNext()) {
+                        recentKeywords.add(readRecentKeyword(it))
+                    }
                 }
+                recentKeywords
             }
             callback.onSearchLoaded(recentKeywords.asReversed().take(max))
         }
@@ -55,3 +69,13 @@ suspend fun getRecentKeyword(context: Context, query: String, max: Int, callback
         callback.onSearchFailed("Error during recent keyword retrieval: ${e.message}")
     }
 }
+
+private fun readRecentKeyword(cursor: Cursor): RecentKeyword {
+    val recentKeywordData = mutableMapOf<String, String>()
+    for (i in 0 until cursor.columnCount) {
+        val columnName = cursor.getColumnName(i)
+        val columnValue = cursor.getString(i) ?: ""
+        recentKeywordData[columnName] = columnValue
+    }
+    return RecentKeyword(recentKeywordData)
+}
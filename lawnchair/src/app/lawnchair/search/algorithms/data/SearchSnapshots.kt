@@ -0,0 +1,20 @@
+package app.lawnchair.search.algorithms.data
+
+import android.content.Context
+import com.android.launcher3.util.MainThreadInitializedObject
+
+/**
+ * Provider snapshots shared by the search algorithms of the process. Algorithms are created with
+ * each launcher activity and never destroyed, so the snapshots live here instead, and recreating
+ * the launcher neither registers more observers nor loads the rows again.
+ */
+class SearchSnapshots private constructor(context: Context) {
+
+    val contacts = createContactsSnapshot(context.contentResolver)
+    val recentKeywords = createRecentKeywordsSnapshot(context.contentResolver)
+
+    companion object {
+        @JvmField
+        val INSTANCE = MainThreadInitializedObject(::SearchSnapshots)
+    }
+}
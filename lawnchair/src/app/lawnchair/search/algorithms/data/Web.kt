@@ -4,6 +4,7 @@ import android.util.Log
 import app.lawnchair.util.kotlinxJson
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.ResponseBody
 import org.json.JSONArray
@@ -21,6 +22,30 @@ private val retrofit = Retrofit.Builder()
 
 val startPageService: StartPageService = retrofit.create()
 
+/**
+ * Source of the web suggestions shown with the local search results
+ */
+fun interface WebSuggestionSource {
+    suspend fun getSuggestions(query: String, max: Int): List<String>
+}
+
+object StartPageSuggestionSource : WebSuggestionSource {
+    override suspend fun getSuggestions(query: String, max: Int) = getStartPageSuggestions(query, max)
+}
+
+/**
+ * Returns up to [max] suggestions of [source] for [query], or none if it takes longer than
+ * [timeoutMillis] to answer
+ */
+suspend fun getWebSuggestions(
+    source: WebSuggestionSource,
+    query: String,
+    max: Int,
+    timeoutMillis: Long,
+): List<String> = withTimeoutOrNull(timeoutMillis) {
+    source.getSuggestions(query, max).take(max)
+} ?: emptyList()
+
 suspend fun getStartPageSuggestions(query: String, max: Int): List<String> = withContext(Dispatchers.IO) {
     if (query.isEmpty() || query.isBlank() || max <= 0) {
         return@withContext emptyList()
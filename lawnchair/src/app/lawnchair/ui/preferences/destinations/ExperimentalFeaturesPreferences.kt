@@ -42,6 +42,16 @@ fun ExperimentalFeaturesPreferences(
                 label = stringResource(id = R.string.always_reload_icons_label),
                 description = stringResource(id = R.string.always_reload_icons_description),
             )
+            SwitchPreference(
+                adapter = prefs.pipelinedModelLoading.getAdapter(),
+                label = stringResource(id = R.string.pipelined_model_loading_label),
+                description = stringResource(id = R.string.pipelined_model_loading_description),
+            )
+            SwitchPreference(
+                adapter = prefs.iconSnapshot.getAdapter(),
+                label = stringResource(id = R.string.icon_snapshot_label),
+                description = stringResource(id = R.string.icon_snapshot_description),
+            )
             SwitchPreference(
                 adapter = prefs.recentsActionLocked.getAdapter(),
                 label = stringResource(id = R.string.recents_lock_unlock),
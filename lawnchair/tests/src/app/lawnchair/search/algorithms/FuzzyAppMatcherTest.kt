@@ -0,0 +1,110 @@
+package app.lawnchair.search.algorithms
+
+import android.content.ComponentName
+import android.content.Intent
+import android.os.Process
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.android.launcher3.model.data.AppInfo
+import me.xdrop.fuzzywuzzy.FuzzySearch
+import me.xdrop.fuzzywuzzy.algorithms.WeightedRatio
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Compares [FuzzyAppMatcher] with fuzzywuzzy's `WeightedRatio`, which it replaces, on app names
+ * and the kind of queries typed in the app search.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4::class)
+class FuzzyAppMatcherTest {
+
+    private val apps = TITLES.mapIndexed { i, title -> createApp(i, title) }
+
+    @Test
+    fun score_matchesFuzzywuzzy() {
+        val matcher = FuzzyAppMatcher()
+        for (query in QUERIES) {
+            for (app in apps) {
+                val text = app.sectionName + app.title
+                assertEquals(
+                    "\"$query\" against \"$text\"",
+                    FuzzySearch.weightedRatio(query, text),
+                    matcher.score(query, text),
+                )
+            }
+        }
+    }
+
+    @Test
+    fun search_matchesFuzzywuzzyRankingAndCutoff() {
+        val matcher = FuzzyAppMatcher()
+        for (query in QUERIES) {
+            assertEquals(
+                "\"$query\"",
+                extractSorted(query).map { it.title },
+                matcher.search(apps.asSequence(), query, apps.size).map { it.title },
+            )
+        }
+    }
+
+    @Test
+    fun search_withLimit_keepsBestResults() {
+        val matcher = FuzzyAppMatcher()
+        for (query in QUERIES) {
+            assertEquals(
+                "\"$query\"",
+                extractSorted(query).take(LIMIT).map { it.title },
+                matcher.search(apps.asSequence(), query, LIMIT).map { it.title },
+            )
+        }
+    }
+
+    @Test
+    fun search_cachedCandidates_followTitleChanges() {
+        val matcher = FuzzyAppMatcher()
+        val app = createApp(0, "Chrome")
+        assertEquals(listOf(app), matcher.search(sequenceOf(app), "chrome", LIMIT))
+
+        app.title = "Calculator"
+        app.sectionName = "C"
+        assertTrue(matcher.search(sequenceOf(app), "chrome", LIMIT).isEmpty())
+        assertEquals(listOf(app), matcher.search(sequenceOf(app), "calculator", LIMIT))
+    }
+
+    private fun extractSorted(query: String): List<AppInfo> =
+        FuzzySearch.extractSorted(
+            query,
+            apps,
+            { it.sectionName + it.title },
+            WeightedRatio(),
+            FuzzyAppMatcher.DEFAULT_CUTOFF,
+        ).map { it.referent }
+
+    private fun createApp(index: Int, title: String): AppInfo {
+        val cn = ComponentName("com.example.app$index", "Activity")
+        return AppInfo(cn, title, Process.myUserHandle(), Intent().setComponent(cn)).apply {
+            sectionName = title.take(1).uppercase()
+        }
+    }
+
+    companion object {
+        private const val LIMIT = 3
+
+        private val TITLES = listOf(
+            "Chrome", "Google", "Google Play Store", "Play Games", "Calculator", "Calendar",
+            "Camera", "Settings", "WhatsApp", "Gmail", "YouTube Music", "Digital Wellbeing",
+            "LEGO®Builder", "Test-Activity-12", "Files by Google", "Agar.io", "HEAD BALL 2",
+            "Maps", "Messages", "Contacts", "Clock", "Photos", "Phone", "Keep Notes",
+            "Battery Stats", "System UWB Field Test", "OFL Agent Application",
+        )
+
+        private val QUERIES = listOf(
+            "chrome", "chrom", "crhome", "gogle", "google", "play store", "store play", "whats app",
+            "cal", "calc", "set", "settngs", "yt music", "youtube", "maps", "lego", "lego builder",
+            "head ball", "test activity", "files", "ph", "notes keep", "uwb", "agent", "x",
+        )
+    }
+}
@@ -0,0 +1,140 @@
+package app.lawnchair.search.algorithms
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import app.lawnchair.search.adapter.CONTACT
+import app.lawnchair.search.adapter.FILES
+import app.lawnchair.search.adapter.HISTORY
+import app.lawnchair.search.adapter.SETTINGS
+import app.lawnchair.search.adapter.SearchResult
+import app.lawnchair.search.adapter.WEB_SUGGESTION
+import app.lawnchair.search.algorithms.data.WebSuggestionSource
+import app.lawnchair.search.algorithms.data.getWebSuggestions
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Tests how [LocalSearchResults] orders and merges the results of sources completing in any
+ * order, with a local fake in place of the web suggestion service.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4::class)
+class LocalSearchResultsTest {
+
+    @Test
+    fun sections_followSectionOrderWhateverTheArrivalOrder() {
+        val results = LocalSearchResults()
+        results.add(listOf(SearchResult(FILES, "file")))
+        results.add(listOf(SearchResult(SETTINGS, "setting")))
+        results.add(listOf(SearchResult(WEB_SUGGESTION, "suggestion")))
+        results.add(listOf(SearchResult(CONTACT, "contact")))
+
+        assertEquals(
+            listOf(CONTACT, SETTINGS, FILES, WEB_SUGGESTION),
+            results.sections().map { it.first },
+        )
+    }
+
+    @Test
+    fun sections_keepSourceOrderWithinSection() {
+        val results = LocalSearchResults()
+        results.add(listOf(SearchResult(HISTORY, "news"), SearchResult(HISTORY, "maps")))
+
+        assertEquals(listOf("news", "maps"), results.sections().single().second.map { it.resultData })
+    }
+
+    @Test
+    fun add_emptySource_addsNothing() {
+        val results = LocalSearchResults()
+
+        assertFalse(results.add(emptyList()))
+        assertTrue(results.sections().isEmpty())
+    }
+
+    @Test
+    fun add_lateSource_keepsShownResultsInPlace() {
+        val results = LocalSearchResults()
+        results.add(listOf(SearchResult(CONTACT, "Wilma")))
+        results.add(listOf(SearchResult(SETTINGS, "wifi"), SearchResult(SETTINGS, "bluetooth")))
+        results.add(listOf(SearchResult(FILES, "notes.txt")))
+        val shown = flatten(results)
+
+        assertTrue(results.add(listOf(SearchResult(WEB_SUGGESTION, "wifi calling"))))
+
+        val merged = flatten(results)
+        assertEquals(shown, merged.take(shown.size))
+        assertEquals(
+            listOf("Wilma", "wifi", "bluetooth", "notes.txt", "wifi calling"),
+            merged.map { it.resultData },
+        )
+    }
+
+    @Test
+    fun getWebSuggestions_returnsSourceOrderUpToMax() = runBlocking {
+        val source = FakeWebSuggestionSource(listOf("wifi", "wifi calling", "wifi direct"))
+
+        assertEquals(listOf("wifi", "wifi calling"), getWebSuggestions(source, "wifi", 2, TIMEOUT_MILLIS))
+        assertEquals(listOf("wifi" to 2), source.requests)
+    }
+
+    @Test
+    fun getWebSuggestions_slowSource_returnsNothing() = runBlocking {
+        val source = FakeWebSuggestionSource(listOf("wifi"), delayMillis = 10 * TIMEOUT_MILLIS)
+
+        assertTrue(getWebSuggestions(source, "wifi", 3, TIMEOUT_MILLIS).isEmpty())
+    }
+
+    @Test
+    fun streamedSources_lateWebSuggestions_mergeWithoutMovingShownResults() = runBlocking {
+        val source = FakeWebSuggestionSource(listOf("wifi calling"), delayMillis = TIMEOUT_MILLIS / 2)
+        val results = LocalSearchResults()
+        val updates = mutableListOf<List<SearchResult>>()
+
+        channelFlow {
+            launch {
+                val suggestions = getWebSuggestions(source, "wifi", 3, TIMEOUT_MILLIS)
+                send(suggestions.map { SearchResult(WEB_SUGGESTION, it) })
+            }
+            launch {
+                send(listOf(SearchResult(SETTINGS, "wifi"), SearchResult(SETTINGS, "hotspot")))
+            }
+        }.collect {
+            if (results.add(it)) updates.add(flatten(results))
+        }
+
+        assertEquals(
+            listOf(
+                listOf("wifi", "hotspot"),
+                listOf("wifi", "hotspot", "wifi calling"),
+            ),
+            updates.map { update -> update.map { it.resultData } },
+        )
+    }
+
+    private fun flatten(results: LocalSearchResults) = results.sections().flatMap { it.second }
+
+    private class FakeWebSuggestionSource(
+        private val suggestions: List<String>,
+        private val delayMillis: Long = 0,
+    ) : WebSuggestionSource {
+
+        val requests = mutableListOf<Pair<String, Int>>()
+
+        override suspend fun getSuggestions(query: String, max: Int): List<String> {
+            requests.add(query to max)
+            delay(delayMillis)
+            return suggestions
+        }
+    }
+
+    companion object {
+        private const val TIMEOUT_MILLIS = 200L
+    }
+}
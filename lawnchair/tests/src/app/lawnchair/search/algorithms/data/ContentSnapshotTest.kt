@@ -0,0 +1,223 @@
+package app.lawnchair.search.algorithms.data
+
+import android.content.Context
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.net.Uri
+import android.test.mock.MockContentProvider
+import android.test.mock.MockContentResolver
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Tests [ContentSnapshot] and the searches answered from it, against a fake provider which counts
+ * the queries it receives.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4::class)
+class ContentSnapshotTest {
+
+    private lateinit var context: Context
+    private lateinit var provider: FakeProvider
+    private lateinit var resolver: MockContentResolver
+    private val snapshots = mutableListOf<ContentSnapshot<*>>()
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        provider = FakeProvider()
+        resolver = MockContentResolver(context)
+        resolver.addProvider(AUTHORITY, provider)
+    }
+
+    @After
+    fun tearDown() {
+        snapshots.forEach { it.close() }
+    }
+
+    @Test
+    fun get_loadsRowsOnce() {
+        provider.setRows(arrayOf(NAME), listOf(arrayOf("Alice"), arrayOf("Bob")))
+        val snapshot = createNameSnapshot()
+
+        assertEquals(listOf("Alice", "Bob"), snapshot.get())
+        assertEquals(listOf("Alice", "Bob"), snapshot.get())
+        assertEquals(1, provider.queries)
+    }
+
+    @Test
+    fun invalidate_reloadsRows() {
+        provider.setRows(arrayOf(NAME), listOf(arrayOf("Alice")))
+        val snapshot = createNameSnapshot()
+        snapshot.get()
+
+        provider.setRows(arrayOf(NAME), listOf(arrayOf("Alice"), arrayOf("Carol")))
+        snapshot.invalidate()
+
+        assertEquals(listOf("Alice", "Carol"), snapshot.get())
+        assertEquals(2, provider.queries)
+    }
+
+    @Test
+    fun get_tooManyRows_returnsNullWithoutQueryingAgain() {
+        provider.setRows(arrayOf(NAME), listOf(arrayOf("Alice"), arrayOf("Bob"), arrayOf("Carol")))
+        val snapshot = createNameSnapshot(maxRows = 2)
+
+        assertNull(snapshot.get())
+        assertNull(snapshot.get())
+        assertEquals(1, provider.queries)
+    }
+
+    @Test
+    fun close_dropsRows() {
+        provider.setRows(arrayOf(NAME), listOf(arrayOf("Alice")))
+        val snapshot = createNameSnapshot()
+        snapshot.get()
+
+        snapshot.close()
+
+        assertEquals(listOf("Alice"), snapshot.get())
+        assertEquals(2, provider.queries)
+    }
+
+    @Test
+    fun findContactsByName_searchesSnapshot() {
+        provider.setRows(
+            CONTACT_COLUMNS,
+            listOf(
+                contactRow("1", "Alice Martin", PHONE_MIME),
+                contactRow("2", "Bob Stone", PHONE_MIME),
+                contactRow("3", "Malik Alison", PHONE_MIME),
+                contactRow("4", "Alicia Keys", "vnd.android.cursor.item/name"),
+            ),
+        )
+        val snapshot = track(
+            ContentSnapshot(
+                resolver,
+                CONTENT_URI,
+                MAX_ROWS,
+                query = { it.query(CONTENT_URI, null, null, null, null) },
+                readRow = ::readContactRow,
+            ),
+        )
+
+        val contacts = runBlocking { findContactsByName(context, "ali", 10, snapshot) }
+        assertEquals(listOf("Alice Martin", "Malik Alison"), contacts.map { it.name }.sorted())
+
+        runBlocking { findContactsByName(context, "bob", 10, snapshot) }
+        assertEquals(1, provider.queries)
+    }
+
+    @Test
+    fun getRecentKeyword_returnsLatestFromSnapshot() {
+        provider.setRows(
+            arrayOf(QUERY),
+            listOf(arrayOf("maps"), arrayOf("weather"), arrayOf("news")),
+        )
+        val snapshot = track(
+            ContentSnapshot(
+                resolver,
+                CONTENT_URI,
+                MAX_ROWS,
+                query = { it.query(CONTENT_URI, null, null, null, null) },
+                readRow = { RecentKeyword(mapOf(QUERY to it.getString(0))) },
+            ),
+        )
+
+        val loaded = mutableListOf<Any>()
+        val callback = object : SearchCallback {
+            override fun onSearchLoaded(items: List<Any>) {
+                loaded.addAll(items)
+            }
+
+            override fun onSearchFailed(error: String) {}
+
+            override fun onLoading() {}
+        }
+        runBlocking { getRecentKeyword(context, "n", 2, callback, snapshot) }
+
+        assertEquals(
+            listOf("news", "weather"),
+            loaded.map { (it as RecentKeyword).getValueByKey(QUERY) },
+        )
+        assertEquals(1, provider.queries)
+    }
+
+    private fun createNameSnapshot(maxRows: Int = MAX_ROWS) = track(
+        ContentSnapshot(
+            resolver,
+            CONTENT_URI,
+            maxRows,
+            query = { it.query(CONTENT_URI, arrayOf(NAME), null, null, null) },
+            readRow = { it.getString(0) },
+        ),
+    )
+
+    private fun <T : Any> track(snapshot: ContentSnapshot<T>): ContentSnapshot<T> {
+        snapshots.add(snapshot)
+        return snapshot
+    }
+
+    private fun contactRow(id: String, name: String, mimeType: String): Array<Any?> =
+        arrayOf(id, name, "555-010$id", null, null, name.take(1), "local", "local", mimeType, null)
+
+    private fun readContactRow(cursor: Cursor) = ContactRow(
+        contactId = cursor.getString(0),
+        displayName = cursor.getString(1),
+        data1 = cursor.getString(2),
+        data3 = cursor.getString(3),
+        data5 = cursor.getString(4),
+        phonebookLabel = cursor.getString(5),
+        accountType = cursor.getString(6),
+        accountName = cursor.getString(7),
+        mimeType = cursor.getString(8),
+        photoUri = cursor.getString(9),
+    )
+
+    private class FakeProvider : MockContentProvider() {
+
+        var queries = 0
+            private set
+
+        private var columns = emptyArray<String>()
+        private var rows = emptyList<Array<Any?>>()
+
+        fun setRows(columns: Array<String>, rows: List<Array<Any?>>) {
+            this.columns = columns
+            this.rows = rows
+        }
+
+        override fun query(
+            uri: Uri,
+            projection: Array<String>?,
+            selection: String?,
+            selectionArgs: Array<String>?,
+            sortOrder: String?,
+        ): Cursor {
+            queries++
+            return MatrixCursor(columns).apply { rows.forEach { addRow(it) } }
+        }
+    }
+
+    companion object {
+        private const val AUTHORITY = "app.lawnchair.tests.snapshot"
+        private val CONTENT_URI: Uri = Uri.parse("content://$AUTHORITY/rows")
+        private const val MAX_ROWS = 100
+
+        private const val NAME = "name"
+        private const val QUERY = "query"
+        private const val PHONE_MIME = "vnd.android.cursor.item/phone_v2"
+        private val CONTACT_COLUMNS = arrayOf(
+            "contact_id", "display_name", "data1", "data3", "data5", "phonebook_label",
+            "account_type", "account_name", "mimetype", "photo_uri",
+        )
+    }
+}
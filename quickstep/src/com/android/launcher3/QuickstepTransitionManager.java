@@ -87,6 +87,7 @@ import android.graphics.drawable.Drawable;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.os.UserHandle;
 import android.provider.Settings;
@@ -129,6 +130,7 @@ import com.android.launcher3.util.ActivityOptionsWrapper;
 import com.android.launcher3.util.DynamicResource;
 import com.android.launcher3.util.ObjectWrapper;
 import com.android.launcher3.util.RunnableList;
+import com.android.launcher3.util.TransitionFrameStats;
 import com.android.launcher3.views.FloatingIconView;
 import com.android.launcher3.views.ScrimView;
 import com.android.launcher3.widget.LauncherAppWidgetHostView;
@@ -1747,6 +1749,8 @@ public class QuickstepTransitionManager implements OnDeviceProfileChangeListener
 
             TaskViewUtils.createSplitAuxiliarySurfacesAnimator(nonAppTargets, false, null);
             mLauncher.clearForceInvisibleFlag(INVISIBLE_ALL);
+            pair.second.addListener(TransitionFrameStats.INSTANCE.createAnimationListener(
+                    mLauncher, "AppClose:Home", SystemClock.uptimeMillis()));
             result.setAnimation(pair.second, mLauncher);
         }
     }
@@ -1758,6 +1762,8 @@ public class QuickstepTransitionManager implements OnDeviceProfileChangeListener
 
         private final View mV;
         private final RunnableList mOnEndCallback;
+        // Time of the click launching the app, created along with the launch options
+        private final long mLaunchTimeMs = SystemClock.uptimeMillis();
 
         AppLaunchAnimationRunner(View v, RunnableList onEndCallback) {
             mV = v;
@@ -1776,28 +1782,34 @@ public class QuickstepTransitionManager implements OnDeviceProfileChangeListener
             final boolean launchingFromWidget = mV instanceof LauncherAppWidgetHostView;
             final boolean launchingFromRecents = isLaunchingFromRecents(mV, appTargets);
             final boolean skipFirstFrame;
+            final String frameStatsName;
             if (launchingFromWidget) {
                 composeWidgetLaunchAnimator(anim, (LauncherAppWidgetHostView) mV, appTargets,
                         wallpaperTargets, nonAppTargets, launcherClosing);
                 addCujInstrumentation(
                         anim, InteractionJankMonitorWrapper.CUJ_APP_LAUNCH_FROM_WIDGET);
                 skipFirstFrame = true;
+                frameStatsName = "AppLaunch:Widget";
             } else if (launchingFromRecents) {
                 composeRecentsLaunchAnimator(anim, mV, appTargets, wallpaperTargets, nonAppTargets,
                         launcherClosing);
                 addCujInstrumentation(
                         anim, InteractionJankMonitorWrapper.CUJ_APP_LAUNCH_FROM_RECENTS);
                 skipFirstFrame = true;
+                frameStatsName = "AppLaunch:Recents";
             } else {
                 composeIconLaunchAnimator(anim, mV, appTargets, wallpaperTargets, nonAppTargets,
                         launcherClosing);
                 addCujInstrumentation(anim, InteractionJankMonitorWrapper.CUJ_APP_LAUNCH_FROM_ICON);
                 skipFirstFrame = false;
+                frameStatsName = "AppLaunch:Icon";
             }
 
             if (launcherClosing) {
                 anim.addListener(mForceInvisibleListener);
             }
+            anim.addListener(TransitionFrameStats.INSTANCE.createAnimationListener(
+                    mLauncher, frameStatsName, mLaunchTimeMs));
 
             result.setAnimation(anim, mLauncher, mOnEndCallback::executeAllAndDestroy,
                     skipFirstFrame);
@@ -112,6 +112,7 @@ import com.android.launcher3.util.ActivityLifecycleCallbacksAdapter;
 import com.android.launcher3.util.DisplayController;
 import com.android.launcher3.util.SafeCloseable;
 import com.android.launcher3.util.TraceHelper;
+import com.android.launcher3.util.TransitionFrameStats;
 import com.android.launcher3.util.VibratorWrapper;
 import com.android.launcher3.util.WindowBounds;
 import com.android.quickstep.BaseActivityInterface.AnimationFactory;
@@ -305,6 +306,9 @@ public abstract class AbsSwipeUpHandler<T extends StatefulActivity<S>, Q extends
     private boolean mIsInAllAppsRegion;
 
     private final long mTouchTimeMs;
+    // Frames of the gesture, from its start until the handler is invalidated
+    @Nullable
+    private TransitionFrameStats.Session mFrameStatsSession;
     private long mLauncherFrameDrawnTime;
 
     private final int mSplashMainWindowShiftLength;
@@ -1057,6 +1061,9 @@ public abstract class AbsSwipeUpHandler<T extends StatefulActivity<S>, Q extends
                 }
             });
         }
+        if (mFrameStatsSession == null) {
+            mFrameStatsSession = TransitionFrameStats.INSTANCE.begin(mContext, mTouchTimeMs);
+        }
         notifyGestureStarted();
         setIsLikelyToStartNewTask(isLikelyToStartNewTask, false /* animate */);
 
@@ -2009,6 +2016,10 @@ public abstract class AbsSwipeUpHandler<T extends StatefulActivity<S>, Q extends
                 ActiveGestureErrorDetector.GestureEvent.CANCEL_CURRENT_ANIMATION);
         mCanceled = true;
         mCurrentShift.cancelAnimation();
+        if (mFrameStatsSession != null) {
+            mFrameStatsSession.cancel();
+            mFrameStatsSession = null;
+        }
 
         // Cleanup when switching handlers
         mInputConsumerProxy.unregisterCallback();
@@ -2025,6 +2036,15 @@ public abstract class AbsSwipeUpHandler<T extends StatefulActivity<S>, Q extends
         }
         mInputConsumerProxy.unregisterCallback();
         endRunningWindowAnim(false /* cancel */);
+        if (mFrameStatsSession != null) {
+            GestureEndTarget endTarget = mGestureState.getEndTarget();
+            if (endTarget != null) {
+                mFrameStatsSession.end("SwipeUp:" + endTarget);
+            } else {
+                mFrameStatsSession.cancel();
+            }
+            mFrameStatsSession = null;
+        }
 
         if (mGestureEndCallback != null) {
             mGestureEndCallback.run();
@@ -20,25 +20,35 @@ import static com.android.launcher3.util.DisplayController.CHANGE_DENSITY;
 import android.annotation.Nullable;
 import android.app.ActivityManager;
 import android.app.ActivityManager.TaskDescription;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.UserHandle;
 import android.text.TextUtils;
+import android.text.format.DateUtils;
+import android.util.Log;
 import android.util.SparseArray;
 import android.view.accessibility.AccessibilityManager;
 
 import androidx.annotation.WorkerThread;
 
+import com.android.launcher3.LauncherFiles;
 import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.icons.BaseIconFactory;
 import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.icons.GraphicsUtils;
 import com.android.launcher3.icons.IconProvider;
+import com.android.launcher3.icons.cache.SQLiteCacheHelper;
 import com.android.launcher3.util.DisplayController;
 import com.android.launcher3.util.DisplayController.DisplayInfoChangeListener;
 import com.android.launcher3.util.DisplayController.Info;
@@ -51,8 +61,10 @@ import com.android.systemui.shared.recents.model.Task.TaskKey;
 import com.android.systemui.shared.system.PackageManagerWrapper;
 import com.android.systemui.shared.system.TaskDescriptionCompat;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 import app.lawnchair.util.TaskIconUtils;
 
@@ -61,11 +73,15 @@ import app.lawnchair.util.TaskIconUtils;
  */
 public class TaskIconCache implements DisplayInfoChangeListener {
 
+    private static final String TAG = "TaskIconCache";
+
     private final Executor mBgExecutor;
     private final AccessibilityManager mAccessibilityManager;
 
     private final Context mContext;
     private final TaskKeyLruCache<TaskCacheEntry> mIconCache;
+    // Persists badged icons, so that they don't need to be created again after a restart
+    private final TaskIconDB mIconDb;
     private final SparseArray<BitmapInfo> mDefaultIcons = new SparseArray<>();
     private BitmapInfo mDefaultIconBase = null;
 
@@ -86,6 +102,8 @@ public class TaskIconCache implements DisplayInfoChangeListener {
         int cacheSize = res.getInteger(R.integer.recentsIconCacheSize);
 
         mIconCache = new TaskKeyLruCache<>(cacheSize);
+        mIconDb = new TaskIconDB(context, LauncherFiles.TASK_ICONS_DB,
+                res.getDimensionPixelSize(R.dimen.task_icon_cache_default_icon_size));
 
         DisplayController.INSTANCE.get(mContext).addChangeListener(this);
     }
@@ -142,8 +160,12 @@ public class TaskIconCache implements DisplayInfoChangeListener {
     }
 
     void invalidateCacheEntries(String pkg, UserHandle handle) {
-        mBgExecutor.execute(() -> mIconCache
-                .removeAll(key -> pkg.equals(key.getPackageName()) && handle.getIdentifier() == key.userId));
+        mBgExecutor.execute(() -> {
+            mIconCache.removeAll(key -> pkg.equals(key.getPackageName())
+                    && handle.getIdentifier() == key.userId);
+            mIconDb.delete(TaskIconDB.COLUMN_PACKAGE + " = ? AND " + TaskIconDB.COLUMN_USER
+                    + " = ?", new String[] {pkg, Integer.toString(handle.getIdentifier())});
+        });
     }
 
     @WorkerThread
@@ -164,21 +186,36 @@ public class TaskIconCache implements DisplayInfoChangeListener {
         // TODO: Load icon resource (b/143363444)
         Bitmap icon = TaskDescriptionCompat.getIcon(desc, key.userId);
         if (icon != null && TaskIconUtils.allowCustomIcon(task)) {
-            /* isInstantApp */
-            entry.icon = getBitmapInfo(
-                    new BitmapDrawable(mContext.getResources(), icon),
-                    key.userId,
-                    desc.getPrimaryColor(),
-                    false /* isInstantApp */).newIcon(mContext);
+            // Icons provided by the task are identified by their content
+            String hash = getContentHash(icon);
+            String dbKey = getDbKey(key, desc, hash == null ? null : "hash:" + hash);
+            BitmapInfo bitmapInfo = loadFromDb(dbKey, key);
+            if (bitmapInfo == null) {
+                bitmapInfo = getBitmapInfo(
+                        new BitmapDrawable(mContext.getResources(), icon),
+                        key.userId,
+                        desc.getPrimaryColor(),
+                        false /* isInstantApp */);
+                saveToDb(dbKey, key, bitmapInfo);
+            }
+            entry.icon = bitmapInfo.newIcon(mContext);
         } else {
             activityInfo = PackageManagerWrapper.getInstance().getActivityInfo(
                     key.getComponent(), key.userId);
             if (activityInfo != null) {
-                BitmapInfo bitmapInfo = getBitmapInfo(
-                        mIconProvider.getIcon(activityInfo),
-                        key.userId,
-                        desc.getPrimaryColor(),
-                        activityInfo.applicationInfo.isInstantApp());
+                // The source dir changes whenever the app is updated
+                String dbKey = getDbKey(key, desc, "app:" + activityInfo.applicationInfo.sourceDir
+                        + "/" + activityInfo.getIconResource() + "/"
+                        + activityInfo.applicationInfo.isInstantApp());
+                BitmapInfo bitmapInfo = loadFromDb(dbKey, key);
+                if (bitmapInfo == null) {
+                    bitmapInfo = getBitmapInfo(
+                            mIconProvider.getIcon(activityInfo),
+                            key.userId,
+                            desc.getPrimaryColor(),
+                            activityInfo.applicationInfo.isInstantApp());
+                    saveToDb(dbKey, key, bitmapInfo);
+                }
                 entry.icon = bitmapInfo.newIcon(mContext);
             } else {
                 entry.icon = getDefaultIcon(key.userId);
@@ -199,6 +236,100 @@ public class TaskIconCache implements DisplayInfoChangeListener {
         return entry;
     }
 
+    /**
+     * Returns the key of an icon in the db, or null if the icon should not be persisted.
+     * Besides {@param source}, it captures everything the badged icon depends on.
+     */
+    @WorkerThread
+    @Nullable
+    private String getDbKey(TaskKey key, TaskDescription desc, @Nullable String source) {
+        if (source == null || key.userId != UserHandle.myUserId()) {
+            // Icons of other profiles are badged differently, only keep the common case
+            return null;
+        }
+        String packageName = key.getPackageName();
+        return key.getComponent().flattenToString()
+                + "|" + source
+                + "|" + desc.getPrimaryColor()
+                + "|" + DisplayController.INSTANCE.get(mContext).getInfo().getDensityDpi()
+                + "|" + mIconProvider.getSystemStateForPackage(
+                        mIconProvider.getSystemIconState(), packageName);
+    }
+
+    @WorkerThread
+    @Nullable
+    private BitmapInfo loadFromDb(@Nullable String dbKey, TaskKey key) {
+        if (dbKey == null) {
+            return null;
+        }
+        byte[] data;
+        int color;
+        long lastUpdated;
+        try (Cursor c = mIconDb.query(
+                new String[] {TaskIconDB.COLUMN_ICON, TaskIconDB.COLUMN_ICON_COLOR,
+                        TaskIconDB.COLUMN_LAST_UPDATED},
+                TaskIconDB.COLUMN_KEY + " = ?", new String[] {dbKey})) {
+            if (!c.moveToNext()) {
+                return null;
+            }
+            data = c.getBlob(0);
+            color = c.getInt(1);
+            lastUpdated = c.getLong(2);
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading task icon db", e);
+            return null;
+        }
+        Bitmap icon = data == null ? null : BitmapFactory.decodeByteArray(data, 0,
+                data.length, new BitmapFactory.Options());
+        if (icon == null) {
+            return null;
+        }
+        // Mark the entry as used so that trimming drops the least recently used ones. The row is
+        // rewritten at most once per interval, as reads are far more frequent than writes.
+        long now = System.currentTimeMillis();
+        if (now - lastUpdated > TaskIconDB.LAST_USED_UPDATE_INTERVAL_MS) {
+            writeToDb(dbKey, key, data, color, now);
+        }
+        return BitmapInfo.of(icon, color);
+    }
+
+    @WorkerThread
+    private void saveToDb(@Nullable String dbKey, TaskKey key, BitmapInfo bitmapInfo) {
+        byte[] data;
+        if (dbKey == null || (data = GraphicsUtils.flattenBitmap(bitmapInfo.icon)) == null) {
+            return;
+        }
+        writeToDb(dbKey, key, data, bitmapInfo.color, System.currentTimeMillis());
+        mIconDb.trimIfNeeded();
+    }
+
+    @WorkerThread
+    private void writeToDb(String dbKey, TaskKey key, byte[] data, int color, long lastUpdated) {
+        ContentValues values = new ContentValues();
+        values.put(TaskIconDB.COLUMN_KEY, dbKey);
+        values.put(TaskIconDB.COLUMN_PACKAGE, key.getPackageName());
+        values.put(TaskIconDB.COLUMN_USER, key.userId);
+        values.put(TaskIconDB.COLUMN_ICON, data);
+        values.put(TaskIconDB.COLUMN_ICON_COLOR, color);
+        values.put(TaskIconDB.COLUMN_LAST_UPDATED, lastUpdated);
+        mIconDb.insertOrReplace(values);
+    }
+
+    /**
+     * Returns a hash of the pixels of {@param icon}, or null if they can't be read
+     */
+    @Nullable
+    private static String getContentHash(Bitmap icon) {
+        if (icon.getConfig() == Bitmap.Config.HARDWARE) {
+            return null;
+        }
+        ByteBuffer pixels = ByteBuffer.allocate(icon.getByteCount());
+        icon.copyPixelsToBuffer(pixels);
+        CRC32 crc = new CRC32();
+        crc.update(pixels.array(), 0, pixels.position());
+        return icon.getWidth() + "x" + icon.getHeight() + ":" + Long.toHexString(crc.getValue());
+    }
+
     private Bitmap getIcon(ActivityManager.TaskDescription desc, int userId) {
         if (desc.getInMemoryIcon() != null) {
             return desc.getInMemoryIcon();
@@ -279,6 +410,56 @@ public class TaskIconCache implements DisplayInfoChangeListener {
         public String contentDescription = "";
     }
 
+    /**
+     * Database of badged task icons, in the same format as the launcher icon db
+     */
+    private static final class TaskIconDB extends SQLiteCacheHelper {
+        private static final int RELEASE_VERSION = 1;
+
+        private static final String TABLE_NAME = "task_icons";
+        private static final String COLUMN_KEY = "key";
+        private static final String COLUMN_PACKAGE = "package";
+        private static final String COLUMN_USER = "user";
+        private static final String COLUMN_ICON = "icon";
+        private static final String COLUMN_ICON_COLOR = "icon_color";
+        private static final String COLUMN_LAST_UPDATED = "lastUpdated";
+
+        // Keys change with app updates and icon packs, so old entries are dropped after a while
+        private static final int MAX_ENTRIES = 200;
+        private static final int TRIM_INTERVAL = 20;
+        private static final long LAST_USED_UPDATE_INTERVAL_MS = DateUtils.HOUR_IN_MILLIS;
+
+        private int mInsertsSinceTrim = TRIM_INTERVAL;
+
+        TaskIconDB(Context context, String dbFileName, int iconPixelSize) {
+            super(context, dbFileName, (RELEASE_VERSION << 16) + iconPixelSize, TABLE_NAME);
+        }
+
+        @Override
+        protected void onCreateTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                    + COLUMN_KEY + " TEXT NOT NULL, "
+                    + COLUMN_PACKAGE + " TEXT NOT NULL, "
+                    + COLUMN_USER + " INTEGER NOT NULL, "
+                    + COLUMN_ICON + " BLOB, "
+                    + COLUMN_ICON_COLOR + " INTEGER NOT NULL DEFAULT 0, "
+                    + COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, "
+                    + "PRIMARY KEY (" + COLUMN_KEY + ") "
+                    + ");");
+        }
+
+        @WorkerThread
+        void trimIfNeeded() {
+            if (++mInsertsSinceTrim < TRIM_INTERVAL) {
+                return;
+            }
+            mInsertsSinceTrim = 0;
+            delete(COLUMN_KEY + " NOT IN (SELECT " + COLUMN_KEY + " FROM " + TABLE_NAME
+                    + " ORDER BY " + COLUMN_LAST_UPDATED + " DESC LIMIT " + MAX_ENTRIES + ")",
+                    null);
+        }
+    }
+
     void registerTaskVisualsChangeListener(TaskVisualsChangeListener newListener) {
         mTaskVisualsChangeListener = newListener;
     }
@@ -17,6 +17,8 @@ package com.android.quickstep;
 
 import android.content.Context;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.util.SparseArray;
 
 import com.android.launcher3.R;
 import com.android.launcher3.util.Preconditions;
@@ -28,6 +30,7 @@ import com.android.systemui.shared.recents.model.ThumbnailData;
 import com.android.systemui.shared.system.ActivityManagerWrapper;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
@@ -36,10 +39,18 @@ public class TaskThumbnailCache {
     private final Executor mBgExecutor;
 
     private final int mCacheSize;
-    private final TaskKeyLruCache<ThumbnailData> mCache;
+    // Low and high resolution thumbnails are bounded separately, so that a few high resolution
+    // thumbnails don't evict all the low resolution ones used while scrolling
+    private final TaskKeyLruCache<ThumbnailData> mLowResCache;
+    private final TaskKeyLruCache<ThumbnailData> mHighResCache;
     private final HighResLoadingState mHighResLoadingState;
     private final boolean mEnableTaskSnapshotPreloading;
 
+    private final int mPrefetchCount;
+    // Pending prefetch requests, keyed by task id
+    private final SparseArray<CancellableTask<ThumbnailData>> mPrefetchRequests =
+            new SparseArray<>();
+
     public static class HighResLoadingState {
         private boolean mForceHighResThumbnails;
         private boolean mVisible;
@@ -97,7 +108,13 @@ public class TaskThumbnailCache {
         Resources res = context.getResources();
         mCacheSize = res.getInteger(R.integer.recentsThumbnailCacheSize);
         mEnableTaskSnapshotPreloading = res.getBoolean(R.bool.config_enableTaskSnapshotPreloading);
-        mCache = new TaskKeyLruCache<>(mCacheSize);
+        mPrefetchCount = res.getInteger(R.integer.recentsThumbnailPrefetchCount);
+        mLowResCache = new TaskKeyLruCache<>(
+                res.getInteger(R.integer.recentsLowResThumbnailCacheSizeKb),
+                TaskThumbnailCache::getSizeKb);
+        mHighResCache = new TaskKeyLruCache<>(
+                res.getInteger(R.integer.recentsHighResThumbnailCacheSizeKb),
+                TaskThumbnailCache::getSizeKb);
     }
 
     /**
@@ -120,7 +137,8 @@ public class TaskThumbnailCache {
      */
     public void updateTaskSnapShot(int taskId, ThumbnailData thumbnail) {
         Preconditions.assertUIThread();
-        mCache.updateIfAlreadyInCache(taskId, thumbnail);
+        mHighResCache.updateIfAlreadyInCache(taskId, thumbnail);
+        mLowResCache.updateIfAlreadyInCache(taskId, thumbnail);
     }
 
     /**
@@ -152,9 +170,8 @@ public class TaskThumbnailCache {
             Consumer<ThumbnailData> callback) {
         Preconditions.assertUIThread();
 
-        ThumbnailData cachedThumbnail = mCache.getAndInvalidateIfModified(key);
-        if (cachedThumbnail != null &&  cachedThumbnail.thumbnail != null
-                && (!cachedThumbnail.reducedResolution || lowResolution)) {
+        ThumbnailData cachedThumbnail = getCachedThumbnail(key, lowResolution);
+        if (cachedThumbnail != null) {
             // Already cached, lets use that thumbnail
             callback.accept(cachedThumbnail);
             return null;
@@ -169,7 +186,7 @@ public class TaskThumbnailCache {
 
             @Override
             public void handleResult(ThumbnailData result) {
-                mCache.put(key, result);
+                putInCache(key, result);
                 callback.accept(result);
             }
         };
@@ -177,18 +194,106 @@ public class TaskThumbnailCache {
         return request;
     }
 
+    /**
+     * Asynchronously fetches the low resolution thumbnails of the given tasks which aren't
+     * already cached, in order, so that they are ready by the time the tasks become visible.
+     * Pending prefetches of other tasks are cancelled.
+     */
+    public void prefetchThumbnails(List<TaskKey> keys) {
+        Preconditions.assertUIThread();
+        for (int i = mPrefetchRequests.size() - 1; i >= 0; i--) {
+            int taskId = mPrefetchRequests.keyAt(i);
+            if (keys.stream().noneMatch(key -> key.id == taskId)) {
+                mPrefetchRequests.valueAt(i).cancel();
+                mPrefetchRequests.removeAt(i);
+            }
+        }
+
+        for (TaskKey key : keys) {
+            if (mPrefetchRequests.get(key.id) != null
+                    || getCachedThumbnail(key, true /* lowResolution */) != null) {
+                continue;
+            }
+            CancellableTask<ThumbnailData> request = new CancellableTask<ThumbnailData>() {
+                @Override
+                public ThumbnailData getResultOnBg() {
+                    return ActivityManagerWrapper.getInstance().getTaskThumbnail(
+                            key.id, true /* lowResolution */);
+                }
+
+                @Override
+                public void handleResult(ThumbnailData result) {
+                    mPrefetchRequests.remove(key.id);
+                    if (getCachedThumbnail(key, true /* lowResolution */) == null) {
+                        putInCache(key, result);
+                    }
+                }
+            };
+            mPrefetchRequests.put(key.id, request);
+            mBgExecutor.execute(request);
+        }
+    }
+
+    /**
+     * @return The number of tasks to prefetch ahead of a fast fling.
+     */
+    public int getPrefetchCount() {
+        return mPrefetchCount;
+    }
+
     /**
      * Clears the cache.
      */
     public void clear() {
-        mCache.evictAll();
+        cancelPrefetch();
+        mLowResCache.evictAll();
+        mHighResCache.evictAll();
     }
 
     /**
      * Removes the cached thumbnail for the given task.
      */
     public void remove(Task.TaskKey key) {
-        mCache.remove(key);
+        mLowResCache.remove(key);
+        mHighResCache.remove(key);
+    }
+
+    private void cancelPrefetch() {
+        for (int i = 0; i < mPrefetchRequests.size(); i++) {
+            mPrefetchRequests.valueAt(i).cancel();
+        }
+        mPrefetchRequests.clear();
+    }
+
+    /**
+     * Returns the cached thumbnail of the task, if it exists at a resolution matching the
+     * request.
+     */
+    private ThumbnailData getCachedThumbnail(TaskKey key, boolean lowResolution) {
+        ThumbnailData highRes = mHighResCache.getAndInvalidateIfModified(key);
+        if (highRes != null && highRes.thumbnail != null) {
+            return highRes;
+        }
+        // The low resolution tier may also hold a high resolution snapshot which replaced a low
+        // resolution thumbnail, see #updateTaskSnapShot
+        ThumbnailData lowRes = mLowResCache.getAndInvalidateIfModified(key);
+        return lowRes != null && lowRes.thumbnail != null
+                && (!lowRes.reducedResolution || lowResolution) ? lowRes : null;
+    }
+
+    private void putInCache(TaskKey key, ThumbnailData thumbnail) {
+        if (thumbnail != null && !thumbnail.reducedResolution) {
+            // The low resolution thumbnail is no longer needed
+            mLowResCache.remove(key);
+            mHighResCache.put(key, thumbnail);
+        } else {
+            mLowResCache.put(key, thumbnail);
+        }
+    }
+
+    private static int getSizeKb(ThumbnailData thumbnail) {
+        Bitmap bitmap = thumbnail.thumbnail;
+        return bitmap == null ? 0 : (bitmap.getAllocationByteCount() + 1023) / 1024;
     }
 
     /**
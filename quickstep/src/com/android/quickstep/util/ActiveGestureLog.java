@@ -15,9 +15,10 @@
  */
 package com.android.quickstep.util;
 
-import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.android.launcher3.util.EventLogBuffer;
+
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -25,13 +26,18 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A log to keep track of the active gesture.
+ *
+ * Logs are written from the touch and animation code of any thread, so they are kept in an
+ * {@link EventLogBuffer} and grouped by gesture only when dumped.
  */
 public class ActiveGestureLog {
 
     private static final int MAX_GESTURES_TRACKED = 10;
+    private static final int MAX_ENTRIES = 2048;
 
     public static final ActiveGestureLog INSTANCE = new ActiveGestureLog();
 
@@ -49,14 +55,16 @@ public class ActiveGestureLog {
     private static final int TYPE_INPUT_CONSUMER = 5;
     private static final int TYPE_GESTURE_EVENT = 6;
 
-    private final EventLog[] logs;
-    private int nextIndex;
-    private int mCurrentLogId = 100;
+    // Entry flags hold the type in the low bits, and the ordinal + 1 of the gesture event above
+    private static final int TYPE_MASK = 0xFF;
+    private static final int GESTURE_EVENT_SHIFT = 8;
+    private static final ActiveGestureErrorDetector.GestureEvent[] GESTURE_EVENTS =
+            ActiveGestureErrorDetector.GestureEvent.values();
 
-    private ActiveGestureLog() {
-        this.logs = new EventLog[MAX_GESTURES_TRACKED];
-        this.nextIndex = 0;
-    }
+    private final EventLogBuffer mLogs = new EventLogBuffer(MAX_ENTRIES);
+    private final AtomicInteger mCurrentLogId = new AtomicInteger(100);
+
+    private ActiveGestureLog() { }
 
     /**
      * Track the given event for error detection.
@@ -65,7 +73,7 @@ public class ActiveGestureLog {
      *                   execution.
      */
     public void trackEvent(@Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        addLog(TYPE_GESTURE_EVENT, "", 0, CompoundString.NO_OP, gestureEvent);
+        addLog(TYPE_GESTURE_EVENT, "", 0, gestureEvent);
     }
 
     public void addLog(String event) {
@@ -81,7 +89,7 @@ public class ActiveGestureLog {
     }
 
     public void addLog(CompoundString compoundString) {
-        addLog(TYPE_INPUT_CONSUMER, "", 0, compoundString, null);
+        addLog(TYPE_INPUT_CONSUMER, compoundString, 0, null);
     }
 
     /**
@@ -91,106 +99,83 @@ public class ActiveGestureLog {
      */
     public void addLog(
             String event, @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        addLog(TYPE_ONE_OFF, event, 0, CompoundString.NO_OP, gestureEvent);
+        addLog(TYPE_ONE_OFF, event, 0, gestureEvent);
     }
 
     public void addLog(
             String event,
             int extras,
             @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        addLog(TYPE_INTEGER, event, extras, CompoundString.NO_OP, gestureEvent);
+        addLog(TYPE_INTEGER, event, extras, gestureEvent);
     }
 
     public void addLog(
             String event,
             boolean extras,
             @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        addLog(
-                extras ? TYPE_BOOL_TRUE : TYPE_BOOL_FALSE,
-                event,
-                0,
-                CompoundString.NO_OP,
-                gestureEvent);
+        addLog(extras ? TYPE_BOOL_TRUE : TYPE_BOOL_FALSE, event, 0, gestureEvent);
     }
 
     private void addLog(
             int type,
-            String event,
-            float extras,
-            CompoundString compoundString,
+            Object event,
+            long extras,
             @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        EventLog lastEventLog = logs[(nextIndex + logs.length - 1) % logs.length];
-        if (lastEventLog == null || mCurrentLogId != lastEventLog.logId) {
-            EventLog eventLog = new EventLog(mCurrentLogId);
-            EventEntry eventEntry = new EventEntry();
-
-            eventEntry.update(type, event, extras, compoundString, gestureEvent);
-            eventLog.eventEntries.add(eventEntry);
-            logs[nextIndex] = eventLog;
-            nextIndex = (nextIndex + 1) % logs.length;
-            return;
-        }
-
-        // Update the last EventLog
-        List<EventEntry> lastEventEntries = lastEventLog.eventEntries;
-        EventEntry lastEntry = lastEventEntries.size() > 0
-                ? lastEventEntries.get(lastEventEntries.size() - 1) : null;
-
-        // Update the last EventEntry if it's a duplicate
-        if (isEntrySame(lastEntry, type, event, extras, compoundString, gestureEvent)) {
-            lastEntry.duplicateCount++;
-            return;
+        int flags = type;
+        if (gestureEvent != null) {
+            flags |= (gestureEvent.ordinal() + 1) << GESTURE_EVENT_SHIFT;
         }
-        EventEntry eventEntry = new EventEntry();
-
-        eventEntry.update(type, event, extras, compoundString, gestureEvent);
-        lastEventEntries.add(eventEntry);
+        mLogs.add(flags, event, extras, mCurrentLogId.get());
     }
 
     public void dump(String prefix, PrintWriter writer) {
-        writer.println(prefix + "ActiveGestureErrorDetector:");
-        for (int i = 0; i < logs.length; i++) {
-            EventLog eventLog = logs[(nextIndex + i) % logs.length];
-            if (eventLog == null) {
-                continue;
+        // Group the entries by gesture, keeping the last ones
+        List<EventLog> logs = new ArrayList<>();
+        EventLog lastLog = null;
+        for (EventLogBuffer.Entry entry : mLogs.snapshot()) {
+            if (lastLog == null || lastLog.logId != entry.tag) {
+                lastLog = new EventLog(entry.tag);
+                logs.add(lastLog);
             }
+            lastLog.eventEntries.add(new EventEntry(entry));
+        }
+        logs = logs.subList(Math.max(0, logs.size() - MAX_GESTURES_TRACKED), logs.size());
+
+        writer.println(prefix + "ActiveGestureErrorDetector:");
+        for (EventLog eventLog : logs) {
             ActiveGestureErrorDetector.analyseAndDump(prefix + '\t', writer, eventLog);
         }
 
         writer.println(prefix + "ActiveGestureLog history:");
         SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss.SSSZ  ", Locale.US);
         Date date = new Date();
-        for (int i = 0; i < logs.length; i++) {
-            EventLog eventLog = logs[(nextIndex + i) % logs.length];
-            if (eventLog == null) {
-                continue;
-            }
-
+        for (EventLog eventLog : logs) {
             writer.println(prefix + "\tLogs for logId: " + eventLog.logId);
             for (EventEntry eventEntry : eventLog.eventEntries) {
                 date.setTime(eventEntry.time);
 
-                StringBuilder msg = new StringBuilder(prefix + "\t\t").append(sdf.format(date))
-                        .append(eventEntry.event);
+                StringBuilder msg = new StringBuilder(prefix + "\t\t").append(sdf.format(date));
                 switch (eventEntry.type) {
                     case TYPE_BOOL_FALSE:
-                        msg.append(": false");
+                        msg.append(eventEntry.event).append(": false");
                         break;
                     case TYPE_BOOL_TRUE:
-                        msg.append(": true");
+                        msg.append(eventEntry.event).append(": true");
                         break;
                     case TYPE_FLOAT:
-                        msg.append(": ").append(eventEntry.extras);
+                        msg.append(eventEntry.event).append(": ")
+                                .append(Float.intBitsToFloat((int) eventEntry.extras));
                         break;
                     case TYPE_INTEGER:
-                        msg.append(": ").append((int) eventEntry.extras);
+                        msg.append(eventEntry.event).append(": ").append((int) eventEntry.extras);
                         break;
                     case TYPE_INPUT_CONSUMER:
-                        msg.append(eventEntry.mCompoundString);
+                        msg.append(eventEntry.event);
                         break;
                     case TYPE_GESTURE_EVENT:
                         continue;
-                    default: // fall out
+                    default:
+                        msg.append(eventEntry.event);
                 }
                 if (eventEntry.duplicateCount > 0) {
                     msg.append(" & ").append(eventEntry.duplicateCount).append(" similar events");
@@ -205,61 +190,38 @@ public class ActiveGestureLog {
      * is started.
      */
     public int incrementLogId() {
-        return mCurrentLogId++;
+        return mCurrentLogId.getAndIncrement();
     }
 
     /** Returns the current log ID. This should be used when a log trace is being reused. */
     public int getLogId() {
-        return mCurrentLogId;
+        return mCurrentLogId.get();
     }
 
-    private boolean isEntrySame(
-            EventEntry entry,
-            int type,
-            String event,
-            float extras,
-            CompoundString compoundString,
-            ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        return entry != null
-                && entry.type == type
-                && entry.event.equals(event)
-                && Float.compare(entry.extras, extras) == 0
-                && entry.mCompoundString.equals(compoundString)
-                && entry.gestureEvent == gestureEvent;
-    }
-
-    /** A single event entry. */
+    /** A single event entry, read back from the log when it is dumped. */
     protected static class EventEntry {
 
-        private int type;
-        private String event;
-        private float extras;
-        @NonNull private CompoundString mCompoundString;
-        private ActiveGestureErrorDetector.GestureEvent gestureEvent;
-        private long time;
-        private int duplicateCount;
-
-        private EventEntry() {}
+        private final int type;
+        private final Object event;
+        private final long extras;
+        @Nullable private final ActiveGestureErrorDetector.GestureEvent gestureEvent;
+        private final long time;
+        private final int duplicateCount;
+
+        private EventEntry(EventLogBuffer.Entry entry) {
+            type = entry.flags & TYPE_MASK;
+            int gestureEventOrdinal = (entry.flags >>> GESTURE_EVENT_SHIFT) - 1;
+            gestureEvent = gestureEventOrdinal >= 0 ? GESTURE_EVENTS[gestureEventOrdinal] : null;
+            event = entry.event;
+            extras = entry.extras;
+            time = entry.timeMillis;
+            duplicateCount = entry.duplicateCount;
+        }
 
         @Nullable
         protected ActiveGestureErrorDetector.GestureEvent getGestureEvent() {
             return gestureEvent;
         }
-
-        private void update(
-                int type,
-                String event,
-                float extras,
-                @NonNull CompoundString compoundString,
-                ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-            this.type = type;
-            this.event = event;
-            this.extras = extras;
-            this.mCompoundString = compoundString;
-            this.gestureEvent = gestureEvent;
-            time = System.currentTimeMillis();
-            duplicateCount = 0;
-        }
     }
 
     /** An entire log of entries associated with a single log ID */
@@ -19,64 +19,111 @@ import android.util.Log;
 
 import com.android.systemui.shared.recents.model.Task.TaskKey;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
- * A simple LRU cache for task key entries
+ * A simple LRU cache for task key entries. The cache is bounded by the total size of its entries,
+ * which is their count unless a size function is provided.
+ *
+ * The cache is read from the UI thread and background executors at the same time, so lookups
+ * don't take any lock: entries are kept in an immutable table sorted by task id, which writers
+ * replace under a lock. Recency is tracked with an access time on each entry instead of
+ * reordering a list on every read. When the cache is full, the least recently used entries are
+ * evicted until it fits in the maximum size again.
  * @param <V> The type of the value
  */
 public class TaskKeyLruCache<V> {
 
-    private final MyLinkedHashMap<V> mMap;
+    private final int mMaxSize;
+    private final ToIntFunction<V> mSizeOf;
+
+    private final Object mWriteLock = new Object();
+    private volatile Table<V> mTable = Table.empty();
+    // Guarded by mWriteLock for writes
+    private volatile int mSize;
 
     public TaskKeyLruCache(int maxSize) {
-        mMap = new MyLinkedHashMap<>(maxSize);
+        this(maxSize, v -> 1);
+    }
+
+    /**
+     * @param maxSize the maximum total size of the entries
+     * @param sizeOf returns the size of a value, in the same unit as maxSize
+     */
+    public TaskKeyLruCache(int maxSize, ToIntFunction<V> sizeOf) {
+        mMaxSize = maxSize;
+        mSizeOf = sizeOf;
     }
 
     /**
      * Removes all entries from the cache
      */
-    public synchronized void evictAll() {
-        mMap.clear();
+    public void evictAll() {
+        synchronized (mWriteLock) {
+            mTable = Table.empty();
+            mSize = 0;
+        }
     }
 
     /**
      * Removes a particular entry from the cache
      */
-    public synchronized void remove(TaskKey key) {
-        mMap.remove(key.id);
+    public void remove(TaskKey key) {
+        remove(key.id, null);
     }
 
     /**
      * Removes all entries matching keyCheck
      */
-    public synchronized void removeAll(Predicate<TaskKey> keyCheck) {
-        mMap.entrySet().removeIf(e -> keyCheck.test(e.getValue().mKey));
+    public void removeAll(Predicate<TaskKey> keyCheck) {
+        synchronized (mWriteLock) {
+            Table<V> table = mTable;
+            Table<V> result = table.filter(e -> !keyCheck.test(e.mKey));
+            if (result != table) {
+                mSize -= table.totalSize() - result.totalSize();
+                mTable = result;
+            }
+        }
     }
 
     /**
      * Gets the entry if it is still valid
      */
-    public synchronized V getAndInvalidateIfModified(TaskKey key) {
-        Entry<V> entry = mMap.get(key.id);
+    public V getAndInvalidateIfModified(TaskKey key) {
+        Entry<V> entry = mTable.get(key.id);
 
         if (entry != null && entry.mKey.windowingMode == key.windowingMode
                 && entry.mKey.lastActiveTime == key.lastActiveTime) {
+            entry.mLastAccessNanos = System.nanoTime();
             return entry.mValue;
         } else {
-            remove(key);
+            if (entry != null) {
+                remove(key.id, entry);
+            }
             return null;
         }
     }
 
     /**
-     * Adds an entry to the cache, optionally evicting the last accessed entry
+     * Adds an entry to the cache, optionally evicting the least recently accessed entries
      */
-    public final synchronized void put(TaskKey key, V value) {
+    public final void put(TaskKey key, V value) {
         if (key != null && value != null) {
-            mMap.put(key.id, new Entry<>(key, value));
+            Entry<V> entry = new Entry<>(key, value, mSizeOf.applyAsInt(value));
+            synchronized (mWriteLock) {
+                Table<V> table = mTable;
+                Entry<V> previous = table.get(key.id);
+                int size = mSize + entry.mSize - (previous != null ? previous.mSize : 0);
+                table = table.put(entry);
+                if (size > mMaxSize) {
+                    table = table.evictOldest(size - mMaxSize, entry);
+                    size = table.totalSize();
+                }
+                mTable = table;
+                mSize = size;
+            }
         } else {
             Log.e("TaskKeyCache", "Unexpected null key or value: " + key + ", " + value);
         }
@@ -85,21 +132,65 @@ public class TaskKeyLruCache<V> {
     /**
      * Updates the cache entry if it is already present in the cache
      */
-    public synchronized void updateIfAlreadyInCache(int taskId, V data) {
-        Entry<V> entry = mMap.get(taskId);
-        if (entry != null) {
+    public void updateIfAlreadyInCache(int taskId, V data) {
+        synchronized (mWriteLock) {
+            Entry<V> entry = mTable.get(taskId);
+            if (entry == null) {
+                return;
+            }
+            int size = mSizeOf.applyAsInt(data);
+            mSize += size - entry.mSize;
             entry.mValue = data;
+            entry.mSize = size;
+            entry.mLastAccessNanos = System.nanoTime();
+            if (mSize > mMaxSize) {
+                mTable = mTable.evictOldest(mSize - mMaxSize, entry);
+                mSize = mTable.totalSize();
+            }
+        }
+    }
+
+    /**
+     * Returns whether there is an entry for the given task, without affecting its recency
+     */
+    public boolean contains(int taskId) {
+        return mTable.get(taskId) != null;
+    }
+
+    /**
+     * @return The total size of the entries in the cache.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Removes the entry of the given task, only if it is still {@param expected} when not null
+     */
+    private void remove(int taskId, Entry<V> expected) {
+        synchronized (mWriteLock) {
+            Table<V> table = mTable;
+            Entry<V> entry = table.get(taskId);
+            if (entry == null || (expected != null && entry != expected)) {
+                return;
+            }
+            mTable = table.filter(e -> e != entry);
+            mSize -= entry.mSize;
         }
     }
 
     private static class Entry<V> {
 
         final TaskKey mKey;
-        V mValue;
+        volatile V mValue;
+        // Only written with mWriteLock held
+        int mSize;
+        volatile long mLastAccessNanos = System.nanoTime();
 
-        Entry(TaskKey key, V value) {
+        Entry(TaskKey key, V value, int size) {
             mKey = key;
             mValue = value;
+            mSize = size;
         }
 
         @Override
@@ -108,18 +199,128 @@ public class TaskKeyLruCache<V> {
         }
     }
 
-    private static class MyLinkedHashMap<V> extends LinkedHashMap<Integer, Entry<V>> {
+    /**
+     * Immutable set of entries, sorted by task id so that they can be looked up with a binary
+     * search on the primitive ids.
+     */
+    private static final class Table<V> {
+
+        private static final Table<?> EMPTY = new Table<>(new int[0], new Entry[0]);
 
-        private final int mMaxSize;
+        private final int[] mIds;
+        private final Entry<V>[] mEntries;
 
-        MyLinkedHashMap(int maxSize) {
-            super(0, 0.75f, true /* accessOrder */);
-            mMaxSize = maxSize;
+        private Table(int[] ids, Entry<V>[] entries) {
+            mIds = ids;
+            mEntries = entries;
         }
 
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<Integer, TaskKeyLruCache.Entry<V>> eldest) {
-            return size() > mMaxSize;
+        @SuppressWarnings("unchecked")
+        static <V> Table<V> empty() {
+            return (Table<V>) EMPTY;
+        }
+
+        Entry<V> get(int taskId) {
+            int index = Arrays.binarySearch(mIds, taskId);
+            return index >= 0 ? mEntries[index] : null;
+        }
+
+        int totalSize() {
+            int size = 0;
+            for (Entry<V> entry : mEntries) {
+                size += entry.mSize;
+            }
+            return size;
+        }
+
+        /**
+         * Returns a table with {@param entry} added, or replacing the entry with the same id
+         */
+        @SuppressWarnings("unchecked")
+        Table<V> put(Entry<V> entry) {
+            int index = Arrays.binarySearch(mIds, entry.mKey.id);
+            if (index >= 0) {
+                Entry<V>[] entries = mEntries.clone();
+                entries[index] = entry;
+                return new Table<>(mIds, entries);
+            }
+            index = -index - 1;
+            int count = mIds.length;
+            int[] ids = new int[count + 1];
+            Entry<V>[] entries = new Entry[count + 1];
+            System.arraycopy(mIds, 0, ids, 0, index);
+            System.arraycopy(mEntries, 0, entries, 0, index);
+            ids[index] = entry.mKey.id;
+            entries[index] = entry;
+            System.arraycopy(mIds, index, ids, index + 1, count - index);
+            System.arraycopy(mEntries, index, entries, index + 1, count - index);
+            return new Table<>(ids, entries);
+        }
+
+        /**
+         * Returns a table with only the entries matching {@param filter}, or this table if they
+         * all match
+         */
+        @SuppressWarnings("unchecked")
+        Table<V> filter(Predicate<Entry<V>> filter) {
+            int count = mIds.length;
+            int[] ids = new int[count];
+            Entry<V>[] entries = new Entry[count];
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (filter.test(mEntries[i])) {
+                    ids[kept] = mIds[i];
+                    entries[kept] = mEntries[i];
+                    kept++;
+                }
+            }
+            return kept == count
+                    ? this : new Table<>(Arrays.copyOf(ids, kept), Arrays.copyOf(entries, kept));
+        }
+
+        /**
+         * Returns a table without the least recently accessed entries, so that their total size
+         * is at least {@param sizeToEvict}. The most recent entry {@param keep} is never evicted.
+         */
+        @SuppressWarnings("unchecked")
+        Table<V> evictOldest(int sizeToEvict, Entry<V> keep) {
+            int count = mEntries.length;
+            // Use a snapshot of access times, as entries can still be accessed concurrently
+            long[] accessTimes = new long[count];
+            for (int i = 0; i < count; i++) {
+                accessTimes[i] = mEntries[i].mLastAccessNanos;
+            }
+
+            // Only a few entries are evicted at once, so a selection of the oldest is enough
+            boolean[] evicted = new boolean[count];
+            int evictedCount = 0;
+            int evictedSize = 0;
+            while (evictedSize < sizeToEvict) {
+                int oldest = -1;
+                for (int i = 0; i < count; i++) {
+                    if (!evicted[i] && mEntries[i] != keep
+                            && (oldest < 0 || accessTimes[i] < accessTimes[oldest])) {
+                        oldest = i;
+                    }
+                }
+                if (oldest < 0) {
+                    break;
+                }
+                evicted[oldest] = true;
+                evictedCount++;
+                evictedSize += mEntries[oldest].mSize;
+            }
+
+            int[] ids = new int[count - evictedCount];
+            Entry<V>[] entries = new Entry[count - evictedCount];
+            for (int i = 0, j = 0; i < count; i++) {
+                if (!evicted[i]) {
+                    ids[j] = mIds[i];
+                    entries[j] = mEntries[i];
+                    j++;
+                }
+            }
+            return new Table<>(ids, entries);
         }
     }
 }
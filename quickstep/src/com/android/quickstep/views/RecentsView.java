@@ -2257,6 +2257,9 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
 
             // After scrolling, update the visible task's data
             loadVisibleTaskData(TaskView.FLAG_UPDATE_ALL);
+            if (isFlingingFast) {
+                prefetchThumbnailsInFlingDirection();
+            }
         }
 
         // Update ActionsView's visibility when scroll changes.
@@ -2267,6 +2270,41 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
         return scrolling;
     }
 
+    /**
+     * Prefetches the thumbnails of the tasks following the visible ones in the direction of the
+     * current fling, so that they are already cached when the tasks become visible.
+     */
+    private void prefetchThumbnailsInFlingDirection() {
+        int scrollDirection = Integer.signum(mScroller.getFinalX() - mScroller.getCurrX());
+        if (scrollDirection == 0 || mTaskListChangeId == -1) {
+            return;
+        }
+        // Page scrolls decrease along with the page index in RTL
+        int indexDirection = mIsRtl ? -scrollDirection : scrollDirection;
+        TaskThumbnailCache thumbnailCache = mModel.getThumbnailCache();
+        int prefetchCount = thumbnailCache.getPrefetchCount();
+        List<Task.TaskKey> keys = new ArrayList<>(prefetchCount);
+        for (int i = getPageNearestToCenterOfScreen();
+                i >= 0 && i < getChildCount() && keys.size() < prefetchCount;
+                i += indexDirection) {
+            TaskView taskView = getTaskViewAt(i);
+            if (taskView == null) {
+                continue;
+            }
+            for (TaskIdAttributeContainer container : taskView.getTaskIdAttributeContainers()) {
+                if (container == null || keys.size() >= prefetchCount) {
+                    continue;
+                }
+                Task task = container.getTask();
+                // Visible tasks are already loaded by loadVisibleTaskData
+                if (task.thumbnail == null && !mHasVisibleTaskData.get(task.key.id)) {
+                    keys.add(task.key);
+                }
+            }
+        }
+        thumbnailCache.prefetchThumbnails(keys);
+    }
+
     private void updateActionsViewFocusedScroll() {
         if (showAsGrid()) {
             float actionsViewAlphaValue = isFocusedTaskInExpectedScrollPosition() ? 1 : 0;
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Intent;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link TaskKeyLruCache}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class TaskKeyLruCacheTest {
+
+    @Test
+    public void get_returnsValueOnlyForSameKeyState() {
+        TaskKeyLruCache<String> cache = new TaskKeyLruCache<>(4);
+        cache.put(key(1, 100), "a");
+
+        assertEquals("a", cache.getAndInvalidateIfModified(key(1, 100)));
+        assertNull(cache.getAndInvalidateIfModified(key(1, 200)));
+        // The outdated entry was invalidated
+        assertFalse(cache.contains(1));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedEntries() throws Exception {
+        TaskKeyLruCache<String> cache = new TaskKeyLruCache<>(3);
+        cache.put(key(1), "a");
+        cache.put(key(2), "b");
+        cache.put(key(3), "c");
+        // Make sure access times differ
+        Thread.sleep(1);
+        cache.getAndInvalidateIfModified(key(1));
+
+        cache.put(key(4), "d");
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(4));
+        assertEquals(3, cache.getSize());
+    }
+
+    @Test
+    public void put_whenFull_keepsMaxSizeEntries() {
+        TaskKeyLruCache<String> cache = new TaskKeyLruCache<>(12);
+        for (int i = 0; i < 20; i++) {
+            cache.put(key(i), "v" + i);
+            assertEquals(Math.min(i + 1, 12), cache.getSize());
+        }
+        for (int i = 8; i < 20; i++) {
+            assertTrue(cache.contains(i));
+        }
+    }
+
+    @Test
+    public void put_boundsTotalSizeButKeepsNewestEntry() {
+        TaskKeyLruCache<String> cache = new TaskKeyLruCache<>(10, String::length);
+        cache.put(key(1), "aaaa");
+        cache.put(key(2), "bbbb");
+        assertEquals(8, cache.getSize());
+
+        cache.put(key(3), "cccccccccccc");
+        assertFalse(cache.contains(1));
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(3));
+        assertEquals(12, cache.getSize());
+    }
+
+    @Test
+    public void updateIfAlreadyInCache_updatesValueAndSize() {
+        TaskKeyLruCache<String> cache = new TaskKeyLruCache<>(10, String::length);
+        cache.put(key(1), "aa");
+        cache.updateIfAlreadyInCache(1, "aaaa");
+        cache.updateIfAlreadyInCache(2, "bbbb");
+
+        assertEquals("aaaa", cache.getAndInvalidateIfModified(key(1)));
+        assertFalse(cache.contains(2));
+        assertEquals(4, cache.getSize());
+    }
+
+    @Test
+    public void removeAll_removesMatchingEntries() {
+        TaskKeyLruCache<String> cache = new TaskKeyLruCache<>(10);
+        for (int i = 0; i < 6; i++) {
+            cache.put(key(i), "v" + i);
+        }
+        cache.removeAll(key -> key.id % 2 == 0);
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i % 2 != 0, cache.contains(i));
+        }
+        assertEquals(3, cache.getSize());
+    }
+
+    @Test
+    public void concurrentAccess_keepsCacheConsistent() throws Exception {
+        int maxSize = 16;
+        int threadCount = 8;
+        int opsPerThread = 20_000;
+        TaskKeyLruCache<Integer> cache = new TaskKeyLruCache<>(maxSize);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < threadCount; t++) {
+            Random random = new Random(t);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        int id = random.nextInt(maxSize * 2);
+                        int op = random.nextInt(10);
+                        if (op < 6) {
+                            Integer value = cache.getAndInvalidateIfModified(key(id));
+                            if (value != null && value != id) {
+                                throw new AssertionError("Got " + value + " for task " + id);
+                            }
+                        } else if (op < 9) {
+                            cache.put(key(id), id);
+                        } else if (op == 9 && i % 100 == 0) {
+                            cache.removeAll(key -> key.id == id);
+                        } else {
+                            cache.updateIfAlreadyInCache(id, id);
+                        }
+                        if (cache.getSize() > maxSize) {
+                            throw new AssertionError("Size " + cache.getSize() + " over max");
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        int count = 0;
+        for (int id = 0; id < maxSize * 2; id++) {
+            if (cache.contains(id)) {
+                count++;
+            }
+        }
+        assertEquals(count, cache.getSize());
+    }
+
+    static TaskKey key(int id) {
+        return key(id, 0);
+    }
+
+    static TaskKey key(int id, long lastActiveTime) {
+        return new TaskKey(id, 0, new Intent(), null, 0, lastActiveTime);
+    }
+}
@@ -38,6 +38,7 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.Typeface;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.icu.text.MessageFormat;
@@ -74,10 +75,11 @@ import com.android.launcher3.icons.cache.HandlerRunnable;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.model.data.ItemInfoWithIcon;
+import com.android.launcher3.model.data.LabelBreakpoints;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.popup.PopupContainerWithArrow;
-import com.android.launcher3.search.StringMatcherUtility;
 import com.android.launcher3.util.IntArray;
+import com.android.launcher3.util.LabelLineSplitter;
 import com.android.launcher3.util.MultiTranslateDelegate;
 import com.android.launcher3.util.SafeCloseable;
 import com.android.launcher3.util.ShortcutUtil;
@@ -116,17 +118,21 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
     private static final float MIN_LETTER_SPACING = -0.05f;
     private static final int MAX_SEARCH_LOOP_COUNT = 20;
     private static final Character NEW_LINE = '\n';
-    private static final String EMPTY = "";
-    private static final StringMatcherUtility.StringMatcher MATCHER = StringMatcherUtility.StringMatcher.getInstance();
 
     private static final int[] STATE_PRESSED = new int[] { android.R.attr.state_pressed };
 
     private float mScaleForReorderBounce = 1f;
 
-    private IntArray mBreakPointsIntArray;
-    private CharSequence mLastOriginalText;
+    private LabelBreakpoints mLabelBreakpoints;
     private CharSequence mLastModifiedText;
 
+    // Last two line split of mLabelBreakpoints, and the width and text paint it was made for
+    private CharSequence mMultiLineTitle;
+    private int mMultiLineWidth;
+    private float mMultiLineTextSize;
+    private float mMultiLineLetterSpacing;
+    private Typeface mMultiLineTypeface;
+
     private static final Property<BubbleTextView, Float> DOT_SCALE_PROPERTY = new Property<BubbleTextView, Float>(
             Float.TYPE, "dotScale") {
         @Override
@@ -425,9 +431,17 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
     public void applyLabel(ItemInfoWithIcon info) {
         CharSequence label = info.title;
         if (label != null) {
-            mLastOriginalText = label;
-            mLastModifiedText = mLastOriginalText;
-            mBreakPointsIntArray = StringMatcherUtility.getListOfBreakpoints(label, MATCHER);
+            mLastModifiedText = label;
+            // Apps come with breakpoints computed by the model, other labels are scanned here
+            LabelBreakpoints breakpoints =
+                    info instanceof AppInfo appInfo ? appInfo.labelBreakpoints : null;
+            if (breakpoints == null || !breakpoints.isFor(label)) {
+                breakpoints = LabelLineSplitter.getBreakpoints(label);
+            }
+            if (breakpoints != mLabelBreakpoints) {
+                mLabelBreakpoints = breakpoints;
+                mMultiLineTitle = null;
+            }
             setText(label);
         }
         if (info.contentDescription != null) {
@@ -710,12 +724,10 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
                     getPaddingBottom());
         }
         // Only apply two line for all_apps and device search only if necessary.
-        if (shouldUseTwoLine() && (mLastOriginalText != null)) {
-            CharSequence modifiedString = modifyTitleToSupportMultiLine(
+        if (shouldUseTwoLine() && (mLabelBreakpoints != null)) {
+            CharSequence modifiedString = getMultiLineTitle(
                     MeasureSpec.getSize(widthMeasureSpec) - getCompoundPaddingLeft()
-                            - getCompoundPaddingRight(),
-                    mLastOriginalText,
-                    getPaint(), mBreakPointsIntArray);
+                            - getCompoundPaddingRight());
             if (!TextUtils.equals(modifiedString, mLastModifiedText)) {
                 mLastModifiedText = modifiedString;
                 setText(modifiedString);
@@ -732,6 +744,25 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
     }
 
+    /**
+     * Returns the label split on two lines for {@param width}, reusing the last split as long as
+     * the label, width and text paint don't change, like when the view is measured again
+     */
+    private CharSequence getMultiLineTitle(int width) {
+        TextPaint paint = getPaint();
+        if (mMultiLineTitle == null || mMultiLineWidth != width
+                || mMultiLineTextSize != paint.getTextSize()
+                || mMultiLineLetterSpacing != paint.getLetterSpacing()
+                || mMultiLineTypeface != paint.getTypeface()) {
+            mMultiLineWidth = width;
+            mMultiLineTextSize = paint.getTextSize();
+            mMultiLineLetterSpacing = paint.getLetterSpacing();
+            mMultiLineTypeface = paint.getTypeface();
+            mMultiLineTitle = LabelLineSplitter.splitOnTwoLines(width, mLabelBreakpoints, paint);
+        }
+        return mMultiLineTitle;
+    }
+
     @Override
     public void setTextColor(int color) {
         mTextColor = color;
@@ -790,78 +821,15 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
     }
 
     /**
-     * Generate a new string that will support two line text depending on the
-     * current string.
-     * This method calculates the limited width of a text view and creates a string
-     * to fit as
-     * many words as it can until the limit is reached. Once the limit is reached,
-     * we decide to
-     * either return the original title or continue on a new line. How to get the
-     * new string is by
-     * iterating through the list of break points and determining if the strings
-     * between the break
-     * points can fit within the line it is in.
-     * Example assuming each character takes up one spot:
-     * title = "Battery Stats", breakpoint = [6], stringPtr = 0, limitedWidth = 7
-     * We get the current word -> from sublist(0, breakpoint[i]+1) so sublist (0,7)
-     * -> Battery,
-     * now stringPtr = 7 then from sublist(7) the current string is " Stats" and the
-     * runningWidth
-     * at this point exceeds limitedWidth and so we put " Stats" onto the next line
-     * (after checking
-     * if the first char is a SPACE, we trim to append "Stats". So resulting string
-     * would be
-     * "Battery\nStats"
+     * Returns {@param title} split on two lines at {@param breakPoints} if it doesn't fit in
+     * {@param limitedWidth}
+     *
+     * @see LabelLineSplitter#splitOnTwoLines
      */
     public static CharSequence modifyTitleToSupportMultiLine(int limitedWidth, CharSequence title,
             TextPaint paint, IntArray breakPoints) {
-        // current title is less than the width allowed so we can just skip
-        if (title == null || paint.measureText(title, 0, title.length()) <= limitedWidth) {
-            return title;
-        }
-        float currentWordWidth, runningWidth = 0;
-        CharSequence currentWord;
-        StringBuilder newString = new StringBuilder();
-        int stringPtr = 0;
-        for (int i = 0; i < breakPoints.size() + 1; i++) {
-            if (i < breakPoints.size()) {
-                currentWord = title.subSequence(stringPtr, breakPoints.get(i) + 1);
-            } else {
-                // last word from recent breakpoint until the end of the string
-                currentWord = title.subSequence(stringPtr, title.length());
-            }
-            currentWordWidth = paint.measureText(currentWord, 0, currentWord.length());
-            runningWidth += currentWordWidth;
-            if (runningWidth <= limitedWidth) {
-                newString.append(currentWord);
-            } else {
-                // there is no more space
-                if (i == 0) {
-                    // if the first words exceeds width, just return as the first line will ellipse
-                    return title;
-                } else {
-                    // If putting word onto a new line, make sure there is no space or new line
-                    // character in the beginning of the current word and just put in the rest of
-                    // the characters.
-                    CharSequence lastCharacters = title.subSequence(stringPtr, title.length());
-                    int beginningLetterType = Character.getType(Character.codePointAt(lastCharacters, 0));
-                    if (beginningLetterType == Character.SPACE_SEPARATOR
-                            || beginningLetterType == Character.LINE_SEPARATOR) {
-                        lastCharacters = lastCharacters.length() > 1
-                                ? lastCharacters.subSequence(1, lastCharacters.length())
-                                : EMPTY;
-                    }
-                    newString.append(NEW_LINE).append(lastCharacters);
-                    return newString.toString();
-                }
-            }
-            if (i >= breakPoints.size()) {
-                // no need to look forward into the string if we've already finished processing
-                break;
-            }
-            stringPtr = breakPoints.get(i) + 1;
-        }
-        return newString.toString();
+        return title == null ? null : LabelLineSplitter.splitOnTwoLines(
+                limitedWidth, new LabelBreakpoints(title, breakPoints), paint);
     }
 
     @Override
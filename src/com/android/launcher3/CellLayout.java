@@ -66,6 +66,7 @@ import com.android.launcher3.accessibility.DragAndDropAccessibilityDelegate;
 import com.android.launcher3.celllayout.CellLayoutLayoutParams;
 import com.android.launcher3.celllayout.CellPosMapper.CellPos;
 import com.android.launcher3.celllayout.ReorderAlgorithm;
+import com.android.launcher3.celllayout.ReorderSolutionCache;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.dragndrop.DraggableView;
 import com.android.launcher3.folder.PreviewBackground;
@@ -79,7 +80,6 @@ import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.views.ActivityContext;
 import com.android.launcher3.widget.LauncherAppWidgetHostView;
-import com.patrykmichalik.opto.core.PreferenceExtensionsKt;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -226,6 +226,8 @@ public class CellLayout extends ViewGroup {
     public final int[] mDirectionVector = new int[2];
 
     ItemConfiguration mPreviousSolution = null;
+    // Reorder solutions of the current drag, valid until the items are moved
+    private final ReorderSolutionCache mReorderSolutionCache = new ReorderSolutionCache();
     private static final int INVALID_DIRECTION = -100;
 
     private final Rect mTempRect = new Rect();
@@ -440,6 +442,7 @@ public class CellLayout extends ViewGroup {
         mCountY = y;
         mOccupied = new GridOccupancy(mCountX, mCountY);
         mTmpOccupied = new GridOccupancy(mCountX, mCountY);
+        mReorderSolutionCache.clear();
         mShortcutsAndWidgets.setCellDimensions(mCellWidth, mCellHeight, mCountX, mCountY,
                 mBorderSpace);
         requestLayout();
@@ -521,7 +524,7 @@ public class CellLayout extends ViewGroup {
             debugPaint.setStrokeWidth(Utilities.dpToPx(1));
             for (int x = 0; x < mCountX; x++) {
                 for (int y = 0; y < mCountY; y++) {
-                    if (!mOccupied.cells[x][y]) {
+                    if (!mOccupied.isOccupied(x, y)) {
                         continue;
                     }
                     targetCell[0] = x;
@@ -838,6 +841,7 @@ public class CellLayout extends ViewGroup {
     @Override
     public void removeAllViews() {
         mOccupied.clear();
+        mReorderSolutionCache.clear();
         mShortcutsAndWidgets.removeAllViews();
     }
 
@@ -845,6 +849,7 @@ public class CellLayout extends ViewGroup {
     public void removeAllViewsInLayout() {
         if (mShortcutsAndWidgets.getChildCount() > 0) {
             mOccupied.clear();
+            mReorderSolutionCache.clear();
             mShortcutsAndWidgets.removeAllViewsInLayout();
         }
     }
@@ -1369,12 +1374,8 @@ public class CellLayout extends ViewGroup {
                 int xSize = -1;
                 if (!ignoreOccupied) {
                     // First, let's see if this thing fits anywhere
-                    for (int i = 0; i < minSpanX; i++) {
-                        for (int j = 0; j < minSpanY; j++) {
-                            if (mOccupied.cells[x + i][y + j]) {
-                                continue inner;
-                            }
-                        }
+                    if (!mOccupied.isRegionVacant(x, y, minSpanX, minSpanY)) {
+                        continue inner;
                     }
                     xSize = minSpanX;
                     ySize = minSpanY;
@@ -1388,7 +1389,7 @@ public class CellLayout extends ViewGroup {
                     while (!(hitMaxX && hitMaxY)) {
                         if (incX && !hitMaxX) {
                             for (int j = 0; j < ySize; j++) {
-                                if (x + xSize > countX - 1 || mOccupied.cells[x + xSize][y + j]) {
+                                if (x + xSize > countX - 1 || mOccupied.isOccupied(x + xSize, y + j)) {
                                     // We can't move out horizontally
                                     hitMaxX = true;
                                 }
@@ -1398,7 +1399,7 @@ public class CellLayout extends ViewGroup {
                             }
                         } else if (!hitMaxY) {
                             for (int i = 0; i < xSize; i++) {
-                                if (y + ySize > countY - 1 || mOccupied.cells[x + i][y + ySize]) {
+                                if (y + ySize > countY - 1 || mOccupied.isOccupied(x + i, y + ySize)) {
                                     // We can't move out vertically
                                     hitMaxY = true;
                                 }
@@ -1693,6 +1694,7 @@ public class CellLayout extends ViewGroup {
 
     private void commitTempPlacement(View dragView) {
         mTmpOccupied.copyTo(mOccupied);
+        mReorderSolutionCache.clear();
 
         int screenId = getWorkspace().getIdForScreen(this);
         int container = Favorites.CONTAINER_DESKTOP;
@@ -1847,7 +1849,7 @@ public class CellLayout extends ViewGroup {
      *         nearest the requested location.
      */
     private int[] findNearestArea(int cellX, int cellY, int spanX, int spanY, int[] direction,
-            boolean[][] occupied, boolean blockOccupied[][], int[] result) {
+            GridOccupancy occupied, GridOccupancy blockOccupied, int[] result) {
         // Keep track of best-scoring drop area
         final int[] bestXY = result != null ? result : new int[2];
         float bestDistance = Float.MAX_VALUE;
@@ -1859,10 +1861,17 @@ public class CellLayout extends ViewGroup {
         for (int y = 0; y < countY - (spanY - 1); y++) {
             inner: for (int x = 0; x < countX - (spanX - 1); x++) {
                 // First, let's see if this thing fits anywhere
-                for (int i = 0; i < spanX; i++) {
-                    for (int j = 0; j < spanY; j++) {
-                        if (occupied[x + i][y + j] && (blockOccupied == null || blockOccupied[i][j])) {
-                            continue inner;
+                if (blockOccupied == null) {
+                    if (!occupied.isRegionVacant(x, y, spanX, spanY)) {
+                        continue inner;
+                    }
+                } else {
+                    for (int i = 0; i < spanX; i++) {
+                        for (int j = 0; j < spanY; j++) {
+                            if (occupied.isOccupied(x + i, y + j)
+                                    && blockOccupied.isOccupied(i, j)) {
+                                continue inner;
+                            }
                         }
                     }
                 }
@@ -1901,7 +1910,7 @@ public class CellLayout extends ViewGroup {
         mTmpOccupied.markCells(rectOccupiedByPotentialDrop, true);
 
         findNearestArea(c.cellX, c.cellY, c.spanX, c.spanY, direction,
-                mTmpOccupied.cells, null, mTempLocation);
+                mTmpOccupied, null, mTempLocation);
 
         if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
             c.cellX = mTempLocation[0];
@@ -2415,7 +2424,7 @@ public class CellLayout extends ViewGroup {
 
         findNearestArea(boundingRect.left, boundingRect.top, boundingRect.width(),
                 boundingRect.height(), direction,
-                mTmpOccupied.cells, blockOccupied.cells, mTempLocation);
+                mTmpOccupied, blockOccupied, mTempLocation);
 
         // If we successfully found a location by pushing the block of views, we commit
         // it
@@ -2446,7 +2455,7 @@ public class CellLayout extends ViewGroup {
             return false;
 
         mIntersectingViews.clear();
-        if (PreferenceExtensionsKt.firstBlocking(mPreferenceManager2.getAllowWidgetOverlap())) {
+        if (mPreferenceManager2.value(mPreferenceManager2.getAllowWidgetOverlap())) {
             // let's pretend no intersections exist
             solution.intersectingViews = new ArrayList<>(mIntersectingViews);
             return true;
@@ -2561,7 +2570,7 @@ public class CellLayout extends ViewGroup {
     public ItemConfiguration calculateReorder(int pixelX, int pixelY, int minSpanX, int minSpanY,
             int spanX, int spanY, View dragView) {
         return createReorderAlgorithm().calculateReorder(pixelX, pixelY, minSpanX, minSpanY,
-                spanX, spanY, dragView);
+                spanX, spanY, dragView, mDragging ? mReorderSolutionCache : null);
     }
 
     int[] performReorder(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX, int spanY,
@@ -2773,6 +2782,7 @@ public class CellLayout extends ViewGroup {
     void onDragEnter() {
         mDragging = true;
         mPreviousSolution = null;
+        mReorderSolutionCache.clear();
     }
 
     /**
@@ -2789,6 +2799,7 @@ public class CellLayout extends ViewGroup {
 
         // Invalidate the drag data
         mPreviousSolution = null;
+        mReorderSolutionCache.clear();
         mDragCell[0] = mDragCell[1] = -1;
         mDragCellSpan[0] = mDragCellSpan[1] = -1;
         mDragOutlineAnims[mDragOutlineCurrent].animateOut();
@@ -2844,6 +2855,7 @@ public class CellLayout extends ViewGroup {
     }
 
     public void markCellsAsOccupiedForView(View view) {
+        mReorderSolutionCache.clear();
         if (view instanceof LauncherAppWidgetHostView
                 && view.getTag() instanceof LauncherAppWidgetInfo) {
             LauncherAppWidgetInfo info = (LauncherAppWidgetInfo) view.getTag();
@@ -2858,6 +2870,7 @@ public class CellLayout extends ViewGroup {
     }
 
     public void markCellsAsUnoccupiedForView(View view) {
+        mReorderSolutionCache.clear();
         if (view instanceof LauncherAppWidgetHostView
                 && view.getTag() instanceof LauncherAppWidgetInfo) {
             LauncherAppWidgetInfo info = (LauncherAppWidgetInfo) view.getTag();
@@ -2883,8 +2896,8 @@ public class CellLayout extends ViewGroup {
 
     public boolean isOccupied(int x, int y) {
         if (x < mCountX && y < mCountY) {
-            return mOccupied.cells[x][y]
-                    && !PreferenceExtensionsKt.firstBlocking(mPreferenceManager2.getAllowWidgetOverlap());
+            return mOccupied.isOccupied(x, y)
+                    && !mPreferenceManager2.value(mPreferenceManager2.getAllowWidgetOverlap());
         } else {
             throw new RuntimeException("Position exceeds the bound of this CellLayout");
         }
@@ -3008,6 +3021,6 @@ public class CellLayout extends ViewGroup {
 
     public boolean isRegionVacant(int x, int y, int spanX, int spanY) {
         return mOccupied.isRegionVacant(x, y, spanX, spanY)
-                || PreferenceExtensionsKt.firstBlocking(mPreferenceManager2.getAllowWidgetOverlap());
+                || mPreferenceManager2.value(mPreferenceManager2.getAllowWidgetOverlap());
     }
 }
@@ -220,6 +220,7 @@ import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.util.TouchController;
 import com.android.launcher3.util.TraceHelper;
+import com.android.launcher3.util.TransitionFrameStats;
 import com.android.launcher3.util.ViewOnDrawExecutor;
 import com.android.launcher3.views.ActivityContext;
 import com.android.launcher3.views.ComposeInitializer;
@@ -235,6 +236,7 @@ import com.android.launcher3.widget.PendingAddWidgetInfo;
 import com.android.launcher3.widget.PendingAppWidgetHostView;
 import com.android.launcher3.widget.WidgetAddFlowHandler;
 import com.android.launcher3.widget.WidgetManagerHelper;
+import com.android.launcher3.widget.WidgetPreviewCache;
 import com.android.launcher3.widget.custom.CustomWidgetManager;
 import com.android.launcher3.widget.model.WidgetsListBaseEntry;
 import com.android.launcher3.widget.picker.WidgetsFullSheet;
@@ -2284,8 +2286,12 @@ public class Launcher extends StatefulActivity<LauncherState>
             // 3MB of memory for caching which isn't necessary.
             SQLiteDatabase.releaseMemory();
 
-            // This clears all widget bitmaps from the widget tray
-            // TODO(hyunyoungs)
+            // This clears all widget bitmaps from the widget tray, they are reloaded from the
+            // widget preview db when needed
+            WidgetPreviewCache previewCache = WidgetPreviewCache.INSTANCE.getNoCreate();
+            if (previewCache != null) {
+                previewCache.clearMemory();
+            }
         }
     }
 
@@ -3242,6 +3248,7 @@ public class Launcher extends StatefulActivity<LauncherState>
         // Extra logging for general debugging
         mDragLayer.dump(prefix, writer);
         mStateManager.dump(prefix, writer);
+        TransitionFrameStats.INSTANCE.dump(prefix, writer);
         mPopupDataProvider.dump(prefix, writer);
         mDeviceProfile.dump(this, prefix, writer);
 
@@ -3252,6 +3259,7 @@ public class Launcher extends StatefulActivity<LauncherState>
         }
 
         mModel.dumpState(prefix, fd, writer, args);
+        mModelWriter.dump(prefix, writer);
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.dump(prefix, fd, writer, args);
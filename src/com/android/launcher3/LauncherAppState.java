@@ -180,7 +180,7 @@ public class LauncherAppState implements SafeCloseable {
     }
 
     public void reloadIcons() {
-        refreshAndReloadLauncher();
+        rebuildIconsAndReloadLauncher();
     }
 
     private void refreshAndReloadLauncher() {
@@ -190,6 +190,18 @@ public class LauncherAppState implements SafeCloseable {
         mModel.forceReload();
     }
 
+    /**
+     * Same as {@link #refreshAndReloadLauncher()} for changes which only affect icons, like the
+     * icon pack or shape: icons are rendered again in parallel and rebound as they are ready,
+     * and the launcher is only reloaded once the cache is warm again.
+     */
+    private void rebuildIconsAndReloadLauncher() {
+        LauncherIcons.clearPool();
+        mIconCache.updateIconParams(
+                mInvariantDeviceProfile.fillResIconDpi, mInvariantDeviceProfile.iconBitmapSize);
+        mIconCache.rebuildIcons(mModel::onPackageIconsUpdated, mModel::forceReload);
+    }
+
     /**
      * Call from Application.onTerminate(), which is not guaranteed to ever be
      * called.
@@ -241,7 +253,7 @@ public class LauncherAppState implements SafeCloseable {
         @Override
         public void onSystemIconStateChanged(String iconState) {
             IconShape.init(mContext);
-            refreshAndReloadLauncher();
+            rebuildIconsAndReloadLauncher();
             LauncherPrefs.get(mContext).put(ICON_STATE, iconState);
         }
 
@@ -30,6 +30,8 @@ public class LauncherFiles {
 
     public static final String WIDGET_PREVIEWS_DB = "widgetpreviews.db";
     public static final String APP_ICONS_DB = "app_icons.db";
+    public static final String APP_ICONS_SNAPSHOT = "app_icons.snapshot";
+    public static final String TASK_ICONS_DB = "task_icons.db";
 
     public static final List<String> GRID_DB_FILES = Collections.unmodifiableList(Arrays.asList(
             LAUNCHER_DB,
@@ -45,7 +47,9 @@ public class LauncherFiles {
             WIDGET_PREVIEWS_DB,
             MANAGED_USER_PREFERENCES_KEY + XML,
             DEVICE_PREFERENCES_KEY + XML,
-            APP_ICONS_DB));
+            APP_ICONS_DB,
+            APP_ICONS_SNAPSHOT,
+            TASK_ICONS_DB));
 
     private static List<String> createAllFiles() {
         ArrayList<String> result = new ArrayList<>();
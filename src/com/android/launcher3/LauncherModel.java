@@ -73,6 +73,7 @@ import com.android.launcher3.util.IntSet;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
+import com.android.launcher3.widget.WidgetPreviewCache;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
@@ -153,6 +154,10 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
 
     private int mLastLoadId = -1;
 
+    // Item updates queued by the model writers, written before any load or model task
+    @NonNull
+    private final ModelWriter.PendingUpdates mPendingItemUpdates = new ModelWriter.PendingUpdates();
+
     // Runnable to check if the shortcuts permission has changed.
     @NonNull
     private final Runnable mDataValidationCheck = new Runnable() {
@@ -194,6 +199,11 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
         enqueueModelUpdateTask(new AddWorkspaceItemsTask(itemList));
     }
 
+    @NonNull
+    public ModelWriter.PendingUpdates getPendingItemUpdates() {
+        return mPendingItemUpdates;
+    }
+
     @NonNull
     public ModelWriter getWriter(final boolean hasVerticalHotseat, final boolean verifyChanges,
             CellPosMapper cellPosMapper, @Nullable final Callbacks owner) {
@@ -204,6 +214,7 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
     @Override
     public void onPackageChanged(
             @NonNull final String packageName, @NonNull final UserHandle user) {
+        onWidgetPreviewsChanged(user, packageName);
         int op = PackageUpdatedTask.OP_UPDATE;
         enqueueModelUpdateTask(new PackageUpdatedTask(op, user, packageName));
     }
@@ -217,10 +228,21 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
     public void onPackagesRemoved(
             @NonNull final UserHandle user, @NonNull final String... packages) {
         int op = PackageUpdatedTask.OP_REMOVE;
+        onWidgetPreviewsChanged(user, packages);
         FileLog.d(TAG, "package removed received " + TextUtils.join(",", packages));
         enqueueModelUpdateTask(new PackageUpdatedTask(op, user, packages));
     }
 
+    private void onWidgetPreviewsChanged(
+            @NonNull final UserHandle user, @NonNull final String... packages) {
+        WidgetPreviewCache previewCache = WidgetPreviewCache.INSTANCE.getNoCreate();
+        if (previewCache != null) {
+            for (String packageName : packages) {
+                previewCache.onPackageChanged(packageName, user);
+            }
+        }
+    }
+
     @Override
     public void onPackageAdded(@NonNull final String packageName, @NonNull final UserHandle user) {
         int op = PackageUpdatedTask.OP_ADD;
@@ -355,6 +377,7 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
      * not be called as DB updates are automatically followed by UI update
      */
     public void forceReload() {
+        mPendingItemUpdates.flush();
         synchronized (mLock) {
             // Stop any existing loaders first, so they don't set mModelLoaded to true later
             stopLoader();
@@ -461,6 +484,9 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
                     return true;
                 } else {
                     stopLoader();
+                    // Write the queued item updates before the loader reads the database, and
+                    // before they get dropped as belonging to the previous load
+                    mPendingItemUpdates.flush();
                     mLoaderTask = new LoaderTask(
                             mApp, mBgAllAppsList, mBgDataModel, mModelDelegate, launcherBinder);
 
@@ -651,6 +677,7 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
             return;
         }
         task.init(mApp, this, mBgDataModel, mBgAllAppsList, MAIN_EXECUTOR);
+        mPendingItemUpdates.flush();
         MODEL_EXECUTOR.execute(task);
     }
 
@@ -39,7 +39,6 @@ import com.android.launcher3.folder.FolderIcon;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.views.ActivityContext;
 import com.android.launcher3.widget.NavigableAppWidgetHostView;
-import com.patrykmichalik.opto.core.PreferenceExtensionsKt;
 
 import app.lawnchair.preferences2.PreferenceManager2;
 
@@ -81,7 +80,7 @@ public class ShortcutAndWidgetContainer extends ViewGroup implements FolderIcon.
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         boolean mAllowWidgetOverlap =
-                PreferenceExtensionsKt.firstBlocking(mPreferenceManager2.getAllowWidgetOverlap());
+                mPreferenceManager2.value(mPreferenceManager2.getAllowWidgetOverlap());
         setClipChildren(!mAllowWidgetOverlap);
         setClipToPadding(!mAllowWidgetOverlap);
         setClipToOutline(!mAllowWidgetOverlap);
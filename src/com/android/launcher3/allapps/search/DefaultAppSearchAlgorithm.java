@@ -32,7 +32,7 @@ import com.android.launcher3.model.BgDataModel;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.search.SearchAlgorithm;
 import com.android.launcher3.search.SearchCallback;
-import com.android.launcher3.search.StringMatcherUtility;
+import com.android.launcher3.search.SearchResultCache;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -44,9 +44,14 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
 
     protected static final int MAX_RESULTS_COUNT = 5;
 
+    // Number of recent queries whose matches are kept around for refinement
+    private static final int RESULT_CACHE_SIZE = 8;
+
     private final LauncherAppState mAppState;
     private final Handler mResultHandler;
     private final boolean mAddNoResultsMessage;
+    private final SearchResultCache<AppInfo> mResultCache =
+            new SearchResultCache<>(RESULT_CACHE_SIZE);
 
     public DefaultAppSearchAlgorithm(Context context) {
         this(context, false);
@@ -71,7 +76,7 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
             @Override
             public void execute(@NonNull final LauncherAppState app,
                     @NonNull final BgDataModel dataModel, @NonNull final AllAppsList apps) {
-                ArrayList<AdapterItem> result = getTitleMatchResult(apps.data, query);
+                ArrayList<AdapterItem> result = getTitleMatchResult(apps, query);
                 if (mAddNoResultsMessage && result.isEmpty()) {
                     result.add(getEmptyMessageAdapterItem(query));
                 }
@@ -93,22 +98,20 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
      * Filters {@link AppInfo}s matching specified query
      */
     @AnyThread
-    private static ArrayList<AdapterItem> getTitleMatchResult(List<AppInfo> apps, String query) {
-        // Do an intersection of the words in the query and each title, and filter out
-        // all the
-        // apps that don't match all of the words in the query.
+    private ArrayList<AdapterItem> getTitleMatchResult(AllAppsList apps, String query) {
+        // Look up the apps whose title has a break point starting with the query, the same
+        // matching as StringMatcherUtility#matches, through the prebuilt title index. While the
+        // query is being typed, only the matches of the previous query are filtered.
         final String queryTextLower = query.toLowerCase();
         final ArrayList<AdapterItem> result = new ArrayList<>();
-        StringMatcherUtility.StringMatcher matcher = StringMatcherUtility.StringMatcher.getInstance();
-
-        int resultCount = 0;
-        int total = apps.size();
-        for (int i = 0; i < total && resultCount < MAX_RESULTS_COUNT; i++) {
-            AppInfo info = apps.get(i);
-            if (StringMatcherUtility.matches(queryTextLower, info.title.toString(), matcher)) {
-                result.add(AdapterItem.asApp(info));
-                resultCount++;
-            }
+
+        List<AppInfo> matches = mResultCache.search(queryTextLower,
+                apps.getSearchIndex().getVersion(),
+                apps.getSearchIndex()::search,
+                apps.getSearchIndex()::refine);
+        int total = Math.min(matches.size(), MAX_RESULTS_COUNT);
+        for (int i = 0; i < total; i++) {
+            result.add(AdapterItem.asApp(matches.get(i)));
         }
         return result;
     }
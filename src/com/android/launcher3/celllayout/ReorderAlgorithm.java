@@ -17,6 +17,8 @@ package com.android.launcher3.celllayout;
 
 import android.view.View;
 
+import androidx.annotation.Nullable;
+
 import com.android.launcher3.CellLayout;
 
 /**
@@ -27,8 +29,15 @@ import com.android.launcher3.CellLayout;
  */
 public class ReorderAlgorithm {
 
+    // Time a reorder can take during a drag, so that it doesn't drop more than a frame
+    private static final long REORDER_BUDGET_NANOS = 8_000_000;
+
     CellLayout mCellLayout;
 
+    // Deadline of the reorder being calculated, after which smaller spans are not tried
+    private long mDeadlineNanos = Long.MAX_VALUE;
+    private boolean mOutOfTime = false;
+
     public ReorderAlgorithm(CellLayout cellLayout) {
         mCellLayout = cellLayout;
     }
@@ -76,7 +85,11 @@ public class ReorderAlgorithm {
         success = mCellLayout.rearrangementExists(result[0], result[1], spanX, spanY, direction,
                 dragView, solution);
 
-        if (!success) {
+        if (!success && System.nanoTime() > mDeadlineNanos) {
+            // Give up on smaller spans, the caller falls back to a solution without pushing
+            mOutOfTime = true;
+            solution.isSolution = false;
+        } else if (!success) {
             // We try shrinking the widget down to size in an alternating pattern, shrink 1 in
             // x, then 1 in y etc.
             if (spanX > minSpanX && (minSpanY == spanY || decX)) {
@@ -174,17 +187,39 @@ public class ReorderAlgorithm {
      */
     public CellLayout.ItemConfiguration calculateReorder(int pixelX, int pixelY, int minSpanX,
             int minSpanY, int spanX, int spanY, View dragView) {
+        return calculateReorder(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, dragView,
+                null);
+    }
+
+    /**
+     * Same as {@link #calculateReorder(int, int, int, int, int, int, View)}, reusing the push
+     * solutions of {@param cache} when the item is dragged over a cell it was already dragged
+     * over. New push solutions are calculated within a frame budget, and added to the cache if
+     * they could be completed within it. The solutions which don't push items, or shrink the
+     * item, depend on the exact drag position and are always calculated again.
+     */
+    public CellLayout.ItemConfiguration calculateReorder(int pixelX, int pixelY, int minSpanX,
+            int minSpanY, int spanX, int spanY, View dragView,
+            @Nullable ReorderSolutionCache cache) {
         mCellLayout.getDirectionVectorForDrop(pixelX, pixelY, spanX, spanY, dragView,
                 mCellLayout.mDirectionVector);
+        return solveReorder(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, dragView, cache);
+    }
 
+    private CellLayout.ItemConfiguration solveReorder(int pixelX, int pixelY, int minSpanX,
+            int minSpanY, int spanX, int spanY, View dragView,
+            @Nullable ReorderSolutionCache cache) {
         CellLayout.ItemConfiguration dropInPlaceSolution = dropInPlaceSolution(pixelX, pixelY,
                 spanX, spanY,
                 dragView);
 
         // Find a solution involving pushing / displacing any items in the way
-        CellLayout.ItemConfiguration swapSolution = findReorderSolution(pixelX, pixelY, minSpanX,
-                minSpanY, spanX, spanY, mCellLayout.mDirectionVector, dragView, true,
-                new CellLayout.ItemConfiguration());
+        CellLayout.ItemConfiguration swapSolution = cache == null
+                ? findReorderSolution(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY,
+                        mCellLayout.mDirectionVector, dragView, true,
+                        new CellLayout.ItemConfiguration())
+                : findCachedReorderSolution(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY,
+                        dragView, cache);
 
         // We attempt the approach which doesn't shuffle views at all
         CellLayout.ItemConfiguration closestSpaceSolution = closestEmptySpaceReorder(
@@ -201,4 +236,34 @@ public class ReorderAlgorithm {
         }
         return null;
     }
+
+    /**
+     * Same as {@link #findReorderSolution}, reusing the solution of {@param cache} if the item was
+     * already pushed from the same cell in the same direction.
+     */
+    private CellLayout.ItemConfiguration findCachedReorderSolution(int pixelX, int pixelY,
+            int minSpanX, int minSpanY, int spanX, int spanY, View dragView,
+            ReorderSolutionCache cache) {
+        int[] targetCell = mCellLayout.findNearestAreaIgnoreOccupied(pixelX, pixelY, spanX, spanY,
+                new int[2]);
+        int[] direction = mCellLayout.mDirectionVector;
+        CellLayout.ItemConfiguration solution = cache.get(dragView, targetCell[0], targetCell[1],
+                spanX, spanY, direction);
+        if (solution != null) {
+            return solution;
+        }
+
+        mDeadlineNanos = System.nanoTime() + REORDER_BUDGET_NANOS;
+        mOutOfTime = false;
+        solution = findReorderSolution(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY,
+                direction, dragView, true, new CellLayout.ItemConfiguration());
+        mDeadlineNanos = Long.MAX_VALUE;
+        // Only a push of the item at its full span solely depends on the target cell: smaller spans
+        // are placed from the drag position. Solutions cut short are only good for this frame.
+        if (!mOutOfTime && solution.isSolution && solution.spanX == spanX
+                && solution.spanY == spanY) {
+            cache.put(dragView, targetCell[0], targetCell[1], spanX, spanY, direction, solution);
+        }
+        return solution;
+    }
 }
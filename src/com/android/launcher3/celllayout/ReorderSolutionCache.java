@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.celllayout;
+
+import android.util.ArrayMap;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.CellLayout;
+
+import java.util.Objects;
+
+/**
+ * Push solutions computed during a drag over a {@link CellLayout}.
+ *
+ * Pushing the dragged item at its full span only depends on the committed position of the items,
+ * which doesn't change until the drag ends, on the cell the item is placed in and on the
+ * direction it is pushing items towards. Moving back and forth over the same cells can therefore
+ * reuse the solutions computed the first time, instead of searching for them again on every drag
+ * move. The cache must be cleared whenever the committed positions change.
+ */
+public class ReorderSolutionCache {
+
+    private final ArrayMap<Key, CellLayout.ItemConfiguration> mSolutions = new ArrayMap<>();
+    @Nullable
+    private View mDragView;
+
+    /**
+     * Returns the solution saved for pushing {@param dragView} from the given cell, if any
+     */
+    @Nullable
+    public CellLayout.ItemConfiguration get(View dragView, int cellX, int cellY, int spanX,
+            int spanY, int[] direction) {
+        return dragView == mDragView
+                ? mSolutions.get(new Key(cellX, cellY, spanX, spanY, direction)) : null;
+    }
+
+    /**
+     * Saves the solution of pushing {@param dragView} from the given cell
+     */
+    public void put(View dragView, int cellX, int cellY, int spanX, int spanY, int[] direction,
+            CellLayout.ItemConfiguration solution) {
+        if (dragView != mDragView) {
+            clear();
+            mDragView = dragView;
+        }
+        mSolutions.put(new Key(cellX, cellY, spanX, spanY, direction), solution);
+    }
+
+    /**
+     * Drops all the solutions, called when the drag ends or the items are moved
+     */
+    public void clear() {
+        mSolutions.clear();
+        mDragView = null;
+    }
+
+    private static class Key {
+        private final int mCellX;
+        private final int mCellY;
+        private final int mSpanX;
+        private final int mSpanY;
+        private final int mDirectionX;
+        private final int mDirectionY;
+
+        Key(int cellX, int cellY, int spanX, int spanY, int[] direction) {
+            mCellX = cellX;
+            mCellY = cellY;
+            mSpanX = spanX;
+            mSpanY = spanY;
+            mDirectionX = direction[0];
+            mDirectionY = direction[1];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mCellX == other.mCellX && mCellY == other.mCellY
+                    && mSpanX == other.mSpanX && mSpanY == other.mSpanY
+                    && mDirectionX == other.mDirectionX && mDirectionY == other.mDirectionY;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mCellX, mCellY, mSpanX, mSpanY, mDirectionX, mDirectionY);
+        }
+    }
+}
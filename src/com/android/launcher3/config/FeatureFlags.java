@@ -84,7 +84,7 @@ public final class FeatureFlags {
     }
     public static boolean twoLineAllApps(Context context) {
         PreferenceManager2 preferenceManager2 = PreferenceManager2.getInstance(context);
-        return PreferenceExtensionsKt.firstBlocking(preferenceManager2.getTwoLineAllApps());
+        return preferenceManager2.value(preferenceManager2.getTwoLineAllApps());
     }
     /**
      * Feature flag to handle define config changes dynamically instead of killing the process.
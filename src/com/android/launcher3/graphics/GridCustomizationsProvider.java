@@ -5,6 +5,7 @@ import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
 import static com.android.launcher3.util.Themes.isThemedIconEnabled;
 
 import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
 import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
@@ -214,6 +215,20 @@ public class GridCustomizationsProvider extends ContentProvider {
         if (cached == observer) {
             mActivePreviews.remove(observer.renderer.getHostToken());
         }
+        if (mActivePreviews.isEmpty()) {
+            // The picker session ended, the migrated workspaces won't be used again
+            PreviewSurfaceRenderer.clearMigratedModels();
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The launcher UI is hidden while the picker is shown, keep the previews for that level
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            PreviewSurfaceRenderer.clearMigratedModels();
+        }
     }
 
     private class PreviewLifecycleObserver implements Handler.Callback, DeathRecipient {
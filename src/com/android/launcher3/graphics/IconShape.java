@@ -47,7 +47,6 @@ import com.android.launcher3.anim.RoundedRectRevealOutlineProvider;
 import com.android.launcher3.icons.GraphicsUtils;
 import com.android.launcher3.icons.IconNormalizer;
 import com.android.launcher3.views.ClipPathView;
-import com.patrykmichalik.opto.core.PreferenceExtensionsKt;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -167,7 +166,7 @@ public abstract class IconShape {
 
         public AdaptiveIconShape(Context context) {
             PreferenceManager2 preferenceManager2 = PreferenceManager2.getInstance(context);
-            mIconShape = PreferenceExtensionsKt.firstBlocking(preferenceManager2.getIconShape());
+            mIconShape = preferenceManager2.value(preferenceManager2.getIconShape());
         }
 
         @Override
@@ -225,7 +225,9 @@ public class LauncherPreviewRenderer extends ContextWrapper
             @Nullable final SparseArray<Size> launcherWidgetSpanInfo) {
 
         super(context);
-        mUiHandler = new Handler(Looper.getMainLooper());
+        // Previews are rendered on their own looper, see PreviewSurfaceRenderer
+        Looper looper = Looper.myLooper();
+        mUiHandler = new Handler(looper != null ? looper : Looper.getMainLooper());
         mContext = context;
         mIdp = idp;
         mDp = idp.getDeviceProfile(context).toBuilder(context).setViewScaleProvider(
@@ -19,8 +19,8 @@ package com.android.launcher3.graphics;
 import static android.view.Display.DEFAULT_DISPLAY;
 
 import static com.android.launcher3.LauncherSettings.Favorites.TABLE_NAME;
-import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+import static com.android.launcher3.util.Executors.createAndStartNewLooper;
 
 import android.app.WallpaperColors;
 import android.appwidget.AppWidgetProviderInfo;
@@ -29,7 +29,9 @@ import android.database.Cursor;
 import android.hardware.display.DisplayManager;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.os.Process;
 import android.util.Log;
+import android.util.LruCache;
 import android.util.Size;
 import android.util.SparseArray;
 import android.view.ContextThemeWrapper;
@@ -42,7 +44,6 @@ import android.view.animation.AccelerateDecelerateInterpolator;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.annotation.UiThread;
 import androidx.annotation.WorkerThread;
 
 import com.android.launcher3.DeviceProfile;
@@ -60,14 +61,18 @@ import com.android.launcher3.model.LoaderTask;
 import com.android.launcher3.model.ModelDbController;
 import com.android.launcher3.provider.LauncherDbUtils;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.LooperExecutor;
 import com.android.launcher3.util.RunnableList;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.widget.LocalColorExtractor;
 
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
+import app.lawnchair.icons.CustomAdaptiveIconDrawable;
+
 /** Render preview using surface view. */
 @SuppressWarnings("NewApi")
 public class PreviewSurfaceRenderer {
@@ -82,6 +87,20 @@ public class PreviewSurfaceRenderer {
     private static final String KEY_DISPLAY_ID = "display_id";
     private static final String KEY_COLORS = "wallpaper_colors";
 
+    /**
+     * Looper the previews are inflated and drawn on, so that rendering them doesn't hold the main
+     * thread. The views of a {@link SurfaceControlViewHost} must be used on the thread which
+     * created it, so the hosts are also created and released on it.
+     */
+    private static final LooperExecutor PREVIEW_EXECUTOR = new LooperExecutor(
+            createAndStartNewLooper("LauncherPreview", Process.THREAD_PRIORITY_FOREGROUND));
+
+    // Workspaces migrated to other grids, so that switching between grid options in the picker
+    // doesn't copy and load the workspace again. Dropped when the picker session ends.
+    private static final int MAX_MIGRATED_MODELS = 3;
+    private static final LruCache<String, MigratedModel> MIGRATED_MODELS =
+            new LruCache<>(MAX_MIGRATED_MODELS);
+
     private Context mContext;
     private final IBinder mHostToken;
     private final int mWidth;
@@ -94,7 +113,7 @@ public class PreviewSurfaceRenderer {
 
     private final SurfaceControlViewHost mSurfaceControlViewHost;
 
-    private boolean mDestroyed = false;
+    private volatile boolean mDestroyed = false;
     private LauncherPreviewRenderer mRenderer;
     private boolean mHideQsb;
 
@@ -114,7 +133,7 @@ public class PreviewSurfaceRenderer {
         mDisplay = context.getSystemService(DisplayManager.class)
                 .getDisplay(bundle.getInt(KEY_DISPLAY_ID));
 
-        mSurfaceControlViewHost = MAIN_EXECUTOR.submit(() -> new SurfaceControlViewHost(mContext,
+        mSurfaceControlViewHost = PREVIEW_EXECUTOR.submit(() -> new SurfaceControlViewHost(mContext,
                 context.getSystemService(DisplayManager.class).getDisplay(DEFAULT_DISPLAY),
                 mHostToken)).get(5, TimeUnit.SECONDS);
         mOnDestroyCallbacks.add(mSurfaceControlViewHost::release);
@@ -128,13 +147,20 @@ public class PreviewSurfaceRenderer {
         return mSurfaceControlViewHost.getSurfacePackage();
     }
 
+    /**
+     * Drops the workspaces migrated for previous previews, called once no preview is shown
+     * anymore or when memory is low
+     */
+    public static void clearMigratedModels() {
+        MIGRATED_MODELS.evictAll();
+    }
+
     /**
      * Destroys the preview and all associated data
      */
-    @UiThread
     public void destroy() {
         mDestroyed = true;
-        mOnDestroyCallbacks.executeAllAndDestroy();
+        PREVIEW_EXECUTOR.execute(mOnDestroyCallbacks::executeAllAndDestroy);
     }
 
     /**
@@ -223,8 +249,20 @@ public class PreviewSurfaceRenderer {
         final Context inflationContext = getPreviewContext();
         final InvariantDeviceProfile idp = new InvariantDeviceProfile(inflationContext, mGridName);
         if (GridSizeMigrationUtil.needsToMigrate(inflationContext, idp)) {
-            // Start the migration
             PreviewContext previewContext = new PreviewContext(inflationContext, idp);
+            String modelStamp = getModelStamp();
+            MigratedModel migrated = MIGRATED_MODELS.get(mGridName);
+            if (migrated != null && Objects.equals(migrated.modelStamp, modelStamp)) {
+                // The workspace and icons didn't change since it was last migrated to this grid
+                PREVIEW_EXECUTOR.execute(() -> {
+                    renderView(previewContext, migrated.dataModel, migrated.widgetProvidersMap,
+                            migrated.launcherWidgetSpanInfo, idp);
+                    mOnDestroyCallbacks.add(previewContext::onDestroy);
+                });
+                return;
+            }
+
+            // Start the migration
             // Copy existing data to preview DB
             LauncherDbUtils.copyTable(LauncherAppState.getInstance(mContext)
                     .getModel().getModelDbController().getDb(),
@@ -258,8 +296,12 @@ public class PreviewSurfaceRenderer {
                     loadWorkspace(new ArrayList<>(), query, null);
 
                     final SparseArray<Size> spanInfo = getLoadedLauncherWidgetInfo(previewContext.getBaseContext());
+                    if (modelStamp != null && !mDestroyed) {
+                        MIGRATED_MODELS.put(mGridName, new MigratedModel(modelStamp,
+                                mBgDataModel, mWidgetProvidersMap, spanInfo));
+                    }
 
-                    MAIN_EXECUTOR.execute(() -> {
+                    PREVIEW_EXECUTOR.execute(() -> {
                         renderView(previewContext, mBgDataModel, mWidgetProvidersMap, spanInfo,
                                 idp);
                         mOnDestroyCallbacks.add(previewContext::onDestroy);
@@ -269,7 +311,7 @@ public class PreviewSurfaceRenderer {
         } else {
             LauncherAppState.getInstance(inflationContext).getModel().loadAsync(dataModel -> {
                 if (dataModel != null) {
-                    MAIN_EXECUTOR.execute(() -> renderView(inflationContext, dataModel, null,
+                    PREVIEW_EXECUTOR.execute(() -> renderView(inflationContext, dataModel, null,
                             null, idp));
                 } else {
                     Log.e(TAG, "Model loading failed");
@@ -278,7 +320,43 @@ public class PreviewSurfaceRenderer {
         }
     }
 
-    @UiThread
+    /**
+     * Returns a value which changes whenever the items of the workspace are added, removed or
+     * updated, or their icons would be drawn differently, or null if it can't be read
+     */
+    @WorkerThread
+    @Nullable
+    private String getModelStamp() {
+        String workspaceStamp = getWorkspaceStamp();
+        if (workspaceStamp == null) {
+            return null;
+        }
+        // Icon pack, shape and themed icons
+        return workspaceStamp
+                + "/" + LauncherAppState.getInstance(mContext).getIconProvider().getSystemIconState()
+                + "/" + CustomAdaptiveIconDrawable.sMaskId
+                + "/" + Themes.isThemedIconEnabled(mContext);
+    }
+
+    /**
+     * Returns a value which changes whenever the items of the workspace change
+     */
+    @WorkerThread
+    @Nullable
+    private String getWorkspaceStamp() {
+        ModelDbController controller =
+                LauncherAppState.getInstance(mContext).getModel().getModelDbController();
+        try (Cursor c = controller.query(TABLE_NAME, new String[] {
+                "COUNT(*)",
+                "MAX(" + LauncherSettings.Favorites.MODIFIED + ")",
+                "MAX(" + LauncherSettings.Favorites._ID + ")"}, null, null, null)) {
+            return c.moveToNext() ? c.getInt(0) + "/" + c.getLong(1) + "/" + c.getInt(2) : null;
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading workspace state", e);
+            return null;
+        }
+    }
+
     private void renderView(Context inflationContext, BgDataModel dataModel,
             Map<ComponentKey, AppWidgetProviderInfo> widgetProviderInfoMap,
             @Nullable final SparseArray<Size> launcherWidgetSpanInfo, InvariantDeviceProfile idp) {
@@ -305,4 +383,25 @@ public class PreviewSurfaceRenderer {
                 .start();
         mSurfaceControlViewHost.setView(view, view.getMeasuredWidth(), view.getMeasuredHeight());
     }
+
+    /**
+     * Workspace loaded for another grid, along with the state of the workspace and icons it was
+     * migrated from
+     */
+    private static class MigratedModel {
+        final String modelStamp;
+        final BgDataModel dataModel;
+        final Map<ComponentKey, AppWidgetProviderInfo> widgetProvidersMap;
+        @Nullable
+        final SparseArray<Size> launcherWidgetSpanInfo;
+
+        MigratedModel(String modelStamp, BgDataModel dataModel,
+                Map<ComponentKey, AppWidgetProviderInfo> widgetProvidersMap,
+                @Nullable SparseArray<Size> launcherWidgetSpanInfo) {
+            this.modelStamp = modelStamp;
+            this.dataModel = dataModel;
+            this.widgetProvidersMap = widgetProvidersMap;
+            this.launcherWidgetSpanInfo = launcherWidgetSpanInfo;
+        }
+    }
 }
@@ -47,6 +47,7 @@ import android.util.SparseArray;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 import androidx.core.util.Pair;
 
 import com.android.launcher3.InvariantDeviceProfile;
@@ -64,6 +65,7 @@ import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.pm.InstallSessionHelper;
 import com.android.launcher3.pm.UserCache;
 import com.android.launcher3.shortcuts.ShortcutKey;
+import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.FlagOp;
 import com.android.launcher3.util.InstantAppResolver;
 import com.android.launcher3.util.PackageUserKey;
@@ -71,12 +73,16 @@ import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.widget.WidgetSections;
 import com.android.launcher3.widget.WidgetSections.WidgetSection;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import app.lawnchair.icons.LawnchairIconProvider;
@@ -93,6 +99,9 @@ public class IconCache extends BaseIconCache {
 
     private static final String TAG = "Launcher.IconCache";
 
+    // Placeholder class name used to key package entries in the concurrent entry cache
+    private static final String PACKAGE_ENTRY_CLASS = ".";
+
     private final Predicate<ItemInfoWithIcon> mIsUsingFallbackOrNonDefaultIconCheck = w -> w.bitmap != null
             && (w.bitmap.isNullOrLowRes() || !isDefaultIcon(w.bitmap, w.user));
 
@@ -108,6 +117,14 @@ public class IconCache extends BaseIconCache {
 
     private final SparseArray<BitmapInfo> mWidgetCategoryBitmapInfos;
 
+    private final IconEntryCache mEntryCache = new IconEntryCache();
+    private final IconCacheRebuilder mRebuilder;
+
+    @Nullable
+    private final IconSnapshot mSnapshot;
+    @Nullable
+    private volatile IconSnapshot.Reader mSnapshotReader;
+
     private int mPendingIconRequestCount = 0;
 
     public IconCache(Context context, InvariantDeviceProfile idp) {
@@ -126,6 +143,11 @@ public class IconCache extends BaseIconCache {
         mInstantAppResolver = InstantAppResolver.newInstance(mContext);
         mIconProvider = iconProvider;
         mWidgetCategoryBitmapInfos = new SparseArray<>();
+        mRebuilder = new IconCacheRebuilder(context, this, mLauncherActivityInfoCachingLogic);
+        mSnapshot = LauncherFiles.APP_ICONS_DB.equals(dbFileName)
+                ? new IconSnapshot(context.getFileStreamPath(LauncherFiles.APP_ICONS_SNAPSHOT),
+                        idp.iconBitmapSize)
+                : null;
 
         mCancelledRunnable = new HandlerRunnable(
                 mWorkerHandler, () -> null, MAIN_EXECUTOR, c -> {
@@ -166,12 +188,104 @@ public class IconCache extends BaseIconCache {
         } catch (NameNotFoundException e) {
             Log.d(TAG, "Package not found", e);
         }
+        mEntryCache.invalidatePackage(packageName, user);
+        invalidateSnapshot();
+    }
+
+    @Override
+    public synchronized void removeIconsForPkg(@NonNull String packageName,
+            @NonNull UserHandle user) {
+        super.removeIconsForPkg(packageName, user);
+        mEntryCache.invalidatePackage(packageName, user);
+        invalidateSnapshot();
+    }
+
+    @Override
+    public synchronized <T> void addIconToDBAndMemCache(@NonNull T object,
+            @NonNull CachingLogic<T> cachingLogic, @NonNull PackageInfo info, long userSerial,
+            boolean replaceExisting) {
+        super.addIconToDBAndMemCache(object, cachingLogic, info, userSerial, replaceExisting);
+        if (replaceExisting) {
+            mEntryCache.invalidatePackage(info.packageName, cachingLogic.getUser(object));
+            invalidateSnapshot();
+        }
+    }
+
+    @Override
+    public synchronized void updateIconParams(int iconDpi, int iconPixelSize) {
+        // Icons being rebuilt were rendered with the previous params
+        mRebuilder.cancel();
+        super.updateIconParams(iconDpi, iconPixelSize);
+        mEntryCache.invalidateAll();
+        // The memory cache is cleared on the worker thread, clear again once that has happened
+        mWorkerHandler.post(mEntryCache::invalidateAll);
+        invalidateSnapshot();
+    }
+
+    /**
+     * Renders the icons of all the launcher activities again on a worker pool, after the cache was
+     * cleared by {@link #updateIconParams}, instead of rendering them one by one on the model
+     * thread as they are loaded.
+     *
+     * @param onBatchUpdated called on the model thread with the packages whose icons were written,
+     *                       so that they can be rebound while the rest are rendering
+     * @param onComplete     called on the model thread once all the icons were written
+     */
+    public void rebuildIcons(@NonNull BiConsumer<HashSet<String>, UserHandle> onBatchUpdated,
+            @NonNull Runnable onComplete) {
+        mRebuilder.start(onBatchUpdated, onComplete);
+    }
+
+    /**
+     * Starts serving icons from the icon snapshot, if one is available, until
+     * {@link #endSnapshotLoad()} is called. Used by the loader to bind the first frame without
+     * going through the icon database, snapshot icons are only served on the calling thread.
+     */
+    public void beginSnapshotLoad() {
+        if (mSnapshot != null) {
+            mSnapshotReader = mSnapshot.open(mUserManager, this::getIconSystemState);
+        }
+    }
+
+    /**
+     * Stops serving icons from the icon snapshot
+     *
+     * @return the packages, per user, which were served from the snapshot and need to be
+     * refreshed from the icon database.
+     */
+    @NonNull
+    public Map<UserHandle, HashSet<String>> endSnapshotLoad() {
+        IconSnapshot.Reader reader = mSnapshotReader;
+        mSnapshotReader = null;
+        return reader == null ? Collections.emptyMap() : reader.getServedPackages();
+    }
+
+    /**
+     * Replaces the icon snapshot with the icons of the provided items
+     */
+    @WorkerThread
+    public void writeSnapshot(@NonNull Collection<? extends ItemInfoWithIcon> items) {
+        if (mSnapshot != null) {
+            mSnapshot.write(items, mUserManager, this::getIconSystemState);
+        }
+    }
+
+    private void invalidateSnapshot() {
+        if (mSnapshot != null) {
+            mSnapshot.delete();
+        }
+    }
+
+    private boolean applySnapshot(@NonNull ItemInfoWithIcon info) {
+        IconSnapshot.Reader reader = mSnapshotReader;
+        return reader != null && reader.apply(info);
     }
 
     /**
      * Closes the cache DB. This will clear any in-memory cache.
      */
     public void close() {
+        mRebuilder.cancel();
         // This will clear all pending updates
         getUpdateHandler();
 
@@ -237,7 +351,7 @@ public class IconCache extends BaseIconCache {
     /**
      * Fill in {@param info} with the icon and label for {@param activityInfo}
      */
-    public synchronized void getTitleAndIcon(ItemInfoWithIcon info,
+    public void getTitleAndIcon(ItemInfoWithIcon info,
             LauncherActivityInfo activityInfo, boolean useLowResIcon) {
         // If we already have activity info, no need to use package icon
         getTitleAndIcon(info, () -> activityInfo, false, useLowResIcon);
@@ -257,8 +371,23 @@ public class IconCache extends BaseIconCache {
      */
     public <T extends ItemInfoWithIcon> void getShortcutIcon(T info, ShortcutInfo si,
             @NonNull Predicate<T> fallbackIconCheck) {
-        BitmapInfo bitmapInfo = cacheLocked(ShortcutKey.fromInfo(si).componentName,
-                si.getUserHandle(), () -> si, mShortcutCachingLogic, false, false).bitmap;
+        ComponentKey key = new ComponentKey(ShortcutKey.fromInfo(si).componentName,
+                si.getUserHandle());
+        BitmapInfo bitmapInfo;
+        if (mShortcutCachingLogic.addToMemCache()) {
+            bitmapInfo = mEntryCache.getOrLoad(key, false, () -> {
+                synchronized (this) {
+                    return toEntry(cacheLocked(key.componentName, key.user, () -> si,
+                            mShortcutCachingLogic, false, false));
+                }
+            }).bitmap;
+        } else {
+            // Shortcut icons are not kept in memory, IconEntryCache is not bounded either
+            synchronized (this) {
+                bitmapInfo = cacheLocked(key.componentName, key.user, () -> si,
+                        mShortcutCachingLogic, false, false).bitmap;
+            }
+        }
         if (bitmapInfo.isNullOrLowRes()) {
             bitmapInfo = getDefaultIcon(si.getUserHandle());
         }
@@ -310,7 +439,7 @@ public class IconCache extends BaseIconCache {
      * Fill in {@param info} with the icon and label. If the
      * corresponding activity is not found, it reverts to the package icon.
      */
-    public synchronized void getTitleAndIcon(ItemInfoWithIcon info, boolean useLowResIcon) {
+    public void getTitleAndIcon(ItemInfoWithIcon info, boolean useLowResIcon) {
         // null info means not installed, but if we have a component from the intent
         // then
         // we should still look in the cache for restored app icons.
@@ -335,13 +464,27 @@ public class IconCache extends BaseIconCache {
     /**
      * Fill in {@param mWorkspaceItemInfo} with the icon and label for {@param info}
      */
-    public synchronized void getTitleAndIcon(
+    public void getTitleAndIcon(
             @NonNull ItemInfoWithIcon infoInOut,
             @NonNull Supplier<LauncherActivityInfo> activityInfoProvider,
             boolean usePkgIcon, boolean useLowResIcon) {
-        CacheEntry entry = cacheLocked(infoInOut.getTargetComponent(), infoInOut.user,
-                activityInfoProvider, mLauncherActivityInfoCachingLogic, usePkgIcon,
-                useLowResIcon);
+        if (applySnapshot(infoInOut)) {
+            return;
+        }
+        if (infoInOut.getTargetComponent() == null) {
+            synchronized (this) {
+                applyCacheEntry(cacheLocked(null, infoInOut.user, activityInfoProvider,
+                        mLauncherActivityInfoCachingLogic, usePkgIcon, useLowResIcon), infoInOut);
+            }
+            return;
+        }
+        ComponentKey key = new ComponentKey(infoInOut.getTargetComponent(), infoInOut.user);
+        IconEntryCache.Entry entry = mEntryCache.getOrLoad(key, useLowResIcon, () -> {
+            synchronized (this) {
+                return toEntry(cacheLocked(key.componentName, key.user, activityInfoProvider,
+                        mLauncherActivityInfoCachingLogic, usePkgIcon, useLowResIcon));
+            }
+        });
         applyCacheEntry(entry, infoInOut);
     }
 
@@ -380,7 +523,35 @@ public class IconCache extends BaseIconCache {
      * Load and fill icons requested in iconRequestInfos using a single bulk sql
      * query.
      */
-    public synchronized <T extends ItemInfoWithIcon> void getTitlesAndIconsInBulk(
+    public <T extends ItemInfoWithIcon> void getTitlesAndIconsInBulk(
+            List<IconRequestInfo<T>> iconRequestInfos) {
+        // Serve whatever is already in memory without blocking on the database
+        List<IconRequestInfo<T>> misses = iconRequestInfos.stream()
+                .filter(iconRequest -> {
+                    ItemInfoWithIcon info = iconRequest.itemInfo;
+                    if (info.getTargetComponent() == null
+                            || info.itemType == ITEM_TYPE_DEEP_SHORTCUT) {
+                        return true;
+                    }
+                    if (applySnapshot(info)) {
+                        return false;
+                    }
+                    IconEntryCache.Entry entry = mEntryCache.peek(
+                            new ComponentKey(info.getTargetComponent(), info.user),
+                            iconRequest.useLowResIcon);
+                    if (entry == null) {
+                        return true;
+                    }
+                    applyCacheEntry(entry, info);
+                    return false;
+                })
+                .collect(Collectors.toList());
+        if (!misses.isEmpty()) {
+            loadTitlesAndIconsInBulk(misses);
+        }
+    }
+
+    private synchronized <T extends ItemInfoWithIcon> void loadTitlesAndIconsInBulk(
             List<IconRequestInfo<T>> iconRequestInfos) {
         Map<Pair<UserHandle, Boolean>, List<IconRequestInfo<T>>> iconLoadSubsectionsMap = iconRequestInfos.stream()
                 .filter(iconRequest -> {
@@ -511,15 +682,26 @@ public class IconCache extends BaseIconCache {
     /**
      * Fill in {@param infoInOut} with the corresponding icon and label.
      */
-    public synchronized void getTitleAndIconForApp(
+    public void getTitleAndIconForApp(
             @NonNull final PackageItemInfo infoInOut, final boolean useLowResIcon) {
-        CacheEntry entry = getEntryForPackageLocked(
-                infoInOut.packageName, infoInOut.user, useLowResIcon);
+        ComponentKey key = new ComponentKey(
+                new ComponentName(infoInOut.packageName, PACKAGE_ENTRY_CLASS), infoInOut.user);
+        IconEntryCache.Entry entry = mEntryCache.getOrLoad(key, useLowResIcon, () -> {
+            synchronized (this) {
+                return toEntry(getEntryForPackageLocked(
+                        infoInOut.packageName, infoInOut.user, useLowResIcon));
+            }
+        });
         applyCacheEntry(entry, infoInOut);
         if (infoInOut.widgetCategory == NO_CATEGORY) {
             return;
         }
+        synchronized (this) {
+            applyWidgetCategoryLocked(infoInOut);
+        }
+    }
 
+    private void applyWidgetCategoryLocked(@NonNull final PackageItemInfo infoInOut) {
         WidgetSection widgetSection = WidgetSections.getWidgetSections(mContext)
                 .get(infoInOut.widgetCategory);
         infoInOut.title = mContext.getString(widgetSection.mSectionTitle);
@@ -539,7 +721,6 @@ public class IconCache extends BaseIconCache {
         } catch (Exception e) {
             Log.e(TAG, "Error initializing bitmap for icons with widget category", e);
         }
-
     }
 
     private synchronized BitmapInfo getBadgedIcon(@Nullable final BitmapInfo bitmap,
@@ -550,13 +731,29 @@ public class IconCache extends BaseIconCache {
         return bitmap.withFlags(FlagOp.NO_OP);
     }
 
+    @NonNull
+    private static IconEntryCache.Entry toEntry(@NonNull final CacheEntry entry) {
+        return new IconEntryCache.Entry(entry.title, entry.contentDescription, entry.bitmap);
+    }
+
+    private void applyCacheEntry(@NonNull final IconEntryCache.Entry entry,
+            @NonNull final ItemInfoWithIcon info) {
+        applyCacheEntry(entry.title, entry.contentDescription, entry.bitmap, info);
+    }
+
     protected void applyCacheEntry(@NonNull final CacheEntry entry,
             @NonNull final ItemInfoWithIcon info) {
-        info.title = Utilities.trim(entry.title);
-        info.contentDescription = entry.contentDescription;
-        info.bitmap = entry.bitmap;
-        if (entry.bitmap == null) {
-            // TODO: entry.bitmap can never be null, so this should not happen at all.
+        applyCacheEntry(entry.title, entry.contentDescription, entry.bitmap, info);
+    }
+
+    private void applyCacheEntry(@Nullable CharSequence title,
+            @Nullable CharSequence contentDescription, @Nullable BitmapInfo bitmap,
+            @NonNull final ItemInfoWithIcon info) {
+        info.title = Utilities.trim(title);
+        info.contentDescription = contentDescription;
+        info.bitmap = bitmap;
+        if (bitmap == null) {
+            // TODO: bitmap can never be null, so this should not happen at all.
             Log.wtf(TAG, "Cannot find bitmap from the cache, default icon was loaded.");
             info.bitmap = getDefaultIcon(info.user);
         }
@@ -569,6 +766,7 @@ public class IconCache extends BaseIconCache {
     public void updateSessionCache(PackageUserKey key, PackageInstaller.SessionInfo info) {
         cachePackageInstallInfo(key.mPackageName, key.mUser, info.getAppIcon(),
                 info.getAppLabel());
+        mEntryCache.invalidatePackage(key.mPackageName, key.mUser);
     }
 
     @Override
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.icons.cache.CachingLogic;
+import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.util.Executors.SimpleThreadFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Renders the icons of all the launcher activities again after the icon cache was invalidated,
+ * like when the icon pack or the icon shape changes.
+ *
+ * Icons are rendered on a bounded worker pool instead of one after another on the model thread.
+ * Each render obtains its own {@link LauncherIcons} from the shared pool, so workers never share
+ * a factory. Rendered icons are written back to the icon database and memory cache in batches,
+ * each batch being a single task on the model thread, after which the owner is told which
+ * packages were updated so that their icons can be rebound while the rest are still rendering.
+ *
+ * Starting a rebuild, or calling {@link #cancel()}, drops the results of the previous one.
+ */
+final class IconCacheRebuilder {
+
+    private static final String TAG = "IconCacheRebuilder";
+
+    private static final int POOL_SIZE =
+            Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+    private static final int KEEP_ALIVE_SECONDS = 1;
+    private static final int BATCH_SIZE = 16;
+
+    private static final ThreadPoolExecutor RENDER_EXECUTOR;
+
+    static {
+        RENDER_EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new SimpleThreadFactory("icon-cache-rebuild-",
+                        Process.THREAD_PRIORITY_FOREGROUND));
+        // The pool is only busy while icons are rebuilt, don't keep idle threads around
+        RENDER_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final Context mContext;
+    private final IconCache mIconCache;
+    private final CachingLogic<LauncherActivityInfo> mCachingLogic;
+    private final LauncherApps mLauncherApps;
+    private final PackageManager mPackageManager;
+    private final UserCache mUserCache;
+
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    IconCacheRebuilder(@NonNull Context context, @NonNull IconCache iconCache,
+            @NonNull CachingLogic<LauncherActivityInfo> cachingLogic) {
+        mContext = context;
+        mIconCache = iconCache;
+        mCachingLogic = cachingLogic;
+        mLauncherApps = context.getSystemService(LauncherApps.class);
+        mPackageManager = context.getPackageManager();
+        mUserCache = UserCache.INSTANCE.get(context);
+    }
+
+    /**
+     * Starts rebuilding the icons of all the launcher activities.
+     *
+     * @param onBatchUpdated called on the model thread with the packages of every written batch
+     * @param onComplete     called on the model thread once all the icons were written
+     */
+    @AnyThread
+    void start(@NonNull BiConsumer<HashSet<String>, UserHandle> onBatchUpdated,
+            @NonNull Runnable onComplete) {
+        int generation = mGeneration.incrementAndGet();
+        MODEL_EXECUTOR.execute(() -> {
+            if (mGeneration.get() != generation) {
+                return;
+            }
+            List<LauncherActivityInfo> apps = new ArrayList<>();
+            for (UserHandle user : mUserCache.getUserProfiles()) {
+                apps.addAll(mLauncherApps.getActivityList(null, user));
+            }
+            if (apps.isEmpty()) {
+                onComplete.run();
+                return;
+            }
+            Run run = new Run(generation, apps.size(), onBatchUpdated, onComplete);
+            for (LauncherActivityInfo app : apps) {
+                RENDER_EXECUTOR.execute(() -> run.render(app));
+            }
+        });
+    }
+
+    /**
+     * Drops the pending work of the current rebuild, if any
+     */
+    @AnyThread
+    void cancel() {
+        mGeneration.incrementAndGet();
+    }
+
+    private class Run {
+
+        private final int mGeneration;
+        private final BiConsumer<HashSet<String>, UserHandle> mOnBatchUpdated;
+        private final Runnable mOnComplete;
+        private final long mStartTime = SystemClock.uptimeMillis();
+
+        private final Map<String, PackageInfo> mPackageInfos = new ConcurrentHashMap<>();
+        private final ArrayList<RenderedIcon> mPending = new ArrayList<>(BATCH_SIZE);
+        private int mRemaining;
+        private int mPostedBatches;
+
+        // Only accessed on the model thread, batches can be written in any order
+        private int mWrittenBatches;
+        private int mTotalBatches = -1;
+
+        Run(int generation, int count, BiConsumer<HashSet<String>, UserHandle> onBatchUpdated,
+                Runnable onComplete) {
+            mGeneration = generation;
+            mRemaining = count;
+            mOnBatchUpdated = onBatchUpdated;
+            mOnComplete = onComplete;
+        }
+
+        boolean isCancelled() {
+            return IconCacheRebuilder.this.mGeneration.get() != mGeneration;
+        }
+
+        @WorkerThread
+        void render(LauncherActivityInfo app) {
+            if (isCancelled()) {
+                return;
+            }
+            RenderedIcon icon = null;
+            try {
+                PackageInfo info = getPackageInfo(app.getComponentName().getPackageName());
+                if (info != null) {
+                    icon = new RenderedIcon(app, info, mCachingLogic.loadIcon(mContext, app));
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Unable to render icon of " + app.getComponentName(), e);
+            }
+
+            List<RenderedIcon> batch = null;
+            int totalBatches = -1;
+            synchronized (this) {
+                if (icon != null) {
+                    mPending.add(icon);
+                }
+                mRemaining--;
+                boolean last = mRemaining == 0;
+                if (mPending.size() >= BATCH_SIZE || last) {
+                    batch = new ArrayList<>(mPending);
+                    mPending.clear();
+                    mPostedBatches++;
+                    if (last) {
+                        totalBatches = mPostedBatches;
+                    }
+                }
+            }
+            if (batch != null) {
+                // Batches are posted outside the lock, so the last one can be written before
+                // others: it only carries the number of batches to wait for.
+                List<RenderedIcon> icons = batch;
+                int total = totalBatches;
+                MODEL_EXECUTOR.execute(() -> write(icons, total));
+            }
+        }
+
+        @Nullable
+        private PackageInfo getPackageInfo(String packageName) {
+            PackageInfo info = mPackageInfos.get(packageName);
+            if (info == null) {
+                try {
+                    info = mPackageManager.getPackageInfo(packageName,
+                            PackageManager.GET_UNINSTALLED_PACKAGES);
+                    mPackageInfos.put(packageName, info);
+                } catch (NameNotFoundException e) {
+                    Log.d(TAG, "Package not found: " + packageName);
+                }
+            }
+            return info;
+        }
+
+        /**
+         * @param totalBatches the number of batches of the run if this is the last one posted,
+         *                     or -1
+         */
+        private void write(List<RenderedIcon> icons, int totalBatches) {
+            if (isCancelled()) {
+                return;
+            }
+            Map<UserHandle, HashSet<String>> updatedPackages = new ArrayMap<>();
+            synchronized (mIconCache) {
+                for (RenderedIcon icon : icons) {
+                    UserHandle user = icon.app.getUser();
+                    mIconCache.addIconToDBAndMemCache(icon.app, icon, icon.info,
+                            mUserCache.getSerialNumberForUser(user), false /* replace existing */);
+                    updatedPackages.computeIfAbsent(user, u -> new HashSet<>())
+                            .add(icon.info.packageName);
+                }
+            }
+            updatedPackages.forEach((user, packages) -> mOnBatchUpdated.accept(packages, user));
+            mWrittenBatches++;
+            if (totalBatches > 0) {
+                mTotalBatches = totalBatches;
+            }
+            if (mWrittenBatches == mTotalBatches) {
+                Log.d(TAG, "Rebuilt icon cache in " + (SystemClock.uptimeMillis() - mStartTime)
+                        + "ms");
+                mOnComplete.run();
+            }
+        }
+    }
+
+    /**
+     * An icon rendered by a worker, written through the regular caching logic so that the entry
+     * gets the same label and metadata as one rendered on the model thread
+     */
+    private class RenderedIcon implements CachingLogic<LauncherActivityInfo> {
+
+        final LauncherActivityInfo app;
+        final PackageInfo info;
+        final BitmapInfo bitmap;
+
+        RenderedIcon(LauncherActivityInfo app, PackageInfo info, BitmapInfo bitmap) {
+            this.app = app;
+            this.info = info;
+            this.bitmap = bitmap;
+        }
+
+        @NonNull
+        @Override
+        public ComponentName getComponent(@NonNull LauncherActivityInfo object) {
+            return mCachingLogic.getComponent(object);
+        }
+
+        @NonNull
+        @Override
+        public UserHandle getUser(@NonNull LauncherActivityInfo object) {
+            return mCachingLogic.getUser(object);
+        }
+
+        @NonNull
+        @Override
+        public CharSequence getLabel(@NonNull LauncherActivityInfo object) {
+            return mCachingLogic.getLabel(object);
+        }
+
+        @NonNull
+        @Override
+        public BitmapInfo loadIcon(@NonNull Context context, @NonNull LauncherActivityInfo object) {
+            return bitmap;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import android.os.UserHandle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.util.ComponentKey;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * Concurrent in-memory layer in front of the {@link IconCache} memory cache.
+ *
+ * Hits are served from a {@link ConcurrentHashMap} without taking any lock. Misses are resolved
+ * while holding a lock striped by package and user, so that concurrent misses for the same package
+ * are loaded only once, while lookups for other packages are never blocked by it. Invalidation
+ * bumps the generation of the affected stripe, so that a miss which raced with an invalidation
+ * does not publish a stale entry.
+ */
+final class IconEntryCache {
+
+    private static final int STRIPE_COUNT = 32;
+
+    private final ConcurrentHashMap<ComponentKey, Entry> mEntries = new ConcurrentHashMap<>();
+    private final Object[] mStripeLocks = new Object[STRIPE_COUNT];
+    private final AtomicIntegerArray mStripeGenerations = new AtomicIntegerArray(STRIPE_COUNT);
+
+    IconEntryCache() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            mStripeLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the cached entry for the key if it satisfies the requested resolution, without
+     * taking any lock.
+     */
+    @Nullable
+    Entry peek(@NonNull ComponentKey key, boolean useLowResIcon) {
+        Entry entry = mEntries.get(key);
+        return entry != null && entry.satisfies(useLowResIcon) ? entry : null;
+    }
+
+    /**
+     * Returns the cached entry for the key, or loads it using {@param loader} while holding the
+     * lock for the key's package.
+     */
+    @NonNull
+    Entry getOrLoad(@NonNull ComponentKey key, boolean useLowResIcon,
+            @NonNull Supplier<Entry> loader) {
+        Entry entry = peek(key, useLowResIcon);
+        if (entry != null) {
+            return entry;
+        }
+        int stripe = stripeFor(key.componentName.getPackageName(), key.user);
+        synchronized (mStripeLocks[stripe]) {
+            entry = peek(key, useLowResIcon);
+            if (entry != null) {
+                return entry;
+            }
+            int generation = mStripeGenerations.get(stripe);
+            entry = loader.get();
+            if (entry.bitmap == null) {
+                return entry;
+            }
+            mEntries.put(key, entry);
+            if (mStripeGenerations.get(stripe) != generation) {
+                // The package was invalidated while loading, don't keep the result around
+                mEntries.remove(key, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Removes all entries for the package and user
+     */
+    void invalidatePackage(@NonNull String packageName, @NonNull UserHandle user) {
+        mStripeGenerations.incrementAndGet(stripeFor(packageName, user));
+        mEntries.keySet().removeIf(k ->
+                packageName.equals(k.componentName.getPackageName()) && user.equals(k.user));
+    }
+
+    /**
+     * Removes all entries
+     */
+    void invalidateAll() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            mStripeGenerations.incrementAndGet(i);
+        }
+        mEntries.clear();
+    }
+
+    private static int stripeFor(String packageName, UserHandle user) {
+        int h = 31 * packageName.hashCode() + user.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPE_COUNT - 1);
+    }
+
+    /**
+     * Immutable copy of a {@link com.android.launcher3.icons.cache.BaseIconCache.CacheEntry}
+     */
+    static final class Entry {
+        @Nullable
+        final CharSequence title;
+        @Nullable
+        final CharSequence contentDescription;
+        @Nullable
+        final BitmapInfo bitmap;
+
+        Entry(@Nullable CharSequence title, @Nullable CharSequence contentDescription,
+                @Nullable BitmapInfo bitmap) {
+            this.title = title;
+            this.contentDescription = contentDescription;
+            this.bitmap = bitmap;
+        }
+
+        boolean satisfies(boolean useLowResIcon) {
+            return bitmap != null && (useLowResIcon || !bitmap.isLowRes());
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.model.data.ItemInfoWithIcon;
+import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.FlagOp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Binary snapshot of already decoded, downscaled icons, used to bind the first frame after a
+ * process start without going through the icon database.
+ *
+ * The file is a header followed by a sequence of records, one per component:
+ * - header: magic, version, icon size, record count
+ * - record: component, user serial, system state hash, title, content description, color,
+ *           bitmap flags, and the raw pixels of the icon
+ * Strings are stored as their UTF-8 bytes, prefixed by the number of bytes.
+ *
+ * Records are only ever appended while writing and the file is replaced atomically. The file is
+ * memory mapped for reading, and pixels are copied directly into a bitmap without any decoding.
+ *
+ * Snapshot icons are smaller than regular ones, they are only served to the loader which opened
+ * the snapshot and must be refreshed from the icon database once it has bound them.
+ */
+public class IconSnapshot {
+
+    private static final String TAG = "IconSnapshot";
+
+    private static final int MAGIC = 0x4C494353; // LICS
+    private static final int VERSION = 3;
+
+    // Snapshot icons are stored at a fraction of the full icon size to keep the file small
+    private static final int SIZE_DIVIDER = 4;
+
+    private final AtomicFile mFile;
+    private final int mIconSize;
+
+    public IconSnapshot(@NonNull File file, int iconBitmapSize) {
+        mFile = new AtomicFile(file);
+        mIconSize = Math.max(1, iconBitmapSize / SIZE_DIVIDER);
+    }
+
+    /**
+     * Deletes the snapshot, it will be rebuilt the next time {@link #write} is called
+     */
+    public void delete() {
+        mFile.delete();
+    }
+
+    /**
+     * Replaces the snapshot with the icons of the provided items
+     */
+    @WorkerThread
+    public void write(@NonNull Collection<? extends ItemInfoWithIcon> items,
+            @NonNull UserCache userCache, @NonNull Function<String, String> systemStateProvider) {
+        FileOutputStream fos;
+        try {
+            fos = mFile.startWrite();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write icon snapshot", e);
+            return;
+        }
+
+        HashSet<ComponentKey> written = new HashSet<>();
+        Bitmap scaled = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+        ByteBuffer pixels = ByteBuffer.allocate(scaled.getByteCount());
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            int count = 0;
+            for (ItemInfoWithIcon item : items) {
+                ComponentName cn = item.getTargetComponent();
+                if (cn != null && item.bitmap != null && !item.bitmap.isNullOrLowRes()
+                        && item.title != null
+                        && written.add(new ComponentKey(cn, item.user))) {
+                    count++;
+                }
+            }
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mIconSize);
+            out.writeInt(count);
+
+            written.clear();
+            for (ItemInfoWithIcon item : items) {
+                ComponentName cn = item.getTargetComponent();
+                if (cn == null || item.bitmap == null || item.bitmap.isNullOrLowRes()
+                        || item.title == null || !written.add(new ComponentKey(cn, item.user))) {
+                    continue;
+                }
+                drawScaled(item.bitmap.icon, scaled);
+                pixels.rewind();
+                scaled.copyPixelsToBuffer(pixels);
+
+                writeString(out, cn.flattenToString());
+                out.writeLong(userCache.getSerialNumberForUser(item.user));
+                out.writeInt(systemStateProvider.apply(cn.getPackageName()).hashCode());
+                writeString(out, item.title.toString());
+                writeString(out, item.contentDescription == null
+                        ? "" : item.contentDescription.toString());
+                out.writeInt(item.bitmap.color);
+                out.writeInt(item.bitmap.flags);
+                out.write(pixels.array(), 0, pixels.capacity());
+            }
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            mFile.failWrite(fos);
+            Log.e(TAG, "Unable to write icon snapshot", e);
+            return;
+        } finally {
+            scaled.recycle();
+        }
+        mFile.finishWrite(fos);
+    }
+
+    /**
+     * Memory maps the snapshot and returns a reader for it, or null if there is no valid snapshot.
+     * The reader only serves icons on the calling thread.
+     */
+    @Nullable
+    public Reader open(@NonNull UserCache userCache,
+            @NonNull Function<String, String> systemStateProvider) {
+        File file = mFile.getBaseFile();
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileInputStream fis = mFile.openRead(); FileChannel channel = fis.getChannel()) {
+            MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getInt() != mIconSize) {
+                Log.d(TAG, "Ignoring incompatible icon snapshot");
+                return null;
+            }
+            int count = buffer.getInt();
+            int pixelBytes = mIconSize * mIconSize * 4;
+            Map<ComponentKey, Integer> offsets = new ArrayMap<>(count);
+            for (int i = 0; i < count; i++) {
+                int offset = buffer.position();
+                ComponentName cn = ComponentName.unflattenFromString(readString(buffer));
+                UserHandle user = userCache.getUserForSerialNumber(buffer.getLong());
+                // state hash, title, content description, color, flags
+                buffer.getInt();
+                skipString(buffer);
+                skipString(buffer);
+                buffer.getInt();
+                buffer.getInt();
+                buffer.position(buffer.position() + pixelBytes);
+                if (cn != null && user != null) {
+                    offsets.put(new ComponentKey(cn, user), offset);
+                }
+            }
+            return new Reader(buffer, offsets, mIconSize, systemStateProvider);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to read icon snapshot", e);
+            return null;
+        }
+    }
+
+    private static void drawScaled(@NonNull Bitmap src, @NonNull Bitmap dest) {
+        if (src.getConfig() == Bitmap.Config.HARDWARE) {
+            src = src.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        dest.eraseColor(0);
+        new Canvas(dest).drawBitmap(src, null, new Rect(0, 0, dest.getWidth(), dest.getHeight()),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // Unlike writeUTF, this writes standard UTF-8 and has no length limit
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * Read access to a memory mapped snapshot, for the thread which opened it. Keeps track of the
+     * packages which were served from the snapshot, so that they can be refreshed from the icon
+     * database afterwards.
+     */
+    public static class Reader {
+
+        private final ByteBuffer mBuffer;
+        private final Map<ComponentKey, Integer> mOffsets;
+        private final int mPixelBytes;
+        private final int mIconSize;
+        private final Function<String, String> mSystemStateProvider;
+        private final Thread mLoaderThread = Thread.currentThread();
+
+        private final Map<UserHandle, HashSet<String>> mServedPackages = new ArrayMap<>();
+
+        Reader(ByteBuffer buffer, Map<ComponentKey, Integer> offsets, int iconSize,
+                Function<String, String> systemStateProvider) {
+            mBuffer = buffer;
+            mOffsets = offsets;
+            mIconSize = iconSize;
+            mPixelBytes = iconSize * iconSize * 4;
+            mSystemStateProvider = systemStateProvider;
+        }
+
+        /**
+         * Fills {@param info} from the snapshot and returns true, or returns false if the
+         * snapshot does not have a valid entry for it or if called outside of the loader.
+         */
+        public synchronized boolean apply(@NonNull ItemInfoWithIcon info) {
+            ComponentName cn = info.getTargetComponent();
+            if (cn == null || Thread.currentThread() != mLoaderThread) {
+                return false;
+            }
+            Integer offset = mOffsets.get(new ComponentKey(cn, info.user));
+            if (offset == null) {
+                return false;
+            }
+            try {
+                ByteBuffer buffer = mBuffer.duplicate();
+                buffer.position(offset);
+                skipString(buffer);
+                buffer.getLong();
+                if (buffer.getInt()
+                        != mSystemStateProvider.apply(cn.getPackageName()).hashCode()) {
+                    // Icon pack or system state has changed since the snapshot was taken
+                    return false;
+                }
+                String title = readString(buffer);
+                String contentDescription = readString(buffer);
+                int color = buffer.getInt();
+                int flags = buffer.getInt();
+
+                ByteBuffer pixels = buffer.slice();
+                pixels.limit(mPixelBytes);
+                Bitmap icon = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+                icon.copyPixelsFromBuffer(pixels);
+
+                info.title = title;
+                info.contentDescription = contentDescription;
+                info.bitmap = BitmapInfo.of(icon, color).withFlags(FlagOp.addFlag(flags));
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                Log.e(TAG, "Corrupt icon snapshot entry for " + cn, e);
+                return false;
+            }
+            mServedPackages.computeIfAbsent(info.user, u -> new HashSet<>())
+                    .add(cn.getPackageName());
+            return true;
+        }
+
+        /**
+         * Returns the packages, per user, which were served from the snapshot
+         */
+        public synchronized Map<UserHandle, HashSet<String>> getServedPackages() {
+            return new ArrayMap<>(mServedPackages);
+        }
+    }
+}
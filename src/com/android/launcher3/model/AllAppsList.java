@@ -40,7 +40,9 @@ import com.android.launcher3.model.BgDataModel.Callbacks;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.pm.PackageInstallInfo;
+import com.android.launcher3.search.AppSearchIndex;
 import com.android.launcher3.util.FlagOp;
+import com.android.launcher3.util.LabelLineSplitter;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.SafeCloseable;
 
@@ -77,6 +79,8 @@ public class AllAppsList {
 
     private AlphabeticIndexCompat mIndex;
 
+    private final AppSearchIndex mSearchIndex = new AppSearchIndex();
+
     /**
      * @see Callbacks#FLAG_HAS_SHORTCUT_PERMISSION
      * @see Callbacks#FLAG_QUIET_MODE_ENABLED
@@ -102,6 +106,13 @@ public class AllAppsList {
         return result;
     }
 
+    /**
+     * Returns the search index over the titles of {@link #data}
+     */
+    public AppSearchIndex getSearchIndex() {
+        return mSearchIndex;
+    }
+
     /**
      * Helper to checking {@link Callbacks#FLAG_HAS_SHORTCUT_PERMISSION}
      */
@@ -148,12 +159,13 @@ public class AllAppsList {
         }
         if (loadIcon) {
             mIconCache.getTitleAndIcon(info, activityInfo, false /* useLowResIcon */);
-            info.sectionName = mIndex.computeSectionName(info.title);
+            updateTitleData(info);
         } else {
             info.title = "";
         }
 
         data.add(info);
+        mSearchIndex.update(info);
         mDataChanged = true;
     }
 
@@ -174,20 +186,30 @@ public class AllAppsList {
 
         if (loadIcon) {
             mIconCache.getTitleAndIcon(promiseAppInfo, promiseAppInfo.usingLowResIcon());
-            promiseAppInfo.sectionName = mIndex.computeSectionName(promiseAppInfo.title);
+            updateTitleData(promiseAppInfo);
         } else {
             promiseAppInfo.title = "";
         }
 
         data.add(promiseAppInfo);
+        mSearchIndex.update(promiseAppInfo);
         mDataChanged = true;
 
         return promiseAppInfo;
     }
 
     public void updateSectionName(AppInfo appInfo) {
-        appInfo.sectionName = mIndex.computeSectionName(appInfo.title);
+        updateTitleData(appInfo);
+        mSearchIndex.update(appInfo);
+    }
 
+    /**
+     * Computes the data derived from the title of {@param appInfo}, so that it isn't computed
+     * again on the UI thread when the app is bound
+     */
+    private void updateTitleData(AppInfo appInfo) {
+        appInfo.sectionName = mIndex.computeSectionName(appInfo.title);
+        appInfo.labelBreakpoints = LabelLineSplitter.getBreakpoints(appInfo.title);
     }
 
     /** Updates the given PackageInstallInfo's associated AppInfo's installation info. */
@@ -220,6 +242,7 @@ public class AllAppsList {
     private void removeApp(int index) {
         AppInfo removed = data.remove(index);
         if (removed != null) {
+            mSearchIndex.remove(removed);
             mDataChanged = true;
             mRemoveListener.accept(removed);
         }
@@ -227,6 +250,7 @@ public class AllAppsList {
 
     public void clear() {
         data.clear();
+        mSearchIndex.clear();
         mDataChanged = false;
         // Reset the index as locales might have changed
         mIndex = new AlphabeticIndexCompat(LocaleList.getDefault());
@@ -278,7 +302,8 @@ public class AllAppsList {
         for (AppInfo info : data) {
             if (info.user.equals(user) && packages.contains(info.componentName.getPackageName())) {
                 mIconCache.updateTitleAndIcon(info);
-                info.sectionName = mIndex.computeSectionName(info.title);
+                updateTitleData(info);
+                mSearchIndex.update(info);
                 mDataChanged = true;
             }
         }
@@ -315,7 +340,8 @@ public class AllAppsList {
                     Intent launchIntent = AppInfo.makeLaunchIntent(info);
 
                     mIconCache.getTitleAndIcon(applicationInfo, info, false /* useLowResIcon */);
-                    applicationInfo.sectionName = mIndex.computeSectionName(applicationInfo.title);
+                    updateTitleData(applicationInfo);
+                    mSearchIndex.update(applicationInfo);
                     applicationInfo.setProgressLevel(
                             PackageManagerHelper.getLoadingProgress(info),
                             PackageInstallInfo.STATUS_INSTALLED_DOWNLOADING);
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.util.PackageManagerHelper.hasShortcutsPermission;
+
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.Context;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
+import android.content.pm.ShortcutInfo;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.shortcuts.ShortcutRequest;
+import com.android.launcher3.util.Executors.SimpleThreadFactory;
+import com.android.launcher3.widget.WidgetManagerHelper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues the independent system queries needed by {@link LoaderTask} on a bounded worker pool, so
+ * that they overlap with the workspace load instead of running one after another on the loader
+ * thread:
+ * - activity list for every profile
+ * - all deep shortcuts for every unlocked profile
+ * - widget provider enumeration
+ *
+ * Only the raw query results are produced here. All model mutations and bind calls still happen
+ * on the loader thread in their original order. If a query fails, or was not prefetched, the
+ * caller is expected to fall back to running it synchronously.
+ */
+class LoaderPrefetcher implements AutoCloseable {
+
+    private static final String TAG = "LoaderPrefetcher";
+
+    private static final int POOL_SIZE =
+            Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+    private static final int KEEP_ALIVE_SECONDS = 1;
+
+    private static final ThreadPoolExecutor PREFETCH_EXECUTOR;
+
+    static {
+        PREFETCH_EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new SimpleThreadFactory("launcher-loader-prefetch-",
+                        Process.THREAD_PRIORITY_FOREGROUND));
+        // The pool is only busy during a model load, don't keep idle threads around
+        PREFETCH_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final Map<UserHandle, Stage<List<LauncherActivityInfo>>> mActivityLists =
+            new ArrayMap<>();
+    private final Map<UserHandle, Stage<List<ShortcutInfo>>> mDeepShortcuts = new ArrayMap<>();
+    @Nullable
+    private Stage<List<AppWidgetProviderInfo>> mWidgetProviders;
+
+    /**
+     * Starts all the prefetch stages for the provided profiles
+     */
+    public LoaderPrefetcher(@NonNull Context context, @NonNull List<UserHandle> profiles) {
+        LauncherApps launcherApps = context.getSystemService(LauncherApps.class);
+        UserManager userManager = context.getSystemService(UserManager.class);
+
+        for (UserHandle user : profiles) {
+            mActivityLists.put(user, submit("activityList",
+                    () -> launcherApps.getActivityList(null, user)));
+        }
+
+        if (hasShortcutsPermission(context)) {
+            for (UserHandle user : profiles) {
+                if (userManager.isUserUnlocked(user)) {
+                    mDeepShortcuts.put(user, submit("deepShortcuts", () ->
+                            new ShortcutRequest(context, user).query(ShortcutRequest.ALL)));
+                }
+            }
+        }
+
+        if (!WidgetsModel.GO_DISABLE_WIDGETS) {
+            mWidgetProviders = submit("widgetProviders",
+                    () -> new WidgetManagerHelper(context).getAllProviders(null));
+        }
+    }
+
+    /**
+     * Returns the prefetched activity list for the user or null if it is not available
+     */
+    @Nullable
+    public List<LauncherActivityInfo> getActivityList(UserHandle user) {
+        return await(mActivityLists.get(user));
+    }
+
+    /**
+     * Returns the prefetched deep shortcuts for the user or null if they are not available
+     */
+    @Nullable
+    public List<ShortcutInfo> getDeepShortcuts(UserHandle user) {
+        return await(mDeepShortcuts.get(user));
+    }
+
+    /**
+     * Returns the prefetched widget providers for all profiles or null if they are not available
+     */
+    @Nullable
+    public List<AppWidgetProviderInfo> getWidgetProviders() {
+        return await(mWidgetProviders);
+    }
+
+    /**
+     * Cancels any stage which has not completed yet
+     */
+    @Override
+    public void close() {
+        mActivityLists.values().forEach(Stage::cancel);
+        mDeepShortcuts.values().forEach(Stage::cancel);
+        if (mWidgetProviders != null) {
+            mWidgetProviders.cancel();
+        }
+    }
+
+    private static <T> Stage<T> submit(String name, Callable<T> query) {
+        Stage<T> stage = new Stage<>(name);
+        stage.future = PREFETCH_EXECUTOR.submit(() -> {
+            long start = SystemClock.uptimeMillis();
+            try {
+                return query.call();
+            } finally {
+                stage.durationMs = SystemClock.uptimeMillis() - start;
+            }
+        });
+        return stage;
+    }
+
+    @Nullable
+    private static <T> T await(@Nullable Stage<T> stage) {
+        if (stage == null) {
+            return null;
+        }
+        long start = SystemClock.uptimeMillis();
+        try {
+            T result = stage.future.get();
+            LoaderTask.logASplit(String.format("prefetch %s: %dms, waited %dms", stage.name,
+                    stage.durationMs, SystemClock.uptimeMillis() - start));
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Prefetch interrupted");
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Prefetch " + stage.name + " failed, falling back", e.getCause());
+            return null;
+        }
+    }
+
+    private static class Stage<T> {
+        final String name;
+        Future<T> future;
+        volatile long durationMs;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void cancel() {
+            future.cancel(false);
+        }
+    }
+}
@@ -147,6 +147,9 @@ public class LoaderTask implements Runnable {
 
     private boolean mStopped;
 
+    @Nullable
+    private LoaderPrefetcher mPrefetcher;
+
     private final Set<PackageUserKey> mPendingPackages = new HashSet<>();
     private boolean mItemsDeleted = false;
     private String mDbName;
@@ -203,11 +206,24 @@ public class LoaderTask implements Runnable {
             if (mStopped) {
                 return;
             }
+            if (PreferenceManager.getInstance(mApp.getContext()).getPipelinedModelLoading().get()) {
+                // Start the independent system queries now, so that they overlap with the
+                // workspace load. Binding still happens in order on this thread.
+                mPrefetcher = new LoaderPrefetcher(mApp.getContext(), mUserCache.getUserProfiles());
+                logASplit("start prefetch");
+            }
         }
 
         TraceHelper.INSTANCE.beginSection(TAG);
         LoaderMemoryLogger memoryLogger = new LoaderMemoryLogger();
+        boolean useIconSnapshot =
+                PreferenceManager.getInstance(mApp.getContext()).getIconSnapshot().get();
         try (LauncherModel.LoaderTransaction transaction = mApp.getModel().beginLoader(this)) {
+            if (useIconSnapshot) {
+                mIconCache.beginSnapshotLoad();
+                logASplit("open icon snapshot");
+            }
+
             List<ShortcutInfo> allShortcuts = new ArrayList<>();
             loadWorkspace(allShortcuts, "", memoryLogger);
 
@@ -258,6 +274,11 @@ public class LoaderTask implements Runnable {
             mLauncherBinder.bindAllApps();
             logASplit("bindAllApps");
 
+            if (useIconSnapshot) {
+                refreshIconsServedFromSnapshot();
+                logASplit("refresh snapshot icons");
+            }
+
             verifyNotStopped();
             IconCacheUpdateHandler updateHandler = mIconCache.getUpdateHandler();
             setIgnorePackages(updateHandler);
@@ -296,7 +317,8 @@ public class LoaderTask implements Runnable {
             verifyNotStopped();
 
             // fourth step
-            List<ComponentWithLabelAndIcon> allWidgetsList = mBgDataModel.widgetsModel.update(mApp, null);
+            List<ComponentWithLabelAndIcon> allWidgetsList = mBgDataModel.widgetsModel.update(
+                    mApp, null, mPrefetcher == null ? null : mPrefetcher.getWidgetProviders());
             logASplit("load widgets");
 
             verifyNotStopped();
@@ -322,6 +344,11 @@ public class LoaderTask implements Runnable {
             updateHandler.finish();
             logASplit("finish icon update");
 
+            if (useIconSnapshot) {
+                writeIconSnapshot();
+                logASplit("write icon snapshot");
+            }
+
             mModelDelegate.modelLoadComplete();
             transaction.commit();
             memoryLogger.clearLogs();
@@ -331,15 +358,25 @@ public class LoaderTask implements Runnable {
         } catch (Exception e) {
             memoryLogger.printLogs();
             throw e;
+        } finally {
+            closePrefetcher();
+            mIconCache.endSnapshotLoad();
         }
         TraceHelper.INSTANCE.endSection();
     }
 
     public synchronized void stopLocked() {
         mStopped = true;
+        closePrefetcher();
         this.notify();
     }
 
+    private synchronized void closePrefetcher() {
+        if (mPrefetcher != null) {
+            mPrefetcher.close();
+        }
+    }
+
     protected void loadWorkspace(
             List<ShortcutInfo> allDeepShortcuts,
             String selection,
@@ -881,6 +918,28 @@ public class LoaderTask implements Runnable {
         }
     }
 
+    /**
+     * Stops using the icon snapshot and schedules a refresh from the icon database for all the
+     * packages which were bound with a snapshot icon.
+     */
+    private void refreshIconsServedFromSnapshot() {
+        mIconCache.endSnapshotLoad().forEach((user, packages) ->
+                mApp.getModel().onPackageIconsUpdated(packages, user));
+    }
+
+    private void writeIconSnapshot() {
+        ArrayList<ItemInfoWithIcon> items = new ArrayList<>(mBgAllAppsList.data);
+        synchronized (mBgDataModel) {
+            for (ItemInfo info : mBgDataModel.itemsIdMap) {
+                if (info instanceof WorkspaceItemInfo
+                        && info.itemType == Favorites.ITEM_TYPE_APPLICATION) {
+                    items.add((WorkspaceItemInfo) info);
+                }
+            }
+        }
+        mIconCache.writeSnapshot(items);
+    }
+
     private void setIgnorePackages(IconCacheUpdateHandler updateHandler) {
         // Ignore packages which have a promise icon.
         synchronized (mBgDataModel) {
@@ -946,7 +1005,7 @@ public class LoaderTask implements Runnable {
         List<IconRequestInfo<AppInfo>> iconRequestInfos = new ArrayList<>();
         for (UserHandle user : profiles) {
             // Query for the set of apps
-            final List<LauncherActivityInfo> apps = mLauncherApps.getActivityList(null, user);
+            final List<LauncherActivityInfo> apps = getActivityList(user);
             // Fail if we don't have any apps
             // TODO: Fix this. Only fail for the current user.
             if (apps == null || apps.isEmpty()) {
@@ -1005,6 +1064,12 @@ public class LoaderTask implements Runnable {
         return allActivityList;
     }
 
+    private List<LauncherActivityInfo> getActivityList(UserHandle user) {
+        List<LauncherActivityInfo> apps =
+                mPrefetcher == null ? null : mPrefetcher.getActivityList(user);
+        return apps != null ? apps : mLauncherApps.getActivityList(null, user);
+    }
+
     private List<ShortcutInfo> loadDeepShortcuts() {
         List<ShortcutInfo> allShortcuts = new ArrayList<>();
         mBgDataModel.deepShortcutMap.clear();
@@ -1012,8 +1077,12 @@ public class LoaderTask implements Runnable {
         if (mBgAllAppsList.hasShortcutHostPermission()) {
             for (UserHandle user : mUserCache.getUserProfiles()) {
                 if (mUserManager.isUserUnlocked(user)) {
-                    List<ShortcutInfo> shortcuts = new ShortcutRequest(mApp.getContext(), user)
-                            .query(ShortcutRequest.ALL);
+                    List<ShortcutInfo> shortcuts = mPrefetcher == null
+                            ? null : mPrefetcher.getDeepShortcuts(user);
+                    if (shortcuts == null) {
+                        shortcuts = new ShortcutRequest(mApp.getContext(), user)
+                                .query(ShortcutRequest.ALL);
+                    }
                     allShortcuts.addAll(shortcuts);
                     mBgDataModel.updateDeepShortcutCounts(null, user, shortcuts);
                 }
@@ -1090,7 +1159,7 @@ public class LoaderTask implements Runnable {
         FileLog.d(TAG, widgetDimension.toString());
     }
 
-    private static void logASplit(String label) {
+    static void logASplit(String label) {
         if (DEBUG) {
             Log.d(TAG, label);
         }
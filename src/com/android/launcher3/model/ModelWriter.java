@@ -49,10 +49,12 @@ import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.LooperExecutor;
 import com.android.launcher3.widget.LauncherWidgetHolder;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -66,6 +68,9 @@ public class ModelWriter {
 
     private static final String TAG = "ModelWriter";
 
+    // Item updates received within this window are coalesced and written in a single transaction
+    private static final long WRITE_BEHIND_WINDOW_MS = 16;
+
     private final Context mContext;
     private final LauncherModel mModel;
     private final BgDataModel mBgDataModel;
@@ -83,6 +88,9 @@ public class ModelWriter {
     private boolean mPreparingToUndo;
     private final CellPosMapper mCellPosMapper;
 
+    // Item updates waiting to be written, shared by all the writers of the model
+    private final PendingUpdates mPendingUpdates;
+
     public ModelWriter(Context context, LauncherModel model, BgDataModel dataModel,
             boolean hasVerticalHotseat, boolean verifyChanges, CellPosMapper cellPosMapper,
             @Nullable Callbacks owner) {
@@ -94,6 +102,7 @@ public class ModelWriter {
         mOwner = owner;
         mCellPosMapper = cellPosMapper;
         mUiExecutor = Executors.MAIN_EXECUTOR;
+        mPendingUpdates = model.getPendingItemUpdates();
     }
 
     private void updateItemInfoProps(
@@ -175,12 +184,17 @@ public class ModelWriter {
         updateItemInfoProps(item, container, screenId, cellX, cellY);
         notifyItemModified(item);
 
-        enqueueDeleteRunnable(new UpdateItemRunnable(item, () -> new ContentWriter(mContext)
+        Supplier<ContentWriter> writer = () -> new ContentWriter(mContext)
                 .put(Favorites.CONTAINER, item.container)
                 .put(Favorites.CELLX, item.cellX)
                 .put(Favorites.CELLY, item.cellY)
                 .put(Favorites.RANK, item.rank)
-                .put(Favorites.SCREEN, item.screenId)));
+                .put(Favorites.SCREEN, item.screenId);
+        if (mPreparingToUndo) {
+            enqueueDeleteRunnable(new UpdateItemRunnable(item, writer));
+        } else {
+            enqueueItemUpdate(item, writer);
+        }
     }
 
     /**
@@ -219,15 +233,14 @@ public class ModelWriter {
         item.spanX = spanX;
         item.spanY = spanY;
         notifyItemModified(item);
-        new UpdateItemRunnable(item, () -> new ContentWriter(mContext)
+        enqueueItemUpdate(item, () -> new ContentWriter(mContext)
                 .put(Favorites.CONTAINER, item.container)
                 .put(Favorites.CELLX, item.cellX)
                 .put(Favorites.CELLY, item.cellY)
                 .put(Favorites.RANK, item.rank)
                 .put(Favorites.SPANX, item.spanX)
                 .put(Favorites.SPANY, item.spanY)
-                .put(Favorites.SCREEN, item.screenId))
-                .executeOnModelThread();
+                .put(Favorites.SCREEN, item.screenId));
     }
 
     /**
@@ -235,11 +248,35 @@ public class ModelWriter {
      */
     public void updateItemInDatabase(ItemInfo item) {
         notifyItemModified(item);
-        new UpdateItemRunnable(item, () -> {
+        enqueueItemUpdate(item, () -> {
             ContentWriter writer = new ContentWriter(mContext);
             item.onAddToDatabase(writer);
             return writer;
-        }).executeOnModelThread();
+        });
+    }
+
+    /**
+     * Queues an update of {@param item} to be written shortly after, along with all the other
+     * item updates received in the meantime by any writer of the model. Multiple updates of the
+     * same item are merged into a single statement, and all the statements are executed in one
+     * transaction.
+     */
+    private void enqueueItemUpdate(ItemInfo item, Supplier<ContentWriter> writer) {
+        synchronized (mPendingUpdates.mLock) {
+            PendingUpdatesRunnable batch = mPendingUpdates.mBatch;
+            if (batch != null && batch.mLoadId != mBgDataModel.lastLoadId) {
+                // Updates for a previous load are validated against that load, keep them apart
+                mPendingUpdates.flush();
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new PendingUpdatesRunnable();
+                mPendingUpdates.mBatch = batch;
+                MODEL_EXECUTOR.getHandler().postDelayed(
+                        mPendingUpdates.mFlush, WRITE_BEHIND_WINDOW_MS);
+            }
+            batch.add(item, writer);
+        }
     }
 
     private void notifyItemModified(ItemInfo item) {
@@ -405,6 +442,14 @@ public class ModelWriter {
         mModel.forceReload();
     }
 
+    public void dump(String prefix, PrintWriter writer) {
+        int requested = mPendingUpdates.mRequestedUpdates;
+        int written = mPendingUpdates.mWrittenUpdates;
+        writer.println(prefix + "ModelWriter: requestedItemUpdates=" + requested
+                + " writtenItemUpdates=" + written
+                + " coalescedItemUpdates=" + (requested - written));
+    }
+
     private void notifyOtherCallbacks(CallbackTask task) {
         if (mOwner == null) {
             // If the call is happening from a model, it will take care of updating the
@@ -466,6 +511,98 @@ public class ModelWriter {
         }
     }
 
+    private class PendingUpdatesRunnable extends UpdateItemBaseRunnable {
+        // Keyed by item id, in the order the items were first updated
+        private final LinkedHashMap<Integer, PendingUpdate> mUpdates = new LinkedHashMap<>();
+        private int mRequestCount;
+
+        void add(ItemInfo item, Supplier<ContentWriter> writer) {
+            PendingUpdate update = mUpdates.get(item.id);
+            if (update == null) {
+                update = new PendingUpdate(item);
+                mUpdates.put(item.id, update);
+            }
+            // The item is updated again in case it was replaced by another instance
+            update.mItem = item;
+            update.mWriters.add(writer);
+            mRequestCount++;
+        }
+
+        @Override
+        public void runImpl() {
+            ModelDbController controller = mModel.getModelDbController();
+            try (SQLiteTransaction t = controller.newTransaction()) {
+                for (PendingUpdate update : mUpdates.values()) {
+                    // Later values override earlier ones, like successive updates would
+                    ContentValues values = new ContentValues();
+                    for (Supplier<ContentWriter> writer : update.mWriters) {
+                        values.putAll(writer.get().getValues(mContext));
+                    }
+                    controller.update(TABLE_NAME, values, itemIdMatch(update.mItemId), null);
+                }
+                t.commit();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to write item updates", e);
+                return;
+            }
+            for (PendingUpdate update : mUpdates.values()) {
+                updateItemArrays(update.mItem, update.mItemId);
+            }
+
+            mPendingUpdates.mRequestedUpdates += mRequestCount;
+            mPendingUpdates.mWrittenUpdates += mUpdates.size();
+            if (mRequestCount > mUpdates.size()) {
+                Log.d(TAG, "Coalesced " + mRequestCount + " item updates into "
+                        + mUpdates.size() + " statements");
+            }
+        }
+    }
+
+    /**
+     * Item updates queued by all the writers of a model, see {@link #enqueueItemUpdate}. Writers
+     * are created for each task, so the queue is kept by the model: updates keep the order they
+     * were requested in whichever writer requested them, and the model writes them before it
+     * loads again.
+     */
+    public static final class PendingUpdates {
+
+        private final Object mLock = new Object();
+        private final Runnable mFlush = this::flush;
+        // Guarded by mLock
+        private PendingUpdatesRunnable mBatch;
+
+        // Only written on the model thread
+        private volatile int mRequestedUpdates;
+        private volatile int mWrittenUpdates;
+
+        /**
+         * Sends all the queued item updates to the model thread, ahead of any task executed
+         * after this call
+         */
+        public void flush() {
+            PendingUpdatesRunnable batch;
+            synchronized (mLock) {
+                batch = mBatch;
+                mBatch = null;
+                MODEL_EXECUTOR.getHandler().removeCallbacks(mFlush);
+            }
+            if (batch != null) {
+                MODEL_EXECUTOR.execute(batch);
+            }
+        }
+    }
+
+    private static class PendingUpdate {
+        private final int mItemId;
+        private final List<Supplier<ContentWriter>> mWriters = new ArrayList<>();
+        private ItemInfo mItem;
+
+        PendingUpdate(ItemInfo item) {
+            mItemId = item.id;
+            mItem = item;
+        }
+    }
+
     private abstract class UpdateItemBaseRunnable extends ModelTask {
         private final StackTraceElement[] mStackTrace;
         private final ModelVerifier mVerifier = new ModelVerifier();
@@ -532,6 +669,7 @@ public class ModelWriter {
         }
 
         public final void executeOnModelThread() {
+            mPendingUpdates.flush();
             MODEL_EXECUTOR.execute(this);
         }
 
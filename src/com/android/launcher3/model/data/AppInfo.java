@@ -62,6 +62,10 @@ public class AppInfo extends ItemInfoWithIcon implements WorkspaceItemFactory {
     // Section name used for indexing.
     public String sectionName = "";
 
+    // Breakpoints of the title, computed with the section name
+    @Nullable
+    public LabelBreakpoints labelBreakpoints;
+
     /**
      * The uid of the application.
      * The kernel user-ID that has been assigned to this application. Currently this is not a unique
@@ -105,6 +109,7 @@ public class AppInfo extends ItemInfoWithIcon implements WorkspaceItemFactory {
         title = Utilities.trim(info.title);
         intent = new Intent(info.intent);
         uid = info.uid;
+        labelBreakpoints = info.labelBreakpoints;
     }
 
     @VisibleForTesting
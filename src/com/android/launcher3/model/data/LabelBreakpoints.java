@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model.data;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.util.IntArray;
+import com.android.launcher3.util.LabelLineSplitter;
+
+/**
+ * Immutable breakpoints of an item label, where it can be split on two lines. They only depend
+ * on the label, so they are computed on the model thread when the label is loaded and can be
+ * shared by every copy of the item.
+ *
+ * @see LabelLineSplitter
+ */
+public final class LabelBreakpoints {
+
+    @NonNull
+    public final CharSequence title;
+    private final int[] mBreakpoints;
+
+    public LabelBreakpoints(@NonNull CharSequence title, @NonNull IntArray breakpoints) {
+        this.title = title;
+        mBreakpoints = breakpoints.toArray();
+    }
+
+    /**
+     * Returns whether these breakpoints were computed for {@param label}
+     */
+    public boolean isFor(@Nullable CharSequence label) {
+        return title == label || TextUtils.equals(title, label);
+    }
+
+    public int size() {
+        return mBreakpoints.length;
+    }
+
+    /**
+     * Returns the index of the last character before the breakpoint at {@param index}
+     */
+    public int get(int index) {
+        return mBreakpoints[index];
+    }
+}
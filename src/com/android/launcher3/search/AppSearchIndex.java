@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import static com.android.launcher3.search.StringMatcherUtility.requestSimpleFuzzySearch;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prefix index over the titles of all apps, providing the same matching as
+ * {@link StringMatcherUtility#matches} without scanning every app on each query.
+ *
+ * For every break point in a title (as defined by {@link StringMatcher#isBreak}), the primary
+ * strength collation key of the remainder of the title is computed once, when the app is added or
+ * its title changes. All keys are kept in a sorted array, so a query is a binary search for the
+ * collation key of the query followed by a scan over the keys it is a prefix of.
+ *
+ * Updates are applied incrementally; the sorted array is rebuilt lazily on the next query.
+ */
+public class AppSearchIndex {
+
+    private static final Entry[] EMPTY_ENTRIES = new Entry[0];
+    private static final Snapshot EMPTY_SNAPSHOT =
+            new Snapshot(new byte[0][], EMPTY_ENTRIES, EMPTY_ENTRIES);
+
+    private final Object mLock = new Object();
+    private final StringMatcher mMatcher = StringMatcher.getInstance();
+    private final IdentityHashMap<AppInfo, Entry> mEntries = new IdentityHashMap<>();
+
+    private Collator mCollator = newCollator();
+    private long mNextOrder = 0;
+    private volatile long mVersion = 0;
+
+    @Nullable
+    private volatile Snapshot mSnapshot = EMPTY_SNAPSHOT;
+
+    /**
+     * Adds or re-indexes the provided app. Should be called whenever the title of an app changes.
+     */
+    public void update(@NonNull AppInfo app) {
+        String title = app.title == null ? "" : app.title.toString();
+        synchronized (mLock) {
+            Entry existing = mEntries.get(app);
+            if (existing != null && existing.title.equals(title)) {
+                return;
+            }
+            long order = existing != null ? existing.order : mNextOrder++;
+            mEntries.put(app, new Entry(app, order, title, computeKeys(title)));
+            mSnapshot = null;
+            mVersion++;
+        }
+    }
+
+    /**
+     * Removes the provided app from the index
+     */
+    public void remove(@NonNull AppInfo app) {
+        synchronized (mLock) {
+            if (mEntries.remove(app) != null) {
+                mSnapshot = null;
+                mVersion++;
+            }
+        }
+    }
+
+    /**
+     * Removes all apps and picks up the current locale for collation
+     */
+    public void clear() {
+        synchronized (mLock) {
+            mEntries.clear();
+            mCollator = newCollator();
+            mNextOrder = 0;
+            mSnapshot = EMPTY_SNAPSHOT;
+            mVersion++;
+        }
+    }
+
+    /**
+     * Returns a number which changes every time the set of apps or their titles change
+     */
+    @AnyThread
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Returns all the apps matching the query, in the order they were added to the index
+     */
+    @AnyThread
+    @NonNull
+    public List<AppInfo> search(@NonNull String query) {
+        if (query.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Snapshot snapshot = getSnapshot();
+        ArrayList<Entry> matches = new ArrayList<>();
+
+        if (requestSimpleFuzzySearch(query)) {
+            String queryLower = query.toLowerCase();
+            for (Entry entry : snapshot.byOrder) {
+                if (entry.titleLower.contains(queryLower)) {
+                    matches.add(entry);
+                }
+            }
+        } else {
+            byte[] queryKey;
+            synchronized (mLock) {
+                queryKey = primaryKey(mCollator, query);
+            }
+            byte[][] keys = snapshot.keys;
+            for (int i = lowerBound(keys, queryKey);
+                    i < keys.length && isPrefix(queryKey, keys[i]); i++) {
+                matches.add(snapshot.owners[i]);
+            }
+            // Restore the insertion order and drop apps which matched at multiple break points
+            matches.sort((a, b) -> Long.compare(a.order, b.order));
+        }
+
+        ArrayList<AppInfo> result = new ArrayList<>(matches.size());
+        Entry last = null;
+        for (Entry entry : matches) {
+            if (entry != last) {
+                result.add(entry.app);
+                last = entry;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the apps among {@param candidates} matching the query, in the same order. This is
+     * the same as filtering the results of {@link #search} with the candidates, but only looks at
+     * the provided apps.
+     */
+    @AnyThread
+    @NonNull
+    public List<AppInfo> refine(@NonNull String query, @NonNull List<AppInfo> candidates) {
+        if (query.isEmpty()) {
+            return Collections.emptyList();
+        }
+        boolean simpleFuzzySearch = requestSimpleFuzzySearch(query);
+        String queryLower = query.toLowerCase();
+        ArrayList<AppInfo> result = new ArrayList<>();
+        synchronized (mLock) {
+            byte[] queryKey = simpleFuzzySearch ? null : primaryKey(mCollator, query);
+            for (AppInfo app : candidates) {
+                Entry entry = mEntries.get(app);
+                if (entry != null && (simpleFuzzySearch
+                        ? entry.titleLower.contains(queryLower) : entry.hasKeyWithPrefix(queryKey))) {
+                    result.add(app);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (mLock) {
+            if (mSnapshot == null) {
+                mSnapshot = buildSnapshotLocked();
+            }
+            return mSnapshot;
+        }
+    }
+
+    private Snapshot buildSnapshotLocked() {
+        Entry[] byOrder = mEntries.values().toArray(EMPTY_ENTRIES);
+        Arrays.sort(byOrder, (a, b) -> Long.compare(a.order, b.order));
+
+        int count = 0;
+        for (Entry entry : byOrder) {
+            count += entry.keys.length;
+        }
+        Integer[] positions = new Integer[count];
+        byte[][] flatKeys = new byte[count][];
+        Entry[] flatOwners = new Entry[count];
+        int index = 0;
+        for (Entry entry : byOrder) {
+            for (byte[] key : entry.keys) {
+                flatKeys[index] = key;
+                flatOwners[index] = entry;
+                positions[index] = index;
+                index++;
+            }
+        }
+        Arrays.sort(positions, (a, b) -> compare(flatKeys[a], flatKeys[b]));
+
+        byte[][] keys = new byte[count][];
+        Entry[] owners = new Entry[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = flatKeys[positions[i]];
+            owners[i] = flatOwners[positions[i]];
+        }
+        return new Snapshot(keys, owners, byOrder);
+    }
+
+    private byte[][] computeKeys(String title) {
+        int length = title.length();
+        if (length == 0) {
+            return new byte[0][];
+        }
+        ArrayList<byte[]> keys = new ArrayList<>();
+        int lastType;
+        int thisType = Character.UNASSIGNED;
+        int nextType = Character.getType(title.codePointAt(0));
+        for (int i = 0; i < length; i++) {
+            lastType = thisType;
+            thisType = nextType;
+            nextType = i < (length - 1)
+                    ? Character.getType(title.codePointAt(i + 1)) : Character.UNASSIGNED;
+            if (mMatcher.isBreak(thisType, lastType, nextType)) {
+                keys.add(primaryKey(mCollator, title.substring(i)));
+            }
+        }
+        return keys.toArray(new byte[keys.size()][]);
+    }
+
+    private static Collator newCollator() {
+        Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.PRIMARY);
+        collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        return collator;
+    }
+
+    /**
+     * Returns the primary weights of the collation key, without the level separator and
+     * terminator, so that the key of a prefix is a prefix of the key.
+     */
+    private static byte[] primaryKey(Collator collator, String text) {
+        byte[] key = collator.getCollationKey(text).toByteArray();
+        int end = 0;
+        // 0x00 and 0x01 are reserved for the terminator and level separators
+        while (end < key.length && (key[end] & 0xFF) > 0x01) {
+            end++;
+        }
+        return end == key.length ? key : Arrays.copyOf(key, end);
+    }
+
+    private static int lowerBound(byte[][] keys, byte[] target) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(keys[mid], target) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isPrefix(byte[] prefix, byte[] key) {
+        if (prefix.length > key.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (prefix[i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static class Entry {
+        final AppInfo app;
+        final long order;
+        final String title;
+        final String titleLower;
+        final byte[][] keys;
+
+        Entry(AppInfo app, long order, String title, byte[][] keys) {
+            this.app = app;
+            this.order = order;
+            this.title = title;
+            this.titleLower = title.toLowerCase(Locale.getDefault());
+            this.keys = keys;
+        }
+
+        boolean hasKeyWithPrefix(byte[] prefix) {
+            for (byte[] key : keys) {
+                if (isPrefix(prefix, key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Immutable sorted view of the index, shared by concurrent queries
+     */
+    private static class Snapshot {
+        final byte[][] keys;
+        final Entry[] owners;
+        final Entry[] byOrder;
+
+        Snapshot(byte[][] keys, Entry[] owners, Entry[] byOrder) {
+            this.keys = keys;
+            this.owners = owners;
+            this.byOrder = byOrder;
+        }
+    }
+}
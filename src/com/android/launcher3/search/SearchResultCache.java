@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import static com.android.launcher3.search.StringMatcherUtility.requestSimpleFuzzySearch;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Small LRU cache of recent search results, so that while the user keeps typing, each query only
+ * filters the results of the previous one instead of searching all items again.
+ *
+ * Refinement relies on the matching of {@link StringMatcherUtility#matches}: an item matching a
+ * query also matches every prefix of it, as long as both use the same kind of matching (see
+ * {@link StringMatcherUtility#requestSimpleFuzzySearch}).
+ *
+ * @param <T> search result type
+ */
+@AnyThread
+public class SearchResultCache<T> {
+
+    private final Map<String, List<T>> mResults;
+    private long mVersion;
+
+    public SearchResultCache(int maxSize) {
+        mResults = new LinkedHashMap<String, List<T>>(maxSize + 1, 1f, true) {
+            @Override
+            protected boolean removeEldestEntry(Entry<String, List<T>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns all the results for {@param query}, from the cache if the same query was already
+     * searched, by filtering the results of the longest cached prefix of the query with
+     * {@param refine}, or otherwise by searching all items with {@param searchAll}.
+     *
+     * @param version identifies the state of the searched items, cached results are dropped
+     *                whenever it changes
+     */
+    @NonNull
+    public List<T> search(@NonNull String query, long version,
+            @NonNull Function<String, List<T>> searchAll,
+            @NonNull BiFunction<String, List<T>, List<T>> refine) {
+        List<T> candidates;
+        synchronized (this) {
+            if (version != mVersion) {
+                mResults.clear();
+                mVersion = version;
+            }
+            List<T> cached = mResults.get(query);
+            if (cached != null) {
+                return cached;
+            }
+            candidates = getLongestPrefixResultsLocked(query);
+        }
+
+        List<T> results = Collections.unmodifiableList(candidates == null
+                ? searchAll.apply(query) : refine.apply(query, candidates));
+        synchronized (this) {
+            if (version == mVersion) {
+                mResults.put(query, results);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Drops all cached results
+     */
+    public synchronized void clear() {
+        mResults.clear();
+    }
+
+    @Nullable
+    private List<T> getLongestPrefixResultsLocked(String query) {
+        boolean simpleFuzzySearch = requestSimpleFuzzySearch(query);
+        String bestPrefix = null;
+        List<T> bestResults = null;
+        for (Map.Entry<String, List<T>> entry : mResults.entrySet()) {
+            String prefix = entry.getKey();
+            if (query.startsWith(prefix)
+                    && (bestPrefix == null || prefix.length() > bestPrefix.length())
+                    && requestSimpleFuzzySearch(prefix) == simpleFuzzySearch) {
+                bestPrefix = prefix;
+                bestResults = entry.getValue();
+            }
+        }
+        return bestResults;
+    }
+}
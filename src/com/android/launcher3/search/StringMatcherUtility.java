@@ -216,7 +216,7 @@ public class StringMatcherUtility {
     /**
      * Matching optimization to search in Chinese.
      */
-    private static boolean requestSimpleFuzzySearch(String s) {
+    static boolean requestSimpleFuzzySearch(String s) {
         for (int i = 0; i < s.length(); ) {
             int codepoint = s.codePointAt(i);
             i += Character.charCount(codepoint);
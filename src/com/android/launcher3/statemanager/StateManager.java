@@ -27,6 +27,7 @@ import android.animation.AnimatorListenerAdapter;
 import android.animation.AnimatorSet;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.FloatRange;
@@ -37,6 +38,7 @@ import com.android.launcher3.anim.PendingAnimation;
 import com.android.launcher3.states.StateAnimationConfig;
 import com.android.launcher3.states.StateAnimationConfig.AnimationFlags;
 import com.android.launcher3.testing.shared.TestProtocol;
+import com.android.launcher3.util.TransitionFrameStats;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -291,6 +293,8 @@ public class StateManager<STATE_TYPE extends BaseState<STATE_TYPE>> {
                 : state.getTransitionDuration(mActivity, true /* isToState */);
         prepareForAtomicAnimation(fromState, state, mConfig);
         AnimatorSet animation = createAnimationToNewWorkspaceInternal(state).buildAnim();
+        animation.addListener(TransitionFrameStats.INSTANCE.createAnimationListener(mActivity,
+                "State:" + fromState + "->" + state, SystemClock.uptimeMillis()));
         if (listener != null) {
             animation.addListener(listener);
         }
@@ -47,6 +47,7 @@ import com.android.launcher3.testing.shared.HotseatCellCenterRequest;
 import com.android.launcher3.testing.shared.TestProtocol;
 import com.android.launcher3.testing.shared.WorkspaceCellCenterRequest;
 import com.android.launcher3.util.ResourceBasedOverride;
+import com.android.launcher3.util.TransitionFrameStats;
 import com.android.launcher3.widget.picker.WidgetsFullSheet;
 
 import java.util.concurrent.Callable;
@@ -247,6 +248,19 @@ public class TestInformationHandler implements ResourceBasedOverride {
                                 + l.getAppsView().getActiveRecyclerView().getPaddingBottom());
             }
 
+            case TestProtocol.REQUEST_TRANSITION_FRAME_STATS: {
+                return getFromExecutorSync(MAIN_EXECUTOR, () -> {
+                    response.putBundle(TestProtocol.TEST_INFO_RESPONSE_FIELD,
+                            TransitionFrameStats.INSTANCE.toBundle());
+                    return response;
+                });
+            }
+
+            case TestProtocol.REQUEST_CLEAR_TRANSITION_FRAME_STATS: {
+                MAIN_EXECUTOR.execute(TransitionFrameStats.INSTANCE::clear);
+                return response;
+            }
+
             case TestProtocol.REQUEST_FLAG_ENABLE_GRID_ONLY_OVERVIEW: {
                 response.putBoolean(TestProtocol.TEST_INFO_RESPONSE_FIELD,
                         ENABLE_GRID_ONLY_OVERVIEW.get());
@@ -32,6 +32,7 @@ import static com.android.launcher3.util.window.RefreshRateTracker.getSingleFram
 
 import android.animation.Animator.AnimatorListener;
 import android.animation.ValueAnimator;
+import android.os.SystemClock;
 import android.view.MotionEvent;
 
 import com.android.launcher3.Launcher;
@@ -44,6 +45,7 @@ import com.android.launcher3.logging.StatsLogManager;
 import com.android.launcher3.states.StateAnimationConfig;
 import com.android.launcher3.util.FlingBlockCheck;
 import com.android.launcher3.util.TouchController;
+import com.android.launcher3.util.TransitionFrameStats;
 
 /**
  * TouchController for handling state changes
@@ -68,6 +70,8 @@ public abstract class AbstractStateChangeTouchController
     protected boolean mGoingBetweenStates = true;
     // Ratio of transition process [0, 1] to drag displacement (px)
     protected float mProgressMultiplier;
+    // Frames of the swipe, from the drag start until the target state is reached
+    private TransitionFrameStats.Session mFrameStatsSession;
 
     private boolean mNoIntercept;
     private boolean mIsLogContainerSet;
@@ -187,6 +191,8 @@ public abstract class AbstractStateChangeTouchController
             mFromState = mStartState;
             mToState = null;
             cancelAnimationControllers();
+            mFrameStatsSession = TransitionFrameStats.INSTANCE.begin(
+                    mLauncher, SystemClock.uptimeMillis());
             reinitCurrentAnimation(false, mDetector.wasInitialTouchPositive());
             mDisplacementShift = 0;
         } else {
@@ -365,6 +371,10 @@ public abstract class AbstractStateChangeTouchController
     }
 
     protected void onSwipeInteractionCompleted(LauncherState targetState) {
+        if (mFrameStatsSession != null) {
+            mFrameStatsSession.end("Swipe:" + mFromState + "->" + targetState);
+            mFrameStatsSession = null;
+        }
         onReachedFinalState(mToState);
         clearState();
         boolean shouldGoToTargetState = mGoingBetweenStates || (mToState != targetState);
@@ -416,5 +426,9 @@ public abstract class AbstractStateChangeTouchController
 
     private void cancelAnimationControllers() {
         mCurrentAnimation = null;
+        if (mFrameStatsSession != null) {
+            mFrameStatsSession.cancel();
+            mFrameStatsSession = null;
+        }
     }
 }
@@ -22,8 +22,8 @@ import java.util.Date
 import java.util.Locale
 
 /**
- * A utility class to record and log events. Events are stored in a fixed size array and old logs
- * are purged as new events come.
+ * A utility class to record and log events. Events are stored in a fixed size [EventLogBuffer] and
+ * old logs are purged as new events come, so events can be logged from any thread.
  */
 class EventLogArray(private val name: String, size: Int) {
 
@@ -33,62 +33,37 @@ class EventLogArray(private val name: String, size: Int) {
         private const val TYPE_INTEGER = 2
         private const val TYPE_BOOL_TRUE = 3
         private const val TYPE_BOOL_FALSE = 4
-        private fun isEntrySame(entry: EventEntry?, type: Int, event: String): Boolean {
-            return entry != null && entry.type == type && entry.event == event
-        }
     }
 
-    private val logs: Array<EventEntry?>
-    private var nextIndex = 0
-
-    init {
-        logs = arrayOfNulls(size)
-    }
+    private val logs = EventLogBuffer(size)
 
     fun addLog(event: String) {
-        addLog(TYPE_ONE_OFF, event, 0f)
+        logs.add(TYPE_ONE_OFF, event, 0, 0)
     }
 
     fun addLog(event: String, extras: Int) {
-        addLog(TYPE_INTEGER, event, extras.toFloat())
+        logs.add(TYPE_INTEGER, event, extras.toLong(), 0)
     }
 
     fun addLog(event: String, extras: Float) {
-        addLog(TYPE_FLOAT, event, extras)
+        logs.add(TYPE_FLOAT, event, extras.toRawBits().toLong(), 0)
     }
 
     fun addLog(event: String, extras: Boolean) {
-        addLog(if (extras) TYPE_BOOL_TRUE else TYPE_BOOL_FALSE, event, 0f)
-    }
-
-    private fun addLog(type: Int, event: String, extras: Float) {
-        // Merge the logs if it's a duplicate
-        val last = (nextIndex + logs.size - 1) % logs.size
-        val secondLast = (nextIndex + logs.size - 2) % logs.size
-        if (isEntrySame(logs[last], type, event) && isEntrySame(logs[secondLast], type, event)) {
-            logs[last]!!.update(type, event, extras)
-            logs[secondLast]!!.duplicateCount++
-            return
-        }
-        if (logs[nextIndex] == null) {
-            logs[nextIndex] = EventEntry()
-        }
-        logs[nextIndex]!!.update(type, event, extras)
-        nextIndex = (nextIndex + 1) % logs.size
+        logs.add(if (extras) TYPE_BOOL_TRUE else TYPE_BOOL_FALSE, event, 0, 0)
     }
 
     fun dump(prefix: String, writer: PrintWriter) {
         writer.println("$prefix$name event history:")
         val sdf = SimpleDateFormat("  HH:mm:ss.SSSZ  ", Locale.US)
         val date = Date()
-        for (i in logs.indices) {
-            val log = logs[(nextIndex + logs.size - i - 1) % logs.size] ?: continue
-            date.time = log.time
+        for (log in logs.snapshot().asReversed()) {
+            date.time = log.timeMillis
             val msg = StringBuilder(prefix).append(sdf.format(date)).append(log.event)
-            when (log.type) {
+            when (log.flags) {
                 TYPE_BOOL_FALSE -> msg.append(": false")
                 TYPE_BOOL_TRUE -> msg.append(": true")
-                TYPE_FLOAT -> msg.append(": ").append(log.extras)
+                TYPE_FLOAT -> msg.append(": ").append(Float.fromBits(log.extras.toInt()))
                 TYPE_INTEGER -> msg.append(": ").append(log.extras.toInt())
                 else -> {}
             }
@@ -98,20 +73,4 @@ class EventLogArray(private val name: String, size: Int) {
             writer.println(msg)
         }
     }
-
-    /** A single event entry. */
-    private class EventEntry {
-        var type = 0
-        var event: String? = null
-        var extras = 0f
-        var time: Long = 0
-        var duplicateCount = 0
-        fun update(type: Int, event: String, extras: Float) {
-            this.type = type
-            this.event = event
-            this.extras = extras
-            time = System.currentTimeMillis()
-            duplicateCount = 0
-        }
-    }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import android.os.SystemClock;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size ring buffer of diagnostic events, cheap enough to be written from touch and
+ * animation code on any thread.
+ *
+ * Entries are stored in parallel primitive arrays, so adding one doesn't allocate: a writer
+ * claims a slot with a single atomic increment, fills it and then publishes it. The event itself
+ * is stored by reference, and is only formatted when the buffer is dumped. Consecutive identical
+ * entries are merged into the first one, counting the duplicates.
+ *
+ * Dumping is best effort: entries being overwritten while the buffer is read are skipped.
+ */
+public class EventLogBuffer {
+
+    private final int mMask;
+
+    private final AtomicLong mNextSequence = new AtomicLong();
+    // Sequence number + 1 of the entry stored in each slot, 0 when it is being written
+    private final AtomicLongArray mPublished;
+    private final AtomicIntegerArray mDuplicates;
+
+    private final int[] mFlags;
+    private final int[] mTags;
+    private final long[] mExtras;
+    private final long[] mTimes;
+    private final Object[] mEvents;
+
+    /**
+     * @param capacity number of entries kept, rounded up to a power of two
+     */
+    public EventLogBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mMask = size - 1;
+        mPublished = new AtomicLongArray(size);
+        mDuplicates = new AtomicIntegerArray(size);
+        mFlags = new int[size];
+        mTags = new int[size];
+        mExtras = new long[size];
+        mTimes = new long[size];
+        mEvents = new Object[size];
+    }
+
+    /**
+     * Adds an entry to the buffer, overwriting the oldest entry once it is full.
+     *
+     * @param flags  type of the entry, interpreted by the owner of the buffer
+     * @param event  the event, formatted with {@link Object#toString()} when dumped
+     * @param extras primitive value attached to the event
+     * @param tag    group of the entry, like the gesture it belongs to
+     */
+    @AnyThread
+    public void add(int flags, @Nullable Object event, long extras, int tag) {
+        long last = mNextSequence.get() - 1;
+        if (last >= 0) {
+            int slot = (int) (last & mMask);
+            if (mPublished.get(slot) == last + 1
+                    && mFlags[slot] == flags && mTags[slot] == tag && mExtras[slot] == extras
+                    && (mEvents[slot] == event || Objects.equals(mEvents[slot], event))
+                    && mPublished.get(slot) == last + 1) {
+                mDuplicates.incrementAndGet(slot);
+                return;
+            }
+        }
+
+        long sequence = mNextSequence.getAndIncrement();
+        int slot = (int) (sequence & mMask);
+        mPublished.set(slot, 0);
+        mFlags[slot] = flags;
+        mTags[slot] = tag;
+        mExtras[slot] = extras;
+        mTimes[slot] = SystemClock.elapsedRealtime();
+        mEvents[slot] = event;
+        mDuplicates.set(slot, 0);
+        mPublished.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * Returns the entries of the buffer, from the oldest to the newest
+     */
+    @NonNull
+    public List<Entry> snapshot() {
+        long end = mNextSequence.get();
+        long start = Math.max(0, end - (mMask + 1));
+        long wallClockOffset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+
+        List<Entry> entries = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mMask);
+            if (mPublished.get(slot) != sequence + 1) {
+                continue;
+            }
+            Entry entry = new Entry(mFlags[slot], mEvents[slot], mExtras[slot], mTags[slot],
+                    mTimes[slot] + wallClockOffset, mDuplicates.get(slot));
+            // Drop the entry if it was overwritten while being read
+            if (mPublished.get(slot) == sequence + 1) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /** A single entry of the buffer */
+    public static class Entry {
+        public final int flags;
+        @Nullable
+        public final Object event;
+        public final long extras;
+        public final int tag;
+        /** Time of the first occurrence, in {@link System#currentTimeMillis()} time base */
+        public final long timeMillis;
+        public final int duplicateCount;
+
+        Entry(int flags, @Nullable Object event, long extras, int tag, long timeMillis,
+                int duplicateCount) {
+            this.flags = flags;
+            this.event = event;
+            this.extras = extras;
+            this.tag = tag;
+            this.timeMillis = timeMillis;
+            this.duplicateCount = duplicateCount;
+        }
+    }
+}
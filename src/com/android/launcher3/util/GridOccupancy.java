@@ -4,20 +4,34 @@ import android.graphics.Rect;
 
 import com.android.launcher3.model.data.ItemInfo;
 
+import java.util.Arrays;
+
 /**
  * Utility object to manage the occupancy in a grid.
+ *
+ * Each row is stored as a bitset in one or more longs, bit x of a row being set when the cell
+ * (x, y) is occupied, so that region checks and copies work on whole words instead of cells.
  */
 public class GridOccupancy extends AbsGridOccupancy {
 
+    private static final int WORD_SHIFT = 6;
+    private static final int BITS_PER_WORD = 1 << WORD_SHIFT;
+
     private final int mCountX;
     private final int mCountY;
+    private final int mWordsPerRow;
 
-    public final boolean[][] cells;
+    // Row major bitsets, row y spanning [y * mWordsPerRow, (y + 1) * mWordsPerRow)
+    private final long[] mRows;
+    // Union of the rows covered by a span, reused by findVacantCell
+    private final long[] mTmpRow;
 
     public GridOccupancy(int countX, int countY) {
         mCountX = countX;
         mCountY = countY;
-        cells = new boolean[countX][countY];
+        mWordsPerRow = (Math.max(countX, 0) + BITS_PER_WORD - 1) >>> WORD_SHIFT;
+        mRows = new long[mWordsPerRow * Math.max(countY, 0)];
+        mTmpRow = new long[mWordsPerRow];
     }
 
     /**
@@ -30,28 +44,72 @@ public class GridOccupancy extends AbsGridOccupancy {
      * @return true if a vacant cell was found
      */
     public boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
-        return super.findVacantCell(vacantOut, cells, mCountX, mCountY, spanX, spanY);
+        if (spanX <= 0 || spanY <= 0) {
+            return false;
+        }
+        return super.findVacantCell(vacantOut, mCountX, mCountY, spanX, spanY);
+    }
+
+    @Override
+    protected int findVacantColumn(int y, int spanX, int spanY) {
+        // A cell is free for the span if it is free in every row the span covers
+        System.arraycopy(mRows, y * mWordsPerRow, mTmpRow, 0, mWordsPerRow);
+        for (int j = y + 1; j < y + spanY; j++) {
+            int offset = j * mWordsPerRow;
+            for (int w = 0; w < mWordsPerRow; w++) {
+                mTmpRow[w] |= mRows[offset + w];
+            }
+        }
+
+        int x = 0;
+        while (x + spanX <= mCountX) {
+            x = nextClearBit(mTmpRow, 0, x);
+            if (x + spanX > mCountX) {
+                break;
+            }
+            int occupied = nextSetBit(mTmpRow, 0, x, x + spanX);
+            if (occupied < 0) {
+                return x;
+            }
+            x = occupied + 1;
+        }
+        return -1;
     }
 
     public void copyTo(GridOccupancy dest) {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                dest.cells[i][j] = cells[i][j];
+        if (dest.mWordsPerRow == mWordsPerRow) {
+            System.arraycopy(mRows, 0, dest.mRows, 0,
+                    Math.min(mRows.length, dest.mRows.length));
+            return;
+        }
+        int countX = Math.min(mCountX, dest.mCountX);
+        int countY = Math.min(mCountY, dest.mCountY);
+        for (int y = 0; y < countY; y++) {
+            for (int x = 0; x < countX; x++) {
+                dest.setCell(x, y, isOccupied(x, y));
             }
         }
     }
 
+    /**
+     * Returns whether the cell (x, y) is occupied. Cells outside of the grid are not occupied.
+     */
+    public boolean isOccupied(int x, int y) {
+        if (x < 0 || y < 0 || x >= mCountX || y >= mCountY) {
+            return false;
+        }
+        return (mRows[y * mWordsPerRow + (x >>> WORD_SHIFT)] & (1L << x)) != 0;
+    }
+
     public boolean isRegionVacant(int x, int y, int spanX, int spanY) {
         int x2 = x + spanX - 1;
         int y2 = y + spanY - 1;
         if (x < 0 || y < 0 || x2 >= mCountX || y2 >= mCountY) {
             return false;
         }
-        for (int i = x; i <= x2; i++) {
-            for (int j = y; j <= y2; j++) {
-                if (cells[i][j]) {
-                    return false;
-                }
+        for (int j = y; j <= y2; j++) {
+            if (nextSetBit(mRows, j * mWordsPerRow, x, x2 + 1) >= 0) {
+                return false;
             }
         }
         return true;
@@ -59,9 +117,20 @@ public class GridOccupancy extends AbsGridOccupancy {
 
     public void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
         if (cellX < 0 || cellY < 0) return;
-        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                cells[x][y] = value;
+        int endX = Math.min(cellX + spanX, mCountX);
+        int endY = Math.min(cellY + spanY, mCountY);
+        if (cellX >= endX) return;
+        for (int y = cellY; y < endY; y++) {
+            int offset = y * mWordsPerRow;
+            int firstWord = cellX >>> WORD_SHIFT;
+            int lastWord = (endX - 1) >>> WORD_SHIFT;
+            for (int w = firstWord; w <= lastWord; w++) {
+                long mask = rangeMask(w, cellX, endX);
+                if (value) {
+                    mRows[offset + w] |= mask;
+                } else {
+                    mRows[offset + w] &= ~mask;
+                }
             }
         }
     }
@@ -79,7 +148,63 @@ public class GridOccupancy extends AbsGridOccupancy {
     }
 
     public void clear() {
-        markCells(0, 0, mCountX, mCountY, false);
+        Arrays.fill(mRows, 0);
+    }
+
+    private void setCell(int x, int y, boolean value) {
+        int index = y * mWordsPerRow + (x >>> WORD_SHIFT);
+        if (value) {
+            mRows[index] |= 1L << x;
+        } else {
+            mRows[index] &= ~(1L << x);
+        }
+    }
+
+    /**
+     * Returns the bits of word {@param word} which are in the range [startX, endX)
+     */
+    private static long rangeMask(int word, int startX, int endX) {
+        int wordStart = word << WORD_SHIFT;
+        long mask = -1L;
+        if (startX > wordStart) {
+            mask &= -1L << (startX - wordStart);
+        }
+        if (endX < wordStart + BITS_PER_WORD) {
+            mask &= (1L << (endX - wordStart)) - 1;
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the first set bit of the row starting at {@param offset} in the range
+     * [startX, endX), or -1 if there is none
+     */
+    private int nextSetBit(long[] rows, int offset, int startX, int endX) {
+        int lastWord = (endX - 1) >>> WORD_SHIFT;
+        for (int w = startX >>> WORD_SHIFT; w <= lastWord; w++) {
+            long bits = rows[offset + w] & rangeMask(w, startX, endX);
+            if (bits != 0) {
+                return (w << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the first clear bit of the row starting at {@param offset} from {@param startX},
+     * or {@link #mCountX} if there is none
+     */
+    private int nextClearBit(long[] rows, int offset, int startX) {
+        if (startX >= mCountX) {
+            return mCountX;
+        }
+        for (int w = startX >>> WORD_SHIFT; w < mWordsPerRow; w++) {
+            long bits = ~rows[offset + w] & rangeMask(w, startX, mCountX);
+            if (bits != 0) {
+                return (w << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return mCountX;
     }
 
     @Override
@@ -87,7 +212,7 @@ public class GridOccupancy extends AbsGridOccupancy {
         StringBuilder s = new StringBuilder("Grid: \n");
         for (int y = 0; y < mCountY; y++) {
             for (int x = 0; x < mCountX; x++) {
-                s.append(cells[x][y] ? 1 : 0).append(" ");
+                s.append(isOccupied(x, y) ? 1 : 0).append(" ");
             }
             s.append("\n");
         }
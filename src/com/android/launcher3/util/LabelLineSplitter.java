@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import android.text.TextPaint;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.model.data.LabelBreakpoints;
+import com.android.launcher3.search.StringMatcherUtility;
+
+/**
+ * Splits item labels on two lines at their breakpoints. The model computes the breakpoints when
+ * a label is loaded, and views split the label once they know their width and text paint.
+ */
+public final class LabelLineSplitter {
+
+    private static final StringMatcherUtility.StringMatcher MATCHER =
+            StringMatcherUtility.StringMatcher.getInstance();
+    private static final char NEW_LINE = '\n';
+    private static final String EMPTY = "";
+
+    private LabelLineSplitter() { }
+
+    /**
+     * Returns the breakpoints of {@param title}, or null if there is no title
+     */
+    @Nullable
+    public static LabelBreakpoints getBreakpoints(@Nullable CharSequence title) {
+        return title == null ? null
+                : new LabelBreakpoints(title, StringMatcherUtility.getListOfBreakpoints(
+                        title, MATCHER));
+    }
+
+    /**
+     * Generate a new string that will support two line text depending on the
+     * current string.
+     * This method calculates the limited width of a text view and creates a string
+     * to fit as
+     * many words as it can until the limit is reached. Once the limit is reached,
+     * we decide to
+     * either return the original title or continue on a new line. How to get the
+     * new string is by
+     * iterating through the list of break points and determining if the strings
+     * between the break
+     * points can fit within the line it is in.
+     * Example assuming each character takes up one spot:
+     * title = "Battery Stats", breakpoint = [6], stringPtr = 0, limitedWidth = 7
+     * We get the current word -> from sublist(0, breakpoint[i]+1) so sublist (0,7)
+     * -> Battery,
+     * now stringPtr = 7 then from sublist(7) the current string is " Stats" and the
+     * runningWidth
+     * at this point exceeds limitedWidth and so we put " Stats" onto the next line
+     * (after checking
+     * if the first char is a SPACE, we trim to append "Stats". So resulting string
+     * would be
+     * "Battery\nStats"
+     */
+    @NonNull
+    public static CharSequence splitOnTwoLines(int limitedWidth,
+            @NonNull LabelBreakpoints breakPoints, @NonNull TextPaint paint) {
+        CharSequence title = breakPoints.title;
+        // current title is less than the width allowed so we can just skip
+        if (paint.measureText(title, 0, title.length()) <= limitedWidth) {
+            return title;
+        }
+        float currentWordWidth, runningWidth = 0;
+        CharSequence currentWord;
+        StringBuilder newString = new StringBuilder();
+        int stringPtr = 0;
+        for (int i = 0; i < breakPoints.size() + 1; i++) {
+            if (i < breakPoints.size()) {
+                currentWord = title.subSequence(stringPtr, breakPoints.get(i) + 1);
+            } else {
+                // last word from recent breakpoint until the end of the string
+                currentWord = title.subSequence(stringPtr, title.length());
+            }
+            currentWordWidth = paint.measureText(currentWord, 0, currentWord.length());
+            runningWidth += currentWordWidth;
+            if (runningWidth <= limitedWidth) {
+                newString.append(currentWord);
+            } else {
+                // there is no more space
+                if (i == 0) {
+                    // if the first words exceeds width, just return as the first line will ellipse
+                    return title;
+                } else {
+                    // If putting word onto a new line, make sure there is no space or new line
+                    // character in the beginning of the current word and just put in the rest of
+                    // the characters.
+                    CharSequence lastCharacters = title.subSequence(stringPtr, title.length());
+                    int beginningLetterType = Character.getType(Character.codePointAt(lastCharacters, 0));
+                    if (beginningLetterType == Character.SPACE_SEPARATOR
+                            || beginningLetterType == Character.LINE_SEPARATOR) {
+                        lastCharacters = lastCharacters.length() > 1
+                                ? lastCharacters.subSequence(1, lastCharacters.length())
+                                : EMPTY;
+                    }
+                    newString.append(NEW_LINE).append(lastCharacters);
+                    return newString.toString();
+                }
+            }
+            if (i >= breakPoints.size()) {
+                // no need to look forward into the string if we've already finished processing
+                break;
+            }
+            stringPtr = breakPoints.get(i) + 1;
+        }
+        return newString.toString();
+    }
+}
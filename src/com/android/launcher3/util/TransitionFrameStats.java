@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static com.android.launcher3.util.window.RefreshRateTracker.getSingleFrameMs;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame level statistics of the launcher transitions, like state changes, swipe gestures and app
+ * launches, aggregated per transition name.
+ *
+ * A {@link Session} counts the frames rendered while a transition runs, using the vsync times of
+ * the {@link Choreographer}, to measure how many frames were missed, how long the first frame
+ * took to be rendered after the input which triggered the transition, and how long the transition
+ * lasted. The results are kept in memory as histograms, and are printed in the launcher dump.
+ */
+@UiThread
+public class TransitionFrameStats {
+
+    public static final TransitionFrameStats INSTANCE = new TransitionFrameStats();
+
+    // Upper bounds, in ms, of the histogram buckets. The last bucket is unbounded.
+    private static final int[] BUCKET_BOUNDS_MS = {16, 33, 50, 100, 200, 500, 1000};
+
+    private final ArrayMap<String, Stats> mStats = new ArrayMap<>();
+
+    @VisibleForTesting
+    TransitionFrameStats() { }
+
+    /**
+     * Starts counting the frames of a transition.
+     *
+     * @param inputTimeMillis time of the input which triggered the transition, in the
+     *                        {@link SystemClock#uptimeMillis()} time base
+     */
+    @NonNull
+    public Session begin(Context context, long inputTimeMillis) {
+        Session session = new Session(inputTimeMillis,
+                TimeUnit.MILLISECONDS.toNanos(Math.max(1, getSingleFrameMs(context))));
+        Choreographer.getInstance().postFrameCallback(session);
+        return session;
+    }
+
+    /**
+     * Returns a listener recording the frames of the animation it is added to, from its start to
+     * its end, under {@param name}. Cancelled animations are not recorded.
+     */
+    @NonNull
+    public Animator.AnimatorListener createAnimationListener(Context context, String name,
+            long inputTimeMillis) {
+        return new AnimatorListenerAdapter() {
+
+            private Session mSession;
+
+            @Override
+            public void onAnimationStart(Animator animation) {
+                if (mSession != null) {
+                    mSession.cancel();
+                }
+                mSession = begin(context, inputTimeMillis);
+            }
+
+            @Override
+            public void onAnimationCancel(Animator animation) {
+                if (mSession != null) {
+                    mSession.cancel();
+                    mSession = null;
+                }
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                if (mSession != null) {
+                    mSession.end(name);
+                    mSession = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the statistics recorded for {@param name}, if any
+     */
+    @Nullable
+    public Stats getStats(String name) {
+        return mStats.get(name);
+    }
+
+    /**
+     * Returns the statistics of all the transitions, keyed by name, for tests
+     */
+    @NonNull
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        for (int i = 0; i < mStats.size(); i++) {
+            bundle.putBundle(mStats.keyAt(i), mStats.valueAt(i).toBundle());
+        }
+        return bundle;
+    }
+
+    /**
+     * Drops all the recorded statistics
+     */
+    public void clear() {
+        mStats.clear();
+    }
+
+    private void record(String name, Session session) {
+        Stats stats = mStats.get(name);
+        if (stats == null) {
+            stats = new Stats();
+            mStats.put(name, stats);
+        }
+        stats.add(session);
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "TransitionFrameStats:");
+        for (int i = 0; i < mStats.size(); i++) {
+            Stats stats = mStats.valueAt(i);
+            writer.println(prefix + "\t" + mStats.keyAt(i)
+                    + ": count=" + stats.count
+                    + ", janky=" + stats.jankyCount
+                    + ", frames=" + stats.totalFrames
+                    + ", missedFrames=" + stats.totalMissedFrames
+                    + ", maxMissedFrames=" + stats.maxMissedFrames);
+            writer.println(prefix + "\t\tlatencyMs: " + stats.latencyMs);
+            writer.println(prefix + "\t\tdurationMs: " + stats.durationMs);
+        }
+    }
+
+    /**
+     * Frames of a single running transition
+     */
+    public class Session implements Choreographer.FrameCallback {
+
+        private final long mInputTimeMillis;
+        private final long mStartTimeMillis = SystemClock.uptimeMillis();
+        private final long mFrameIntervalNanos;
+
+        private long mFirstFrameNanos = -1;
+        private long mLastFrameNanos;
+        private int mFrames;
+        private int mMissedFrames;
+        private boolean mRunning = true;
+
+        private Session(long inputTimeMillis, long frameIntervalNanos) {
+            mInputTimeMillis = inputTimeMillis;
+            mFrameIntervalNanos = frameIntervalNanos;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            if (mFirstFrameNanos < 0) {
+                mFirstFrameNanos = frameTimeNanos;
+            } else {
+                long vsyncs = (frameTimeNanos - mLastFrameNanos + mFrameIntervalNanos / 2)
+                        / mFrameIntervalNanos;
+                if (vsyncs > 1) {
+                    mMissedFrames += (int) (vsyncs - 1);
+                }
+            }
+            mLastFrameNanos = frameTimeNanos;
+            mFrames++;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        /**
+         * Stops counting frames and records the transition under {@param name}
+         */
+        public void end(String name) {
+            if (!mRunning) {
+                return;
+            }
+            stop();
+            if (mFrames > 0) {
+                record(name, this);
+            }
+        }
+
+        /**
+         * Stops counting frames without recording the transition
+         */
+        public void cancel() {
+            if (mRunning) {
+                stop();
+            }
+        }
+
+        private void stop() {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        private long getLatencyMillis() {
+            // Vsync times are in the System#nanoTime time base, like uptimeMillis
+            return Math.max(0,
+                    TimeUnit.NANOSECONDS.toMillis(mFirstFrameNanos) - mInputTimeMillis);
+        }
+
+        private long getDurationMillis() {
+            return Math.max(0, SystemClock.uptimeMillis() - mStartTimeMillis);
+        }
+    }
+
+    /**
+     * Statistics of all the recorded runs of a transition
+     */
+    public static class Stats {
+
+        public int count;
+        public int jankyCount;
+        public long totalFrames;
+        public long totalMissedFrames;
+        public int maxMissedFrames;
+        public final Histogram latencyMs = new Histogram();
+        public final Histogram durationMs = new Histogram();
+
+        @VisibleForTesting
+        void add(Session session) {
+            add(session.mFrames, session.mMissedFrames, session.getLatencyMillis(),
+                    session.getDurationMillis());
+        }
+
+        @VisibleForTesting
+        void add(int frames, int missedFrames, long latencyMillis, long durationMillis) {
+            count++;
+            if (missedFrames > 0) {
+                jankyCount++;
+            }
+            totalFrames += frames;
+            totalMissedFrames += missedFrames;
+            maxMissedFrames = Math.max(maxMissedFrames, missedFrames);
+            latencyMs.add(latencyMillis);
+            durationMs.add(durationMillis);
+        }
+
+        private Bundle toBundle() {
+            Bundle bundle = new Bundle();
+            bundle.putInt("count", count);
+            bundle.putInt("jankyCount", jankyCount);
+            bundle.putLong("totalFrames", totalFrames);
+            bundle.putLong("totalMissedFrames", totalMissedFrames);
+            bundle.putInt("maxMissedFrames", maxMissedFrames);
+            bundle.putLong("latencyP90Ms", latencyMs.getPercentile(90));
+            bundle.putLong("latencyMaxMs", latencyMs.max);
+            bundle.putLong("durationP90Ms", durationMs.getPercentile(90));
+            bundle.putLong("durationMaxMs", durationMs.max);
+            return bundle;
+        }
+    }
+
+    /**
+     * Histogram of durations, bucketed by {@link #BUCKET_BOUNDS_MS}
+     */
+    public static class Histogram {
+
+        private final int[] mBuckets = new int[BUCKET_BOUNDS_MS.length + 1];
+        private int mCount;
+        private long mTotal;
+        public long max;
+
+        void add(long value) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && value > BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            mBuckets[bucket]++;
+            mCount++;
+            mTotal += value;
+            max = Math.max(max, value);
+        }
+
+        public long getMean() {
+            return mCount == 0 ? 0 : mTotal / mCount;
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the given percentile, or the max value
+         * if it is in the last bucket
+         */
+        public long getPercentile(int percentile) {
+            int threshold = (int) Math.ceil(mCount * percentile / 100f);
+            int seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= threshold && seen > 0) {
+                    return Math.min(BUCKET_BOUNDS_MS[i], max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder()
+                    .append("mean=").append(getMean())
+                    .append(", p50<=").append(getPercentile(50))
+                    .append(", p90<=").append(getPercentile(90))
+                    .append(", max=").append(max)
+                    .append(", buckets=[");
+            for (int i = 0; i < mBuckets.length; i++) {
+                if (i > 0) {
+                    s.append(", ");
+                }
+                s.append(i < BUCKET_BOUNDS_MS.length ? "<=" + BUCKET_BOUNDS_MS[i]
+                        : ">" + BUCKET_BOUNDS_MS[i - 1]).append(':').append(mBuckets[i]);
+            }
+            return s.append(']').toString();
+        }
+    }
+}
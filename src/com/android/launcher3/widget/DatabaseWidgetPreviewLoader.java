@@ -27,13 +27,12 @@ import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
-import android.os.Handler;
 import android.os.Process;
 import android.util.Log;
 import android.util.Size;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.android.launcher3.DeviceProfile;
 import com.android.launcher3.LauncherAppState;
@@ -42,10 +41,8 @@ import com.android.launcher3.Utilities;
 import com.android.launcher3.icons.BitmapRenderer;
 import com.android.launcher3.icons.LauncherIcons;
 import com.android.launcher3.icons.ShadowGenerator;
-import com.android.launcher3.icons.cache.HandlerRunnable;
 import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.pm.ShortcutConfigActivityInfo;
-import com.android.launcher3.util.Executors;
 import com.android.launcher3.views.ActivityContext;
 import com.android.launcher3.widget.util.WidgetSizes;
 
@@ -69,23 +66,33 @@ public class DatabaseWidgetPreviewLoader {
     }
 
     /**
-     * Generates the widget preview on {@link AsyncTask#THREAD_POOL_EXECUTOR}. Must be
-     * called on UI thread.
+     * Returns the preview of {@param item} if it was already generated and is still cached in
+     * memory, so that it can be applied without going through {@link #loadPreview}.
+     */
+    @Nullable
+    public Bitmap getCachedPreview(@NonNull WidgetItem item, @NonNull Size previewSize) {
+        return WidgetPreviewCache.INSTANCE.get(mContext).getFromMemory(item, previewSize);
+    }
+
+    /**
+     * Generates the widget preview on {@link WidgetPreviewRenderer}, unless it is already in
+     * {@link WidgetPreviewCache}. Must be called on UI thread.
      *
-     * @return a request id which can be used to cancel the request.
+     * @param visible whether the preview is for a cell in the viewport, which is rendered first
+     * @return a request which can be used to cancel or reprioritize the request.
      */
     @NonNull
-    public HandlerRunnable loadPreview(
+    public WidgetPreviewRenderer.Request<Bitmap> loadPreview(
             @NonNull WidgetItem item,
             @NonNull Size previewSize,
-            @NonNull Consumer<Bitmap> callback) {
-        Handler handler = Executors.UI_HELPER_EXECUTOR.getHandler();
-        HandlerRunnable<Bitmap> request = new HandlerRunnable<>(handler,
-                () -> generatePreview(item, previewSize.getWidth(), previewSize.getHeight()),
-                MAIN_EXECUTOR,
-                callback);
-        Utilities.postAsyncCallback(handler, request);
-        return request;
+            @NonNull Consumer<Bitmap> callback,
+            boolean visible) {
+        WidgetPreviewCache cache = WidgetPreviewCache.INSTANCE.get(mContext);
+        return WidgetPreviewRenderer.submit(
+                () -> cache.getOrGenerate(item, previewSize, () ->
+                        generatePreview(item, previewSize.getWidth(), previewSize.getHeight())),
+                callback,
+                visible);
     }
 
     /**
@@ -48,7 +48,6 @@ import com.android.launcher3.Launcher;
 import com.android.launcher3.R;
 import com.android.launcher3.icons.FastBitmapDrawable;
 import com.android.launcher3.icons.RoundDrawableWrapper;
-import com.android.launcher3.icons.cache.HandlerRunnable;
 import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.views.ActivityContext;
 
@@ -95,7 +94,10 @@ public class WidgetCell extends LinearLayout {
 
     private final DatabaseWidgetPreviewLoader mWidgetPreviewLoader;
 
-    protected HandlerRunnable mActiveRequest;
+    protected WidgetPreviewRenderer.Request<Bitmap> mActiveRequest;
+    // Callback of the preview being loaded, kept while detached to reload it when reattached
+    @Nullable
+    private Consumer<Bitmap> mPendingPreviewCallback;
     private boolean mAnimatePreview = true;
 
     protected final ActivityContext mActivity;
@@ -178,10 +180,8 @@ public class WidgetCell extends LinearLayout {
         mWidgetDescription.setText(null);
         mWidgetDescription.setVisibility(GONE);
 
-        if (mActiveRequest != null) {
-            mActiveRequest.cancel();
-            mActiveRequest = null;
-        }
+        cancelPreviewRequest();
+        mPendingPreviewCallback = null;
         mRemoteViewsPreview = null;
         if (mAppWidgetHostViewPreview != null) {
             mWidgetImageContainer.removeView(mAppWidgetHostViewPreview);
@@ -272,12 +272,46 @@ public class WidgetCell extends LinearLayout {
         } else if (cachedPreview != null) {
             applyPreview(cachedPreview);
         } else {
-            if (mActiveRequest == null) {
-                mActiveRequest = mWidgetPreviewLoader.loadPreview(mItem, mWidgetSize, callback);
+            Bitmap preview = mWidgetPreviewLoader.getCachedPreview(mItem, mWidgetSize);
+            if (preview != null) {
+                // Apply memory hits directly: the callback may notify the adapter, which isn't
+                // allowed while the recycler view is binding this cell.
+                applyPreview(preview);
+            } else if (mActiveRequest == null) {
+                mPendingPreviewCallback = callback;
+                mActiveRequest = mWidgetPreviewLoader.loadPreview(
+                        mItem, mWidgetSize, callback, isAttachedToWindow());
             }
         }
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mActiveRequest != null) {
+            mActiveRequest.setVisible(true);
+        } else if (mPendingPreviewCallback != null && mItem != null) {
+            // The request was dropped while the cell was scrolled off screen
+            mActiveRequest = mWidgetPreviewLoader.loadPreview(
+                    mItem, mWidgetSize, mPendingPreviewCallback, true);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // Don't render previews for cells which are no longer in the viewport, the picker is
+        // either closing or the cell is waiting in the recycler view to be rebound.
+        cancelPreviewRequest();
+    }
+
+    private void cancelPreviewRequest() {
+        if (mActiveRequest != null) {
+            mActiveRequest.cancel();
+            mActiveRequest = null;
+        }
+    }
+
     private void setAppWidgetHostViewPreview(
             NavigableAppWidgetHostView appWidgetHostViewPreview,
             LauncherAppWidgetProviderInfo providerInfo,
@@ -356,10 +390,8 @@ public class WidgetCell extends LinearLayout {
         } else {
             mWidgetImageContainer.setAlpha(1f);
         }
-        if (mActiveRequest != null) {
-            mActiveRequest.cancel();
-            mActiveRequest = null;
-        }
+        cancelPreviewRequest();
+        mPendingPreviewCallback = null;
     }
 
     /**
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.UserHandle;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.Size;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.LauncherFiles;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.icons.GraphicsUtils;
+import com.android.launcher3.icons.cache.SQLiteCacheHelper;
+import com.android.launcher3.model.WidgetItem;
+import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.util.MainThreadInitializedObject;
+import com.android.launcher3.util.PackageUserKey;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Cache of rendered widget and shortcut previews, so that scrolling the widget picker doesn't
+ * render the same previews again.
+ *
+ * Previews are kept in an LRU memory cache, and persisted in
+ * {@link LauncherFiles#WIDGET_PREVIEWS_DB} along with the version of the provider package, so
+ * that they survive the picker being closed and the launcher being restarted. Both are keyed by
+ * the preview size rounded up to {@link #SIZE_BUCKET_PX}, cells of slightly different sizes
+ * sharing the same preview, and by the configuration the preview was rendered with.
+ */
+public class WidgetPreviewCache {
+
+    private static final String TAG = "WidgetPreviewCache";
+
+    public static final MainThreadInitializedObject<WidgetPreviewCache> INSTANCE =
+            new MainThreadInitializedObject<>(WidgetPreviewCache::new);
+
+    private static final int SIZE_BUCKET_PX = 32;
+    private static final int MEMORY_CACHE_SIZE_KB = 16 * 1024;
+
+    private final Context mContext;
+    private final PackageManager mPackageManager;
+    private final UserCache mUserCache;
+    private final CacheDb mDb;
+
+    private final LruCache<String, Bitmap> mMemoryCache =
+            new LruCache<String, Bitmap>(MEMORY_CACHE_SIZE_KB) {
+                @Override
+                protected int sizeOf(String key, Bitmap value) {
+                    return value.getAllocationByteCount() / 1024 + 1;
+                }
+            };
+
+    // Package versions, dropped when the package changes
+    private final Map<PackageUserKey, String> mPackageVersions = new HashMap<>();
+
+    private WidgetPreviewCache(Context context) {
+        mContext = context;
+        mPackageManager = context.getPackageManager();
+        mUserCache = UserCache.INSTANCE.get(context);
+        mDb = new CacheDb(context);
+    }
+
+    /**
+     * Returns the preview of {@param item} if it is cached in memory
+     */
+    @AnyThread
+    @Nullable
+    public Bitmap getFromMemory(@NonNull WidgetItem item, @NonNull Size previewSize) {
+        return mMemoryCache.get(getMemoryKey(item, previewSize));
+    }
+
+    /**
+     * Returns the preview of {@param item} from the memory or disk cache, or generates it with
+     * {@param generator} and caches it.
+     */
+    @WorkerThread
+    @NonNull
+    public Bitmap getOrGenerate(@NonNull WidgetItem item, @NonNull Size previewSize,
+            @NonNull Supplier<Bitmap> generator) {
+        String memoryKey = getMemoryKey(item, previewSize);
+        Bitmap preview = mMemoryCache.get(memoryKey);
+        if (preview != null) {
+            return preview;
+        }
+
+        String version = getPackageVersion(item);
+        if (version != null) {
+            version += "/" + getConfigKey();
+        }
+        preview = version == null ? null : loadFromDb(item, previewSize, version);
+        if (preview == null) {
+            preview = generator.get();
+            if (version != null) {
+                saveToDb(item, previewSize, version, preview);
+            }
+        }
+        mMemoryCache.put(memoryKey, preview);
+        return preview;
+    }
+
+    /**
+     * Drops all the previews of the given package, called when the package is updated or
+     * removed.
+     */
+    @AnyThread
+    public void onPackageChanged(@NonNull String packageName, @NonNull UserHandle user) {
+        String prefix = getPackagePrefix(packageName, user);
+        for (String key : mMemoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mMemoryCache.remove(key);
+            }
+        }
+        synchronized (mPackageVersions) {
+            mPackageVersions.remove(new PackageUserKey(packageName, user));
+        }
+        MODEL_EXECUTOR.execute(() -> mDb.delete(
+                CacheDb.COLUMN_PACKAGE + " = ? AND " + CacheDb.COLUMN_USER + " = ?",
+                new String[] {packageName,
+                        Long.toString(mUserCache.getSerialNumberForUser(user))}));
+    }
+
+    /**
+     * Drops the previews kept in memory, they can still be reloaded from disk
+     */
+    @AnyThread
+    public void clearMemory() {
+        mMemoryCache.evictAll();
+    }
+
+    private static String getPackagePrefix(String packageName, UserHandle user) {
+        return user.hashCode() + "/" + packageName + "/";
+    }
+
+    private String getMemoryKey(WidgetItem item, Size previewSize) {
+        return getPackagePrefix(item.componentName.getPackageName(), item.user)
+                + item.componentName.getClassName() + "/" + getSizeKey(previewSize)
+                + "/" + getConfigKey();
+    }
+
+    /**
+     * Returns the state previews depend on besides the provider: resources are loaded for the
+     * current density and night mode, and fallback previews draw the app icon.
+     */
+    private String getConfigKey() {
+        Configuration config = mContext.getResources().getConfiguration();
+        return config.densityDpi + "/" + (config.uiMode & Configuration.UI_MODE_NIGHT_MASK) + "/"
+                + LauncherAppState.getInstance(mContext).getIconProvider().getSystemIconState()
+                        .hashCode();
+    }
+
+    private static String getSizeKey(Size previewSize) {
+        return toBucket(previewSize.getWidth()) + "x" + toBucket(previewSize.getHeight());
+    }
+
+    private static int toBucket(int px) {
+        return (px + SIZE_BUCKET_PX - 1) / SIZE_BUCKET_PX;
+    }
+
+    @WorkerThread
+    @Nullable
+    private String getPackageVersion(WidgetItem item) {
+        String packageName = item.componentName.getPackageName();
+        PackageUserKey key = new PackageUserKey(packageName, item.user);
+        synchronized (mPackageVersions) {
+            String version = mPackageVersions.get(key);
+            if (version != null) {
+                return version;
+            }
+        }
+        String version;
+        try {
+            PackageInfo info = mPackageManager.getPackageInfo(packageName,
+                    PackageManager.MATCH_UNINSTALLED_PACKAGES);
+            long versionCode = Utilities.ATLEAST_P ? info.getLongVersionCode() : info.versionCode;
+            version = versionCode + "/" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+        synchronized (mPackageVersions) {
+            mPackageVersions.put(key, version);
+        }
+        return version;
+    }
+
+    @WorkerThread
+    @Nullable
+    private Bitmap loadFromDb(WidgetItem item, Size previewSize, String version) {
+        try (Cursor c = mDb.query(new String[] {CacheDb.COLUMN_PREVIEW_BITMAP},
+                CacheDb.COLUMN_COMPONENT + " = ? AND " + CacheDb.COLUMN_USER + " = ? AND "
+                        + CacheDb.COLUMN_SIZE + " = ? AND " + CacheDb.COLUMN_VERSION + " = ?",
+                new String[] {
+                        item.componentName.flattenToString(),
+                        Long.toString(mUserCache.getSerialNumberForUser(item.user)),
+                        getSizeKey(previewSize),
+                        version})) {
+            if (!c.moveToNext()) {
+                return null;
+            }
+            byte[] data = c.getBlob(0);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.HARDWARE;
+            return data == null ? null
+                    : BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Error loading preview from db", e);
+            return null;
+        }
+    }
+
+    @WorkerThread
+    private void saveToDb(WidgetItem item, Size previewSize, String version, Bitmap preview) {
+        // Hardware bitmaps can't be compressed directly
+        Bitmap software = preview.getConfig() == Bitmap.Config.HARDWARE
+                ? preview.copy(Bitmap.Config.ARGB_8888, false) : preview;
+        byte[] data = software == null ? null : GraphicsUtils.flattenBitmap(software);
+        if (data == null) {
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(CacheDb.COLUMN_COMPONENT, item.componentName.flattenToString());
+        values.put(CacheDb.COLUMN_USER, mUserCache.getSerialNumberForUser(item.user));
+        values.put(CacheDb.COLUMN_SIZE, getSizeKey(previewSize));
+        values.put(CacheDb.COLUMN_PACKAGE, item.componentName.getPackageName());
+        values.put(CacheDb.COLUMN_VERSION, version);
+        values.put(CacheDb.COLUMN_PREVIEW_BITMAP, data);
+        mDb.insertOrReplace(values);
+    }
+
+    /**
+     * Database of rendered previews. Rows are replaced whenever the provider package version
+     * changes, and dropped when the package is updated or removed.
+     */
+    private static class CacheDb extends SQLiteCacheHelper {
+        private static final int DB_VERSION = 10;
+
+        private static final String TABLE_NAME = "shortcut_and_widget_previews";
+        private static final String COLUMN_COMPONENT = "componentName";
+        private static final String COLUMN_USER = "profileId";
+        private static final String COLUMN_SIZE = "size";
+        private static final String COLUMN_PACKAGE = "packageName";
+        private static final String COLUMN_VERSION = "version";
+        private static final String COLUMN_PREVIEW_BITMAP = "preview_bitmap";
+
+        CacheDb(Context context) {
+            super(context, LauncherFiles.WIDGET_PREVIEWS_DB, DB_VERSION, TABLE_NAME);
+        }
+
+        @Override
+        public void onCreateTable(SQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                    + COLUMN_COMPONENT + " TEXT NOT NULL, "
+                    + COLUMN_USER + " INTEGER NOT NULL, "
+                    + COLUMN_SIZE + " TEXT NOT NULL, "
+                    + COLUMN_PACKAGE + " TEXT NOT NULL, "
+                    + COLUMN_VERSION + " TEXT NOT NULL, "
+                    + COLUMN_PREVIEW_BITMAP + " BLOB, "
+                    + "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ", "
+                    + COLUMN_SIZE + ") "
+                    + ");");
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+
+import com.android.launcher3.util.Executors.SimpleThreadFactory;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Small pool of worker threads dedicated to rendering widget previews, so that they can be
+ * rendered in parallel without holding up the other work of the UI helper thread.
+ *
+ * Pending requests are ordered by priority: previews of cells which are currently attached to
+ * the widget picker come first, then the most recently requested ones, as they are the closest to
+ * where the user is scrolling to.
+ */
+public class WidgetPreviewRenderer {
+
+    private static final String TAG = "WidgetPreviewRenderer";
+
+    private static final int POOL_SIZE =
+            Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int KEEP_ALIVE_SECONDS = 5;
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                new SimpleThreadFactory("widget-preview-", Process.THREAD_PRIORITY_FOREGROUND));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private WidgetPreviewRenderer() { }
+
+    /**
+     * Renders a preview with {@param renderer} on the worker pool, and delivers it to
+     * {@param callback} on the main thread unless the request is cancelled first.
+     *
+     * @param visible whether the preview is for a cell currently in the viewport
+     */
+    @UiThread
+    @NonNull
+    public static <T> Request<T> submit(@NonNull Supplier<T> renderer,
+            @NonNull Consumer<T> callback, boolean visible) {
+        Request<T> request = new Request<>(renderer, callback, visible);
+        EXECUTOR.execute(request);
+        return request;
+    }
+
+    /**
+     * A pending preview, which can be cancelled or reprioritized until it starts rendering
+     */
+    public static class Request<T> implements Runnable, Comparable<Request<?>> {
+
+        private final Supplier<T> mRenderer;
+        private final Consumer<T> mCallback;
+
+        private volatile boolean mCancelled;
+        private volatile boolean mVisible;
+        private volatile long mSequence;
+
+        Request(Supplier<T> renderer, Consumer<T> callback, boolean visible) {
+            mRenderer = renderer;
+            mCallback = callback;
+            mVisible = visible;
+            mSequence = SEQUENCE.incrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            T result;
+            try {
+                result = mRenderer.get();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to render widget preview", e);
+                return;
+            }
+            MAIN_EXECUTOR.execute(() -> {
+                if (!mCancelled) {
+                    mCallback.accept(result);
+                }
+            });
+        }
+
+        /**
+         * Moves the request ahead of or behind the previews in the viewport, if it is still
+         * pending
+         */
+        @UiThread
+        public void setVisible(boolean visible) {
+            if (mVisible == visible || mCancelled) {
+                return;
+            }
+            // The queue only orders requests when they are inserted
+            if (EXECUTOR.getQueue().remove(this)) {
+                mVisible = visible;
+                mSequence = SEQUENCE.incrementAndGet();
+                EXECUTOR.execute(this);
+            } else {
+                mVisible = visible;
+            }
+        }
+
+        /**
+         * Cancels the request. If it is called before the result is delivered, the callback is
+         * not called, and a pending request is dropped without rendering.
+         */
+        @AnyThread
+        public void cancel() {
+            mCancelled = true;
+            EXECUTOR.getQueue().remove(this);
+        }
+
+        @Override
+        public int compareTo(Request<?> other) {
+            if (mVisible != other.mVisible) {
+                return mVisible ? -1 : 1;
+            }
+            return Long.compare(other.mSequence, mSequence);
+        }
+    }
+}
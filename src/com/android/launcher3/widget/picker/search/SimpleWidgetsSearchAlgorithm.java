@@ -24,6 +24,7 @@ import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.popup.PopupDataProvider;
 import com.android.launcher3.search.SearchAlgorithm;
 import com.android.launcher3.search.SearchCallback;
+import com.android.launcher3.search.SearchResultCache;
 import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
 import com.android.launcher3.widget.model.WidgetsListBaseEntry;
 import com.android.launcher3.widget.model.WidgetsListContentEntry;
@@ -38,8 +39,16 @@ import java.util.stream.Collectors;
  */
 public final class SimpleWidgetsSearchAlgorithm implements SearchAlgorithm<WidgetsListBaseEntry> {
 
+    // Number of recent queries whose matches are kept around for refinement
+    private static final int RESULT_CACHE_SIZE = 8;
+
     private final Handler mResultHandler;
     private final PopupDataProvider mDataProvider;
+    private final SearchResultCache<WidgetsListBaseEntry> mResultCache =
+            new SearchResultCache<>(RESULT_CACHE_SIZE);
+
+    private List<WidgetsListBaseEntry> mLastWidgets;
+    private long mWidgetsVersion = 0;
 
     public SimpleWidgetsSearchAlgorithm(PopupDataProvider dataProvider) {
         mResultHandler = new Handler();
@@ -48,7 +57,16 @@ public final class SimpleWidgetsSearchAlgorithm implements SearchAlgorithm<Widge
 
     @Override
     public void doSearch(String query, SearchCallback<WidgetsListBaseEntry> callback) {
-        ArrayList<WidgetsListBaseEntry> result = getFilteredWidgets(mDataProvider, query);
+        List<WidgetsListBaseEntry> allWidgets = mDataProvider.getAllWidgets();
+        if (allWidgets != mLastWidgets) {
+            mLastWidgets = allWidgets;
+            mWidgetsVersion++;
+        }
+        // While the query is being typed, only filter the results of the previous query
+        ArrayList<WidgetsListBaseEntry> result = new ArrayList<>(mResultCache.search(
+                query, mWidgetsVersion,
+                q -> getFilteredWidgets(allWidgets, q),
+                (q, candidates) -> getFilteredWidgets(candidates, q)));
         mResultHandler.post(() -> callback.onSearchResult(query, result));
     }
 
@@ -64,8 +82,17 @@ public final class SimpleWidgetsSearchAlgorithm implements SearchAlgorithm<Widge
      */
     public static ArrayList<WidgetsListBaseEntry> getFilteredWidgets(
             PopupDataProvider dataProvider, String input) {
+        return getFilteredWidgets(dataProvider.getAllWidgets(), input);
+    }
+
+    /**
+     * Returns entries for the widgets matching {@param input} among {@param entries}. Entries
+     * returned by a previous search can be passed in to refine its results.
+     */
+    private static ArrayList<WidgetsListBaseEntry> getFilteredWidgets(
+            List<WidgetsListBaseEntry> entries, String input) {
         ArrayList<WidgetsListBaseEntry> results = new ArrayList<>();
-        dataProvider.getAllWidgets().stream()
+        entries.stream()
                 .filter(entry -> entry instanceof WidgetsListHeaderEntry)
                 .forEach(headerEntry -> {
                     List<WidgetItem> matchedWidgetItems = filterWidgetItems(
@@ -116,6 +116,16 @@ public class WidgetsModel {
      */
     public List<ComponentWithLabelAndIcon> update(
             LauncherAppState app, @Nullable PackageUserKey packageUser) {
+        return update(app, packageUser, null);
+    }
+
+    /**
+     * Same as {@link #update(LauncherAppState, PackageUserKey)} but uses the provided widget
+     * providers, when non-null, instead of querying them again.
+     */
+    public List<ComponentWithLabelAndIcon> update(LauncherAppState app,
+            @Nullable PackageUserKey packageUser,
+            @Nullable List<AppWidgetProviderInfo> prefetchedProviders) {
         Preconditions.assertWorkerThread();
 
         Context context = app.getContext();
@@ -127,7 +137,9 @@ public class WidgetsModel {
 
             // Widgets
             WidgetManagerHelper widgetManager = new WidgetManagerHelper(context);
-            for (AppWidgetProviderInfo widgetInfo : widgetManager.getAllProviders(packageUser)) {
+            List<AppWidgetProviderInfo> providers = prefetchedProviders != null
+                    ? prefetchedProviders : widgetManager.getAllProviders(packageUser);
+            for (AppWidgetProviderInfo widgetInfo : providers) {
                 LauncherAppWidgetProviderInfo launcherWidgetInfo =
                         LauncherAppWidgetProviderInfo.fromProviderInfo(context, widgetInfo);
 
@@ -31,25 +31,22 @@ public abstract class AbsGridOccupancy {
      *
      * @return true if a vacant cell was found
      */
-    protected boolean findVacantCell(int[] vacantOut, boolean[][] cells, int countX, int countY,
-            int spanX, int spanY) {
+    protected boolean findVacantCell(int[] vacantOut, int countX, int countY, int spanX,
+            int spanY) {
         for (int y = 0; (y + spanY) <= countY; y++) {
-            for (int x = 0; (x + spanX) <= countX; x++) {
-                boolean available = !cells[x][y];
-                out:
-                for (int i = x; i < x + spanX; i++) {
-                    for (int j = y; j < y + spanY; j++) {
-                        available = available && !cells[i][j];
-                        if (!available) break out;
-                    }
-                }
-                if (available) {
-                    vacantOut[0] = x;
-                    vacantOut[1] = y;
-                    return true;
-                }
+            int x = findVacantColumn(y, spanX, spanY);
+            if (x >= 0) {
+                vacantOut[0] = x;
+                vacantOut[1] = y;
+                return true;
             }
         }
         return false;
     }
+
+    /**
+     * Returns the leftmost column where a span of spanX by spanY cells starting at row y is
+     * vacant, or -1 if there is none.
+     */
+    protected abstract int findVacantColumn(int y, int spanX, int spanY);
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.celllayout;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.view.View;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.launcher3.CellLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for {@link ReorderSolutionCache}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ReorderSolutionCacheTest {
+
+    private static final int[] DIRECTION_LEFT = {-1, 0};
+    private static final int[] DIRECTION_UP = {0, -1};
+
+    @Test
+    public void get_matchesCellSpanAndDirection() {
+        ReorderSolutionCache cache = new ReorderSolutionCache();
+        View dragView = new View(getApplicationContext());
+        CellLayout.ItemConfiguration solution = new CellLayout.ItemConfiguration();
+        cache.put(dragView, 1, 2, 2, 2, DIRECTION_LEFT, solution);
+
+        assertSame(solution, cache.get(dragView, 1, 2, 2, 2, new int[] {-1, 0}));
+        assertNull(cache.get(dragView, 1, 2, 2, 2, DIRECTION_UP));
+        assertNull(cache.get(dragView, 2, 2, 2, 2, DIRECTION_LEFT));
+        assertNull(cache.get(dragView, 1, 2, 2, 1, DIRECTION_LEFT));
+    }
+
+    @Test
+    public void put_withOtherDragView_dropsPreviousSolutions() {
+        ReorderSolutionCache cache = new ReorderSolutionCache();
+        View firstView = new View(getApplicationContext());
+        View secondView = new View(getApplicationContext());
+        cache.put(firstView, 0, 0, 1, 1, DIRECTION_UP, new CellLayout.ItemConfiguration());
+        assertNull(cache.get(secondView, 0, 0, 1, 1, DIRECTION_UP));
+
+        CellLayout.ItemConfiguration solution = new CellLayout.ItemConfiguration();
+        cache.put(secondView, 1, 0, 1, 1, DIRECTION_UP, solution);
+        assertNull(cache.get(firstView, 0, 0, 1, 1, DIRECTION_UP));
+        assertSame(solution, cache.get(secondView, 1, 0, 1, 1, DIRECTION_UP));
+
+        cache.clear();
+        assertNull(cache.get(secondView, 1, 0, 1, 1, DIRECTION_UP));
+    }
+}
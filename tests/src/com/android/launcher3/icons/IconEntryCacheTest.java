@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Process;
+import android.os.UserHandle;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.launcher3.util.ComponentKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class IconEntryCacheTest {
+
+    private static final UserHandle USER = Process.myUserHandle();
+    private static final ComponentKey KEY_A =
+            new ComponentKey(new ComponentName("com.test.a", "com.test.a.Main"), USER);
+    private static final ComponentKey KEY_B =
+            new ComponentKey(new ComponentName("com.test.b", "com.test.b.Main"), USER);
+
+    private IconEntryCache mCache;
+    private BitmapInfo mHighRes;
+
+    @Before
+    public void setup() {
+        mCache = new IconEntryCache();
+        mHighRes = BitmapInfo.of(
+                Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888), Color.RED);
+    }
+
+    @Test
+    public void getOrLoad_hitDoesNotCallLoader() {
+        AtomicInteger loads = new AtomicInteger();
+        IconEntryCache.Entry first = mCache.getOrLoad(KEY_A, false, () -> {
+            loads.incrementAndGet();
+            return new IconEntryCache.Entry("A", "A", mHighRes);
+        });
+        IconEntryCache.Entry second = mCache.getOrLoad(KEY_A, false, () -> {
+            loads.incrementAndGet();
+            return new IconEntryCache.Entry("A", "A", mHighRes);
+        });
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void peek_lowResEntryDoesNotSatisfyHighResRequest() {
+        mCache.getOrLoad(KEY_A, true,
+                () -> new IconEntryCache.Entry("A", "A", BitmapInfo.LOW_RES_INFO));
+        assertNotNull(mCache.peek(KEY_A, true));
+        assertNull(mCache.peek(KEY_A, false));
+    }
+
+    @Test
+    public void invalidatePackage_onlyRemovesThatPackage() {
+        mCache.getOrLoad(KEY_A, false, () -> new IconEntryCache.Entry("A", "A", mHighRes));
+        mCache.getOrLoad(KEY_B, false, () -> new IconEntryCache.Entry("B", "B", mHighRes));
+
+        mCache.invalidatePackage("com.test.a", USER);
+
+        assertNull(mCache.peek(KEY_A, false));
+        assertNotNull(mCache.peek(KEY_B, false));
+    }
+
+    @Test
+    public void getOrLoad_invalidatedWhileLoading_resultNotCached() {
+        mCache.getOrLoad(KEY_A, false, () -> {
+            mCache.invalidatePackage("com.test.a", USER);
+            return new IconEntryCache.Entry("A", "A", mHighRes);
+        });
+        assertNull(mCache.peek(KEY_A, false));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.model.data.AppInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link AppSearchIndex}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AppSearchIndexTest {
+
+    private AppSearchIndex mIndex;
+
+    @Before
+    public void setup() {
+        mIndex = new AppSearchIndex();
+    }
+
+    @Test
+    public void testMatchesAtBreakPoints() {
+        AppInfo whiteCow = add("whiteCow");
+        add("whitecow");
+        AppInfo white2cow = add("white2cow");
+        AppInfo whiteSpaceCow = add("white cow");
+
+        assertEquals(Arrays.asList(whiteCow, white2cow, whiteSpaceCow), mIndex.search("cow"));
+        assertEquals(4, mIndex.search("white").size());
+        assertEquals(Arrays.asList(whiteSpaceCow), mIndex.search("white c"));
+    }
+
+    @Test
+    public void testIgnoresCaseAndAccents() {
+        AppInfo cafe = add("Café");
+        assertEquals(Arrays.asList(cafe), mIndex.search("cafe"));
+        assertEquals(Arrays.asList(cafe), mIndex.search("CAF"));
+    }
+
+    @Test
+    public void testMultipleBreakPointMatchesReturnAppOnce() {
+        AppInfo app = add("Cow cow");
+        assertEquals(Arrays.asList(app), mIndex.search("cow"));
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        AppInfo app = add("Calendar");
+        assertEquals(1, mIndex.search("cal").size());
+
+        app.title = "Agenda";
+        mIndex.update(app);
+        assertTrue(mIndex.search("cal").isEmpty());
+        assertEquals(1, mIndex.search("age").size());
+
+        mIndex.remove(app);
+        assertTrue(mIndex.search("age").isEmpty());
+    }
+
+    @Test
+    public void testHanQueryUsesSubstringMatch() {
+        AppInfo app = add("百度地图");
+        assertEquals(Arrays.asList(app), mIndex.search("地图"));
+    }
+
+    @Test
+    public void testRefineOnlyKeepsMatchingCandidates() {
+        AppInfo calendar = add("Calendar");
+        AppInfo calculator = add("Calculator");
+        add("Camera");
+
+        assertEquals(Arrays.asList(calculator),
+                mIndex.refine("calc", Arrays.asList(calendar, calculator)));
+        assertEquals(Arrays.asList(calculator, calendar),
+                mIndex.refine("cal", Arrays.asList(calculator, calendar)));
+    }
+
+    @Test
+    public void testVersionChangesWithTitles() {
+        AppInfo app = add("Calendar");
+        long version = mIndex.getVersion();
+
+        mIndex.update(app);
+        assertEquals(version, mIndex.getVersion());
+
+        app.title = "Agenda";
+        mIndex.update(app);
+        assertTrue(mIndex.getVersion() != version);
+    }
+
+    private AppInfo add(String title) {
+        AppInfo info = new AppInfo();
+        info.title = title;
+        mIndex.update(info);
+        return info;
+    }
+}
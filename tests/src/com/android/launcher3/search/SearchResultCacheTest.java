@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Unit tests for {@link SearchResultCache}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class SearchResultCacheTest {
+
+    private static final List<String> ITEMS =
+            Arrays.asList("calendar", "calculator", "camera", "clock", "地图");
+
+    private SearchResultCache<String> mCache;
+    private List<String> mFullSearches;
+    private List<String> mRefinedSearches;
+
+    @Before
+    public void setup() {
+        mCache = new SearchResultCache<>(2);
+        mFullSearches = new ArrayList<>();
+        mRefinedSearches = new ArrayList<>();
+    }
+
+    @Test
+    public void testExtendedQueryRefinesPreviousResults() {
+        assertEquals(Arrays.asList("calendar", "calculator", "camera"), search("ca", 0));
+        assertEquals(Arrays.asList("calendar", "calculator"), search("cal", 0));
+        assertEquals(Arrays.asList("calculator"), search("calc", 0));
+
+        assertEquals(Arrays.asList("ca"), mFullSearches);
+        assertEquals(Arrays.asList("cal", "calc"), mRefinedSearches);
+    }
+
+    @Test
+    public void testSameQueryIsServedFromCache() {
+        search("cl", 0);
+        search("cl", 0);
+        assertEquals(Arrays.asList("cl"), mFullSearches);
+        assertEquals(0, mRefinedSearches.size());
+    }
+
+    @Test
+    public void testVersionChangeDropsResults() {
+        search("ca", 0);
+        search("cal", 1);
+        assertEquals(Arrays.asList("ca", "cal"), mFullSearches);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResultsAreEvicted() {
+        search("ca", 0);
+        search("cl", 0);
+        search("x", 0);
+        search("cam", 0);
+        assertEquals(Arrays.asList("ca", "cl", "x", "cam"), mFullSearches);
+    }
+
+    @Test
+    public void testSwitchingToSimpleFuzzySearchDoesNotRefine() {
+        search("ca", 0);
+        search("ca地", 0);
+        assertEquals(Arrays.asList("ca", "ca地"), mFullSearches);
+    }
+
+    private List<String> search(String query, long version) {
+        return mCache.search(query, version,
+                q -> {
+                    mFullSearches.add(q);
+                    return filter(ITEMS, q);
+                },
+                (q, candidates) -> {
+                    mRefinedSearches.add(q);
+                    return filter(candidates, q);
+                });
+    }
+
+    private static List<String> filter(List<String> items, String query) {
+        return items.stream().filter(s -> s.startsWith(query)).collect(Collectors.toList());
+    }
+}
@@ -25,16 +25,21 @@ import static com.android.launcher3.config.FeatureFlags.ENABLE_TWOLINE_ALLAPPS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
+import android.content.ComponentName;
 import android.content.Context;
+import android.content.Intent;
 import android.graphics.Typeface;
+import android.os.Process;
 import android.view.ViewGroup;
 
 import com.android.launcher3.BubbleTextView;
 import com.android.launcher3.Utilities;
+import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.ItemInfoWithIcon;
 import com.android.launcher3.search.StringMatcherUtility;
 import com.android.launcher3.util.ActivityContextWrapper;
 import com.android.launcher3.util.IntArray;
+import com.android.launcher3.util.LabelLineSplitter;
 import com.android.launcher3.util.TestUtil;
 import com.android.launcher3.views.BaseDragLayer;
 
@@ -303,6 +308,25 @@ public class BubbleTextViewTest {
         assertEquals(TEST_LONG_STRING_SYMBOL_LONGER_THAN_CHAR_LIMIT_RESULT, newString);
     }
 
+    @Test
+    public void testAppWithLabelBreakpoints_flagOn() {
+        try (AutoCloseable flag = TestUtil.overrideFlag(ENABLE_TWOLINE_ALLAPPS, true)) {
+            // test string: "System UWB Field Test", with the breakpoints computed by the model
+            ComponentName cn = new ComponentName("com.example.app", "Activity");
+            AppInfo app = new AppInfo(cn, TEST_LONG_STRING_WITH_SPACE_LONGER_THAN_CHAR_LIMIT,
+                    Process.myUserHandle(), new Intent().setComponent(cn));
+            app.labelBreakpoints = LabelLineSplitter.getBreakpoints(app.title);
+            mBubbleTextView.setDisplay(DISPLAY_ALL_APPS);
+            mBubbleTextView.applyLabel(app);
+            mBubbleTextView.setTypeface(Typeface.MONOSPACE);
+            mBubbleTextView.measure(mLimitedWidth, 0);
+            mBubbleTextView.onPreDraw();
+            assertEquals(TWO_LINE, mBubbleTextView.getLineCount());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Test
     public void testEnsurePredictionRowIsOneLine() {
         try (AutoCloseable flag = TestUtil.overrideFlag(ENABLE_TWOLINE_ALLAPPS, true)) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+/**
+ * Unit tests for {@link EventLogBuffer}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class EventLogBufferTest {
+
+    @Test
+    public void snapshot_returnsEntriesOldestFirst() {
+        EventLogBuffer buffer = new EventLogBuffer(4);
+        buffer.add(1, "first", 10, 7);
+        buffer.add(2, "second", 20, 8);
+
+        List<EventLogBuffer.Entry> entries = buffer.snapshot();
+        assertEquals(2, entries.size());
+        assertEquals("first", entries.get(0).event);
+        assertEquals(1, entries.get(0).flags);
+        assertEquals(10, entries.get(0).extras);
+        assertEquals(7, entries.get(0).tag);
+        assertEquals("second", entries.get(1).event);
+    }
+
+    @Test
+    public void add_whenFull_overwritesOldestEntries() {
+        EventLogBuffer buffer = new EventLogBuffer(3);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(0, "event", i, 0);
+        }
+
+        // Capacity is rounded up to 4
+        List<EventLogBuffer.Entry> entries = buffer.snapshot();
+        assertEquals(4, entries.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(6 + i, entries.get(i).extras);
+        }
+    }
+
+    @Test
+    public void add_sameEntry_countsDuplicates() {
+        EventLogBuffer buffer = new EventLogBuffer(4);
+        buffer.add(0, "event", 1, 0);
+        buffer.add(0, "event", 1, 0);
+        buffer.add(0, "event", 1, 0);
+        buffer.add(0, "event", 1, 1);
+
+        List<EventLogBuffer.Entry> entries = buffer.snapshot();
+        assertEquals(2, entries.size());
+        assertEquals(2, entries.get(0).duplicateCount);
+        assertEquals(0, entries.get(1).duplicateCount);
+    }
+
+    @Test
+    public void add_fromConcurrentThreads_keepsEveryEntry() throws InterruptedException {
+        int threadCount = 4;
+        int entriesPerThread = 500;
+        EventLogBuffer buffer = new EventLogBuffer(threadCount * entriesPerThread);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            int tag = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < entriesPerThread; i++) {
+                    buffer.add(0, "event", i, tag);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Entries of each thread are all there, in the order they were added
+        int[] nextExtras = new int[threadCount];
+        for (EventLogBuffer.Entry entry : buffer.snapshot()) {
+            assertEquals(nextExtras[entry.tag]++, entry.extras);
+        }
+        for (int count : nextExtras) {
+            assertEquals(entriesPerThread, count);
+        }
+    }
+}
@@ -55,13 +55,62 @@ public class GridOccupancyTest {
         assertFalse(grid.isRegionVacant(0, 0, 2, 1));
     }
 
+    @Test
+    public void testWideGrid() {
+        // Rows span several words
+        GridOccupancy grid = new GridOccupancy(150, 3);
+        grid.markCells(0, 0, 70, 3, true);
+        grid.markCells(72, 1, 60, 1, true);
+
+        assertTrue(grid.isOccupied(69, 2));
+        assertFalse(grid.isOccupied(70, 2));
+        assertTrue(grid.isRegionVacant(70, 0, 2, 3));
+        assertFalse(grid.isRegionVacant(70, 0, 3, 3));
+        assertTrue(grid.isRegionVacant(132, 0, 18, 3));
+
+        int[] vacant = new int[2];
+        assertTrue(grid.findVacantCell(vacant, 3, 1));
+        assertEquals(70, vacant[0]);
+        assertEquals(0, vacant[1]);
+
+        // Row 1 is occupied past the first free columns
+        assertTrue(grid.findVacantCell(vacant, 3, 2));
+        assertEquals(132, vacant[0]);
+        assertEquals(0, vacant[1]);
+
+        assertTrue(grid.findVacantCell(vacant, 10, 3));
+        assertEquals(132, vacant[0]);
+        assertEquals(0, vacant[1]);
+
+        grid.markCells(64, 0, 1, 3, false);
+        assertFalse(grid.isOccupied(64, 0));
+        assertTrue(grid.isOccupied(63, 0));
+        assertTrue(grid.isOccupied(65, 0));
+    }
+
+    @Test
+    public void testCopyTo() {
+        GridOccupancy grid = initGrid(2,
+                1, 0, 1,
+                0, 1, 0
+        );
+        GridOccupancy copy = new GridOccupancy(3, 2);
+        copy.markCells(0, 0, 3, 2, true);
+        grid.copyTo(copy);
+        assertEquals(grid.toString(), copy.toString());
+
+        grid.clear();
+        assertTrue(grid.isRegionVacant(0, 0, 3, 2));
+        assertFalse(copy.isRegionVacant(0, 0, 3, 2));
+    }
+
     private GridOccupancy initGrid(int rows, int... cells) {
         int cols = cells.length / rows;
         int i = 0;
         GridOccupancy grid = new GridOccupancy(cols, rows);
         for (int y = 0; y < rows; y++) {
             for (int x = 0; x < cols; x++) {
-                grid.cells[x][y] = cells[i] != 0;
+                grid.markCells(x, y, 1, 1, cells[i] != 0);
                 i++;
             }
         }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+import static com.android.launcher3.util.window.RefreshRateTracker.getSingleFrameMs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link TransitionFrameStats}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class TransitionFrameStatsTest {
+
+    @Test
+    public void sessionEnd_recordsMissedFramesAndLatency() {
+        Context context = getApplicationContext();
+        TransitionFrameStats frameStats = new TransitionFrameStats();
+        TestUtil.runOnExecutorSync(MAIN_EXECUTOR, () -> {
+            long frameNanos = TimeUnit.MILLISECONDS.toNanos(getSingleFrameMs(context));
+            long inputTimeMs = 1000;
+            long firstFrameNanos = TimeUnit.MILLISECONDS.toNanos(inputTimeMs + 20);
+
+            TransitionFrameStats.Session session = frameStats.begin(context, inputTimeMs);
+            session.doFrame(firstFrameNanos);
+            session.doFrame(firstFrameNanos + frameNanos);
+            // Two vsyncs without a frame
+            session.doFrame(firstFrameNanos + 4 * frameNanos);
+            session.end("test");
+        });
+
+        TransitionFrameStats.Stats stats = frameStats.getStats("test");
+        assertEquals(1, stats.count);
+        assertEquals(1, stats.jankyCount);
+        assertEquals(3, stats.totalFrames);
+        assertEquals(2, stats.totalMissedFrames);
+        assertEquals(20, stats.latencyMs.max);
+    }
+
+    @Test
+    public void sessionCancel_recordsNothing() {
+        Context context = getApplicationContext();
+        TransitionFrameStats frameStats = new TransitionFrameStats();
+        TestUtil.runOnExecutorSync(MAIN_EXECUTOR, () -> {
+            TransitionFrameStats.Session session = frameStats.begin(context, 0);
+            session.doFrame(0);
+            session.cancel();
+            session.end("test");
+        });
+
+        assertNull(frameStats.getStats("test"));
+    }
+
+    @Test
+    public void histogram_percentilesUseBucketBounds() {
+        TransitionFrameStats.Stats stats = new TransitionFrameStats.Stats();
+        for (int i = 0; i < 9; i++) {
+            stats.add(10, 0, 10, 100);
+        }
+        stats.add(10, 3, 120, 700);
+
+        assertEquals(1, stats.jankyCount);
+        assertEquals(3, stats.maxMissedFrames);
+        assertEquals(16, stats.latencyMs.getPercentile(50));
+        assertEquals(16, stats.latencyMs.getPercentile(90));
+        assertEquals(120, stats.latencyMs.getPercentile(100));
+        assertEquals(21, stats.latencyMs.getMean());
+        assertEquals(700, stats.durationMs.max);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static com.android.launcher3.widget.util.WidgetSizes.getWidgetItemSizePx;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+import android.util.Size;
+import android.view.LayoutInflater;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.R;
+import com.android.launcher3.icons.IconCache;
+import com.android.launcher3.model.WidgetItem;
+import com.android.launcher3.util.ActivityContextWrapper;
+import com.android.launcher3.util.WidgetUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public final class WidgetCellTest {
+
+    private ActivityContextWrapper mContext;
+    private InvariantDeviceProfile mTestProfile;
+
+    @Mock
+    private IconCache mIconCache;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = new ActivityContextWrapper(getApplicationContext());
+        mTestProfile = new InvariantDeviceProfile();
+        mTestProfile.numRows = 5;
+        mTestProfile.numColumns = 5;
+        doReturn("SampleWidget").when(mIconCache).getTitleNoCache(any());
+    }
+
+    @Test
+    public void applyFromCellItem_previewInMemory_appliesWithoutCallback() {
+        ComponentName cn = ComponentName.createRelative(mContext.getPackageName(), ".SampleWidget");
+        WidgetItem item = new WidgetItem(LauncherAppWidgetProviderInfo.fromProviderInfo(
+                mContext, WidgetUtils.createAppWidgetProviderInfo(cn)),
+                mTestProfile, mIconCache, mContext);
+        Size size = getWidgetItemSizePx(mContext, mContext.getDeviceProfile(), item);
+        Bitmap preview = Bitmap.createBitmap(
+                size.getWidth(), size.getHeight(), Bitmap.Config.ARGB_8888);
+        WidgetPreviewCache.INSTANCE.get(mContext).getOrGenerate(item, size, () -> preview);
+
+        WidgetCell cell = (WidgetCell) LayoutInflater.from(mContext)
+                .inflate(R.layout.widget_cell, null, false);
+        cell.setAnimatePreview(false);
+        List<Bitmap> callbackPreviews = new ArrayList<>();
+        cell.applyFromCellItem(item, 1f, callbackPreviews::add, null);
+
+        // The callback can notify the adapter, which would throw while the cell is being bound
+        assertThat(callbackPreviews).isEmpty();
+        WidgetImageView image = cell.findViewById(R.id.widget_preview);
+        assertThat(image.getDrawable()).isNotNull();
+    }
+}